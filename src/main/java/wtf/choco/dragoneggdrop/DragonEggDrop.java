@@ -1,12 +1,18 @@
 package wtf.choco.dragoneggdrop;
 
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.Enumeration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
@@ -22,7 +28,9 @@ import org.bukkit.plugin.PluginManager;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.scheduler.BukkitTask;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import wtf.choco.commons.util.MathUtil;
 import wtf.choco.commons.util.UpdateChecker;
 import wtf.choco.commons.util.UpdateChecker.UpdateReason;
 import wtf.choco.dragoneggdrop.commands.CommandDragonEggDrop;
@@ -34,8 +42,12 @@ import wtf.choco.dragoneggdrop.dragon.loot.DragonLootTable;
 import wtf.choco.dragoneggdrop.listeners.DamageHistoryListener;
 import wtf.choco.dragoneggdrop.listeners.DragonLifeListeners;
 import wtf.choco.dragoneggdrop.listeners.LootListeners;
+import wtf.choco.dragoneggdrop.listeners.ParticleSessionListener;
 import wtf.choco.dragoneggdrop.listeners.PortalClickListener;
 import wtf.choco.dragoneggdrop.listeners.RespawnListeners;
+import wtf.choco.dragoneggdrop.particle.AnimatedParticleSession;
+import wtf.choco.dragoneggdrop.particle.ParticleLevelOfDetail;
+import wtf.choco.dragoneggdrop.particle.ParticleScheduler;
 import wtf.choco.dragoneggdrop.particle.ParticleShapeDefinition;
 import wtf.choco.dragoneggdrop.particle.condition.ConditionFactory;
 import wtf.choco.dragoneggdrop.placeholder.DragonEggDropPlaceholders;
@@ -66,9 +78,13 @@ public final class DragonEggDrop extends JavaPlugin {
     private Registry<@NotNull ParticleShapeDefinition> particleShapeDefinitionRegistry = new HashRegistry<>();
 
     private BukkitTask updateTask;
+    private ExecutorService particleExecutor;
+    private ForkJoinPool particleEvaluationPool;
+    private int parallelEvaluationThreshold;
+    private ParticleScheduler particleScheduler;
     private File tempDataFile;
 
-    private File dragonTemplateDirectory, lootTableDirectory, particleDirectory;
+    private File dragonTemplateDirectory, lootTableDirectory, particleDirectory, particleCacheDirectory;
 
     @Override
     public void onEnable() {
@@ -86,6 +102,31 @@ public final class DragonEggDrop extends JavaPlugin {
             this.saveDefaultDirectory("particles");
         }
 
+        this.particleCacheDirectory = new File(getDataFolder(), "cache" + File.separator + "particles");
+
+        // Particle computation threads
+        if (getConfig().getBoolean(DEDConstants.CONFIG_PARTICLES_ASYNC_COMPUTATION, false)) {
+            int threads = Math.max(getConfig().getInt(DEDConstants.CONFIG_PARTICLES_COMPUTATION_THREADS, 1), 1);
+            this.particleExecutor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setNameFormat("DragonEggDrop Particle Worker #%d").setDaemon(true).build());
+        }
+
+        this.parallelEvaluationThreshold = getConfig().getInt(DEDConstants.CONFIG_PARTICLES_PARALLEL_EVALUATION_THRESHOLD, 0);
+        if (parallelEvaluationThreshold > 0) {
+            int threads = Math.max(getConfig().getInt(DEDConstants.CONFIG_PARTICLES_PARALLEL_EVALUATION_THREADS, 2), 1);
+            this.particleEvaluationPool = new ForkJoinPool(threads, pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("DragonEggDrop Particle Evaluator #" + thread.getPoolIndex());
+                return thread;
+            }, null, false);
+        }
+
+        this.particleScheduler = new ParticleScheduler(getLogger(), ParticleScheduler.UNLIMITED, ParticleScheduler.UNLIMITED);
+        this.reloadParticleScheduler();
+        Bukkit.getScheduler().runTaskTimer(this, particleScheduler::tick, 0L, 1L);
+
+        this.reloadDamageHistoryRetention();
+        Bukkit.getScheduler().runTaskTimer(this, DamageHistory::evictStale, 20L * 60, 20L * 60);
+
         // Load all necessary data into memory
         DataFileUtils.reloadInMemoryData(this, true);
 
@@ -103,6 +144,7 @@ public final class DragonEggDrop extends JavaPlugin {
         manager.registerEvents(new DamageHistoryListener(this), this);
         manager.registerEvents(new DragonLifeListeners(this), this);
         manager.registerEvents(new LootListeners(this), this);
+        manager.registerEvents(new ParticleSessionListener(), this);
         manager.registerEvents(new PortalClickListener(this), this);
         manager.registerEvents(new RespawnListeners(this), this);
 
@@ -154,6 +196,20 @@ public final class DragonEggDrop extends JavaPlugin {
             this.updateTask.cancel();
         }
 
+        if (particleExecutor != null) {
+            this.particleExecutor.shutdownNow();
+
+            try {
+                this.particleExecutor.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (particleEvaluationPool != null) {
+            this.particleEvaluationPool.shutdownNow();
+        }
+
         try {
             DataFileUtils.writeTempData(tempDataFile);
         } catch (IOException e) {
@@ -202,6 +258,109 @@ public final class DragonEggDrop extends JavaPlugin {
         return particleShapeDefinitionRegistry;
     }
 
+    /**
+     * Get the executor on which particle animation frames are computed.
+     *
+     * @return the particle executor, or null if particle frames should be computed on the
+     * main thread
+     *
+     * @see AnimatedParticleSession#computeAsync(java.util.concurrent.Executor)
+     */
+    @Nullable
+    public ExecutorService getParticleExecutor() {
+        return particleExecutor;
+    }
+
+    /**
+     * Get the pool on which the points of large particle animation frames are evaluated in
+     * parallel.
+     *
+     * @return the particle evaluation pool, or null if frames should always be evaluated
+     * sequentially
+     *
+     * @see AnimatedParticleSession#setParallelEvaluation(ForkJoinPool, int)
+     * @see #getParallelEvaluationThreshold()
+     */
+    @Nullable
+    public ForkJoinPool getParticleEvaluationPool() {
+        return particleEvaluationPool;
+    }
+
+    /**
+     * Get the minimum amount of points in a particle animation frame for it to be evaluated in
+     * parallel on the {@link #getParticleEvaluationPool() particle evaluation pool}.
+     *
+     * @return the parallel evaluation threshold. Only meaningful if the particle evaluation
+     * pool is not null
+     */
+    public int getParallelEvaluationThreshold() {
+        return parallelEvaluationThreshold;
+    }
+
+    /**
+     * Get the scheduler to which all particle animations submit their frames.
+     *
+     * @return the particle scheduler
+     */
+    @NotNull
+    public ParticleScheduler getParticleScheduler() {
+        return particleScheduler;
+    }
+
+    /**
+     * Reload the particle scheduler's budget, level of detail and batching from the configuration.
+     */
+    public void reloadParticleScheduler() {
+        int maxParticlesPerTick = getConfig().getInt(DEDConstants.CONFIG_PARTICLES_MAX_PARTICLES_PER_TICK, ParticleScheduler.UNLIMITED);
+        int maxPacketsPerTick = getConfig().getInt(DEDConstants.CONFIG_PARTICLES_MAX_PACKETS_PER_TICK, ParticleScheduler.UNLIMITED);
+        this.particleScheduler.setBudget(Math.max(maxParticlesPerTick, ParticleScheduler.UNLIMITED), Math.max(maxPacketsPerTick, ParticleScheduler.UNLIMITED));
+
+        ParticleLevelOfDetail levelOfDetail = null;
+        if (getConfig().getBoolean(DEDConstants.CONFIG_PARTICLES_LEVEL_OF_DETAIL_ENABLED, false)) {
+            double fullDetailDistance = getConfig().getDouble(DEDConstants.CONFIG_PARTICLES_LEVEL_OF_DETAIL_FULL_DETAIL_DISTANCE, 64.0);
+            double cutoffDistance = getConfig().getDouble(DEDConstants.CONFIG_PARTICLES_LEVEL_OF_DETAIL_CUTOFF_DISTANCE, 256.0);
+
+            if (fullDetailDistance > 0 && cutoffDistance >= fullDetailDistance) {
+                levelOfDetail = new ParticleLevelOfDetail(fullDetailDistance, cutoffDistance);
+            }
+            else {
+                this.getLogger().warning("Invalid particle level of detail distances. full-detail-distance must be positive and no greater than cutoff-distance. Level of detail will be disabled");
+            }
+        }
+
+        this.particleScheduler.setLevelOfDetail(levelOfDetail);
+
+        double batchTolerance = ParticleScheduler.NO_BATCHING;
+        if (getConfig().getBoolean(DEDConstants.CONFIG_PARTICLES_BATCHING_ENABLED, false)) {
+            batchTolerance = getConfig().getDouble(DEDConstants.CONFIG_PARTICLES_BATCHING_TOLERANCE, 0.05);
+
+            if (batchTolerance <= 0) {
+                this.getLogger().warning("Invalid particle batching tolerance. tolerance must be positive. Batching will be disabled");
+                batchTolerance = ParticleScheduler.NO_BATCHING;
+            }
+        }
+
+        this.particleScheduler.setBatchTolerance(batchTolerance);
+    }
+
+    /**
+     * Reload the retention of damage history entries, and the delay after which stale damage
+     * histories are evicted, from the configuration.
+     */
+    public void reloadDamageHistoryRetention() {
+        int maxEntries = getConfig().getInt(DEDConstants.CONFIG_DAMAGE_HISTORY_MAX_ENTRIES, DamageHistory.DEFAULT_MAX_ENTRIES);
+        if (maxEntries <= 0) {
+            this.getLogger().warning("Invalid damage history max-entries. max-entries must be positive. Defaulting to " + DamageHistory.DEFAULT_MAX_ENTRIES);
+            maxEntries = DamageHistory.DEFAULT_MAX_ENTRIES;
+        }
+
+        long maxAgeSeconds = MathUtil.parseSeconds(getConfig().getString(DEDConstants.CONFIG_DAMAGE_HISTORY_MAX_AGE), (int) TimeUnit.MILLISECONDS.toSeconds(DamageHistory.DEFAULT_MAX_AGE_MILLIS));
+        DamageHistory.setRetention(maxEntries, TimeUnit.SECONDS.toMillis(Math.max(maxAgeSeconds, 0)));
+
+        long evictionDelaySeconds = MathUtil.parseSeconds(getConfig().getString(DEDConstants.CONFIG_DAMAGE_HISTORY_EVICTION_DELAY), (int) TimeUnit.MILLISECONDS.toSeconds(DamageHistory.DEFAULT_EVICTION_DELAY_MILLIS));
+        DamageHistory.setEvictionDelay(TimeUnit.SECONDS.toMillis(Math.max(evictionDelaySeconds, 0)));
+    }
+
     /**
      * Get the directory in which dragon templates are located.
      *
@@ -232,6 +391,18 @@ public final class DragonEggDrop extends JavaPlugin {
         return particleDirectory;
     }
 
+    /**
+     * Get the directory in which compiled particle shape definitions are cached.
+     *
+     * @return the particle shape definition cache directory
+     *
+     * @see ParticleShapeDefinition#fromFile(File, File)
+     */
+    @NotNull
+    public File getParticleCacheDirectory() {
+        return particleCacheDirectory;
+    }
+
     /**
      * Get the DragonEggDrop instance.
      *
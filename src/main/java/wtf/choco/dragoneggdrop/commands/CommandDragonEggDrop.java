@@ -62,6 +62,8 @@ public final class CommandDragonEggDrop implements TabExecutor {
             }
 
             this.plugin.reloadConfig();
+            this.plugin.reloadParticleScheduler();
+            this.plugin.reloadDamageHistoryRetention();
             DataFileUtils.reloadInMemoryData(plugin, false);
             DragonEggDrop.sendMessage(sender, ChatColor.GREEN + "Reload complete!");
         }
@@ -89,12 +89,22 @@ public final class CommandDragonParticle implements TabExecutor {
         assert endLocationWorld != null; // Theoretically impossible
 
         AnimatedParticleSession particleSession = particleShapeDefinition.createSession(endLocationWorld, endLocation.getX(), startY, endLocation.getZ());
+        particleSession.setScheduler(plugin.getParticleScheduler());
+
+        if (plugin.getParticleEvaluationPool() != null) {
+            particleSession.setParallelEvaluation(plugin.getParticleEvaluationPool(), plugin.getParallelEvaluationThreshold());
+        }
+
+        if (plugin.getParticleExecutor() != null) {
+            particleSession.computeAsync(plugin.getParticleExecutor());
+        }
 
         Bukkit.getScheduler().runTaskTimer(plugin, task -> {
             particleSession.tick();
 
-            if (particleSession.shouldStop() || particleSession.getCurrentLocation().getY() < finalEndLocation.getY()) {
+            if (particleSession.shouldStop() || particleSession.getCurrentY() < finalEndLocation.getY()) {
                 DragonEggDrop.sendMessage(player, ChatColor.GREEN + "Done! " + ChatColor.GRAY + "(" + ChatColor.YELLOW + particleShapeDefinition.getId() + ChatColor.GRAY + ")");
+                particleShapeDefinition.releaseSession(particleSession);
                 task.cancel();
             }
         }, 0L, 1L);
@@ -5,14 +5,9 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
-import java.util.ArrayDeque;
-import java.util.ArrayList;
-import java.util.Deque;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.UUID;
 
 import org.bukkit.Bukkit;
@@ -24,19 +19,68 @@ import wtf.choco.dragoneggdrop.utils.JsonUtils;
 
 /**
  * Represents a recordable history of damage for an entity.
+ * <p>
+ * The total damage of each damager is kept for the lifetime of the history, whereas the log
+ * of individual damage entries is bounded by the retention set with
+ * {@link #setRetention(int, long)}. Entries beyond the maximum amount of entries, or older than
+ * the maximum age, are discarded. Recent damage, and the peak damage dealt per second, are
+ * aggregated per second as damage is recorded such that they may be queried in constant time.
+ * <p>
+ * Histories of living entities are kept until they are captured by a battle record, at which
+ * point they should be {@link #evict(UUID, EvictionReason) evicted}. Histories of entities that
+ * have been unloaded, or that no longer exist, are evicted by {@link #evictStale()} once the
+ * {@link #setEvictionDelay(long) eviction delay} has elapsed.
  *
  * @author Parker Hawke - Choco
  */
 public final class DamageHistory {
 
+    /**
+     * The default maximum amount of damage entries kept by each history.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+    /**
+     * The default maximum age of damage entries kept by each history in milliseconds.
+     */
+    public static final long DEFAULT_MAX_AGE_MILLIS = 15 * 60 * 1000L;
+
+    /**
+     * A maximum age denoting that damage entries are kept regardless of their age.
+     */
+    public static final long NO_MAX_AGE = 0L;
+
+    /**
+     * The default delay in milliseconds after which stale histories are evicted.
+     */
+    public static final long DEFAULT_EVICTION_DELAY_MILLIS = 10 * 60 * 1000L;
+
+    /**
+     * The maximum amount of seconds over which recent damage may be queried.
+     *
+     * @see #getRecentDamageFrom(UUID, int)
+     */
+    public static final int MAX_RECENT_DAMAGE_SECONDS = DamageTimeline.WINDOW_SECONDS;
+
     private static final Map<@NotNull UUID, @NotNull DamageHistory> ENTITY_DAMAGE_HISTORY = new HashMap<>();
 
+    private static int maxEntries = DEFAULT_MAX_ENTRIES;
+    private static long maxAgeMillis = DEFAULT_MAX_AGE_MILLIS;
+    private static long evictionDelayMillis = DEFAULT_EVICTION_DELAY_MILLIS;
+    private static final long[] EVICTION_COUNTS = new long[EvictionReason.values().length];
+
     private final UUID entityUUID;
-    private final Map<@NotNull UUID, @NotNull Double> totalDamage = new HashMap<>();
-    private final Deque<@NotNull DamageEntry> damageHistory = new ArrayDeque<>();
+    private final DamageRanking totalDamage = new DamageRanking();
+    private final DamageLog damageHistory = new DamageLog();
+    private final DamageTimeline damageTimeline = new DamageTimeline();
+
+    // The times at which damage was last recorded and at which the entity was unloaded (0 if loaded)
+    private long lastDamageTimestamp;
+    private long unloadTimestamp = 0L;
 
     private DamageHistory(@NotNull UUID entityUUID) {
         this.entityUUID = entityUUID;
+        this.lastDamageTimestamp = System.currentTimeMillis();
     }
 
     /**
@@ -85,7 +129,7 @@ public final class DamageHistory {
      * @return the amount of damage caused by the entity
      */
     public double getTotalDamageFrom(@NotNull UUID uuid) {
-        return (uuid != null && totalDamage.containsKey(uuid)) ? totalDamage.get(uuid) : 0.0;
+        return (uuid != null) ? totalDamage.getTotal(uuid) : 0.0;
     }
 
     /**
@@ -96,11 +140,11 @@ public final class DamageHistory {
      */
     @Nullable
     public DamageEntry getTopDamager() {
-        if (totalDamage.isEmpty()) {
+        if (totalDamage.size() == 0) {
             return null;
         }
 
-        return totalDamage.entrySet().stream().sorted(Map.Entry.comparingByValue((v1, v2) -> -v1.compareTo(v2))).findFirst().map(DamageEntry::new).get();
+        return createTotalEntry(0);
     }
 
     /**
@@ -115,17 +159,41 @@ public final class DamageHistory {
      */
     @Nullable
     public DamageEntry getTopDamager(int offset) {
-        if (totalDamage.isEmpty()) {
+        if (totalDamage.size() == 0) {
             return null;
         }
 
-        if (offset >= totalDamage.size()) {
-            throw new IllegalArgumentException("Tried to get top damager at unavailable offset (damagers recorded = " + totalDamage.size() + ")");
-        }
+        this.checkTopDamagerOffset(offset);
+        return createTotalEntry(offset);
+    }
+
+    /**
+     * Get the UUID of the top damager at the given offset (from most amount of damage +
+     * offset). Unlike {@link #getTopDamager(int)}, this does not create a new object and
+     * is better suited to being queried frequently.
+     *
+     * @param offset the damager offset. Must be {@literal <} {@link #uniqueDamagers()}
+     *
+     * @return the UUID of the top damager at the given offset
+     */
+    @NotNull
+    public UUID getTopDamagerUUID(int offset) {
+        this.checkTopDamagerOffset(offset);
+        return totalDamage.getDamager(offset);
+    }
 
-        List<Entry<UUID, Double>> entries = new ArrayList<>(totalDamage.entrySet());
-        entries.sort(Map.Entry.comparingByValue((v1, v2) -> -v1.compareTo(v2)));
-        return new DamageEntry(entries.get(offset));
+    /**
+     * Get the total amount of damage caused by the top damager at the given offset (from
+     * most amount of damage + offset). Unlike {@link #getTopDamager(int)}, this does not
+     * create a new object and is better suited to being queried frequently.
+     *
+     * @param offset the damager offset. Must be {@literal <} {@link #uniqueDamagers()}
+     *
+     * @return the total damage of the top damager at the given offset
+     */
+    public double getTopDamage(int offset) {
+        this.checkTopDamagerOffset(offset);
+        return totalDamage.getTotal(offset);
     }
 
     /**
@@ -146,22 +214,93 @@ public final class DamageHistory {
         Preconditions.checkArgument(amount > 0, "Invalid history amount. Must be > 0");
         DamageEntry[] topDamagers = new DamageEntry[amount];
 
-        if (totalDamage.isEmpty()) {
-            return topDamagers;
+        for (int i = 0; i < Math.min(amount, totalDamage.size()); i++) {
+            topDamagers[i] = createTotalEntry(i);
         }
 
-        List<Entry<UUID, Double>> entries = new ArrayList<>(totalDamage.entrySet());
-        entries.sort(Map.Entry.comparingByValue((v1, v2) -> -v1.compareTo(v2)));
+        return topDamagers;
+    }
 
-        for (int i = 0; i < amount; i++) {
-            if (i >= entries.size()) {
-                break;
-            }
+    /**
+     * Get the amount of damage caused by the specified entity's UUID within the given amount
+     * of seconds, including the current second.
+     *
+     * @param uuid the UUID of the entity whose damage to retrieve
+     * @param seconds the amount of seconds. Must be between 1 and {@link #MAX_RECENT_DAMAGE_SECONDS}
+     *
+     * @return the amount of recent damage caused by the entity
+     */
+    public double getRecentDamageFrom(@NotNull UUID uuid, int seconds) {
+        Preconditions.checkArgument(uuid != null, "uuid must not be null");
+        checkRecentDamageSeconds(seconds);
 
-            topDamagers[i] = new DamageEntry(entries.get(i));
-        }
+        int slot = totalDamage.getSlot(uuid);
+        return (slot >= 0) ? damageTimeline.getRecentDamage(slot, seconds, System.currentTimeMillis()) : 0.0;
+    }
 
-        return topDamagers;
+    /**
+     * Get the amount of damage caused by the specified entity within the given amount of
+     * seconds, including the current second.
+     *
+     * @param entity the entity whose damage to retrieve
+     * @param seconds the amount of seconds. Must be between 1 and {@link #MAX_RECENT_DAMAGE_SECONDS}
+     *
+     * @return the amount of recent damage caused by the entity
+     */
+    public double getRecentDamageFrom(@NotNull Entity entity, int seconds) {
+        Preconditions.checkArgument(entity != null, "entity must not be null");
+        return getRecentDamageFrom(entity.getUniqueId(), seconds);
+    }
+
+    /**
+     * Get the amount of damage caused by all entities combined within the given amount of
+     * seconds, including the current second.
+     *
+     * @param seconds the amount of seconds. Must be between 1 and {@link #MAX_RECENT_DAMAGE_SECONDS}
+     *
+     * @return the amount of recent damage
+     */
+    public double getRecentDamage(int seconds) {
+        checkRecentDamageSeconds(seconds);
+        return damageTimeline.getRecentDamage(seconds, System.currentTimeMillis());
+    }
+
+    /**
+     * Get the most amount of damage caused by the specified entity's UUID within a single
+     * second (from the start of one second of the clock to the next).
+     *
+     * @param uuid the UUID of the entity whose damage to retrieve
+     *
+     * @return the peak damage per second of the entity
+     */
+    public double getPeakDamagePerSecondFrom(@NotNull UUID uuid) {
+        Preconditions.checkArgument(uuid != null, "uuid must not be null");
+
+        int slot = totalDamage.getSlot(uuid);
+        return (slot >= 0) ? damageTimeline.getPeakDamagePerSecond(slot) : 0.0;
+    }
+
+    /**
+     * Get the most amount of damage caused by the specified entity within a single second
+     * (from the start of one second of the clock to the next).
+     *
+     * @param entity the entity whose damage to retrieve
+     *
+     * @return the peak damage per second of the entity
+     */
+    public double getPeakDamagePerSecondFrom(@NotNull Entity entity) {
+        Preconditions.checkArgument(entity != null, "entity must not be null");
+        return getPeakDamagePerSecondFrom(entity.getUniqueId());
+    }
+
+    /**
+     * Get the most amount of damage caused by all entities combined within a single second
+     * (from the start of one second of the clock to the next).
+     *
+     * @return the peak damage per second
+     */
+    public double getPeakDamagePerSecond() {
+        return damageTimeline.getPeakDamagePerSecond();
     }
 
     /**
@@ -169,13 +308,28 @@ public final class DamageHistory {
      *
      * @param source the UUID of the damage's source entity
      * @param damage the damage to record
+     * @param timestamp the time at which the damage was dealt in milliseconds since epoch
      */
-    public void recordDamage(@NotNull UUID source, double damage) {
+    public void recordDamage(@NotNull UUID source, double damage, long timestamp) {
         Preconditions.checkArgument(source != null, "source must not be null");
         Preconditions.checkArgument(damage > 0.0, "damage must be greater than 0");
 
-        this.totalDamage.merge(source, damage, Double::sum);
-        this.damageHistory.push(new DamageEntry(source, damage));
+        int slot = totalDamage.add(source, damage);
+        this.damageTimeline.record(slot, damage, timestamp);
+        this.damageHistory.add(source.getMostSignificantBits(), source.getLeastSignificantBits(), damage, timestamp, maxEntries);
+
+        this.lastDamageTimestamp = Math.max(lastDamageTimestamp, timestamp);
+        this.unloadTimestamp = 0L; // The entity must have been loaded to have been damaged
+    }
+
+    /**
+     * Record damage dealt at the current time to this history.
+     *
+     * @param source the UUID of the damage's source entity
+     * @param damage the damage to record
+     */
+    public void recordDamage(@NotNull UUID source, double damage) {
+        this.recordDamage(source, damage, System.currentTimeMillis());
     }
 
     /**
@@ -195,7 +349,7 @@ public final class DamageHistory {
      */
     @Nullable
     public DamageEntry getMostRecentDamage() {
-        return damageHistory.peek();
+        return (size() > 0) ? createLogEntry(0) : null;
     }
 
     /**
@@ -210,31 +364,25 @@ public final class DamageHistory {
      */
     @Nullable
     public DamageEntry getMostRecentDamage(int offset) {
-        if (offset >= damageHistory.size()) {
-            throw new IllegalArgumentException("Tried to get recent damage at unavailable offset (oldest damage recorded = " + damageHistory.size() + ")");
-        }
-
-        if (offset == 0) { // Save unnecessary Iterator creation and just peek at the top value
-            return getMostRecentDamage();
-        }
-
-        int i = 0;
-        for (Iterator<@NotNull DamageEntry> iterator = damageHistory.iterator(); iterator.hasNext(); i++) {
-            DamageEntry entry = iterator.next();
-            if (i == offset) {
-                return entry;
-            }
+        int size = size();
+        if (offset < 0 || offset >= size) {
+            throw new IllegalArgumentException("Tried to get recent damage at unavailable offset (oldest damage recorded = " + size + ")");
         }
 
-        return null;
+        return createLogEntry(offset);
     }
 
     /**
-     * Get the amount of history recorded by this record.
+     * Get the amount of history recorded by this record. Entries discarded due to the
+     * retention set by {@link #setRetention(int, long)} are not counted.
      *
      * @return the history size
      */
     public int size() {
+        if (maxAgeMillis != NO_MAX_AGE) {
+            this.damageHistory.discardBefore(System.currentTimeMillis() - maxAgeMillis);
+        }
+
         return damageHistory.size();
     }
 
@@ -252,10 +400,12 @@ public final class DamageHistory {
      */
     public void clearTotalDamage() {
         this.totalDamage.clear();
+        this.damageTimeline.clear();
     }
 
     /**
-     * Clear all damage history from this history.
+     * Clear all damage history from this history. Recent damage and peak damage per second
+     * are aggregated from total damage, and are cleared by {@link #clearTotalDamage()} instead.
      */
     public void clearDamageHistory() {
         this.damageHistory.clear();
@@ -270,6 +420,28 @@ public final class DamageHistory {
         this.clearDamageHistory();
     }
 
+    @NotNull
+    private DamageEntry createLogEntry(int offset) {
+        UUID source = new UUID(damageHistory.getSourceMostSignificantBits(offset), damageHistory.getSourceLeastSignificantBits(offset));
+        return new DamageEntry(source, damageHistory.getDamage(offset), damageHistory.getTimestamp(offset));
+    }
+
+    @NotNull
+    private DamageEntry createTotalEntry(int rank) {
+        int slot = totalDamage.getSlotAt(rank);
+        return new DamageEntry(totalDamage.getDamagerInSlot(slot), totalDamage.getTotalInSlot(slot), damageTimeline.getLastTimestamp(slot));
+    }
+
+    private static void checkRecentDamageSeconds(int seconds) {
+        Preconditions.checkArgument(seconds >= 1 && seconds <= MAX_RECENT_DAMAGE_SECONDS, "seconds must be between 1 and %s", MAX_RECENT_DAMAGE_SECONDS);
+    }
+
+    private void checkTopDamagerOffset(int offset) {
+        if (offset < 0 || offset >= totalDamage.size()) {
+            throw new IllegalArgumentException("Tried to get top damager at unavailable offset (damagers recorded = " + totalDamage.size() + ")");
+        }
+    }
+
     /**
      * Serialize this damage history to a {@link JsonObject}.
      *
@@ -281,16 +453,32 @@ public final class DamageHistory {
 
         object.addProperty("entityUUID", entityUUID.toString());
 
-        if (!damageHistory.isEmpty()) {
+        // Totals are written separately as the damage entries from which they were accumulated may have been discarded
+        if (totalDamage.size() > 0) {
+            JsonArray totalDamageArray = new JsonArray();
+            for (int rank = 0; rank < totalDamage.size(); rank++) {
+                JsonObject totalObject = new JsonObject();
+
+                totalObject.addProperty("source", totalDamage.getDamager(rank).toString());
+                totalObject.addProperty("damage", totalDamage.getTotal(rank));
+
+                totalDamageArray.add(totalObject);
+            }
+
+            object.add("totalDamage", totalDamageArray);
+        }
+
+        if (size() > 0) {
             JsonArray damageEntriesArray = new JsonArray();
-            this.damageHistory.forEach(entry -> {
+            for (int offset = 0; offset < damageHistory.size(); offset++) {
                 JsonObject entryObject = new JsonObject();
 
-                entryObject.addProperty("source", entry.source.toString());
-                entryObject.addProperty("damage", entry.getDamage());
+                entryObject.addProperty("source", new UUID(damageHistory.getSourceMostSignificantBits(offset), damageHistory.getSourceLeastSignificantBits(offset)).toString());
+                entryObject.addProperty("damage", damageHistory.getDamage(offset));
+                entryObject.addProperty("timestamp", damageHistory.getTimestamp(offset));
 
                 damageEntriesArray.add(entryObject);
-            });
+            }
 
             object.add("damageEntries", damageEntriesArray);
         }
@@ -310,20 +498,47 @@ public final class DamageHistory {
         UUID entityUUID = JsonUtils.getRequiredField(object, "entityUUID", element -> UUID.fromString(element.getAsString()));
         JsonArray damageEntriesArray = JsonUtils.getOptionalField(object, "damageEntries", JsonElement::getAsJsonArray, new JsonArray());
 
+        JsonArray totalDamageArray = object.has("totalDamage") ? object.getAsJsonArray("totalDamage") : null;
+
         DamageHistory damageHistory = new DamageHistory(entityUUID);
 
-        damageEntriesArray.forEach(damageEntryElement -> {
+        if (totalDamageArray != null) {
+            totalDamageArray.forEach(totalElement -> {
+                if (!totalElement.isJsonObject()) {
+                    return;
+                }
+
+                JsonObject totalObject = totalElement.getAsJsonObject();
+
+                UUID source = UUID.fromString(totalObject.get("source").getAsString());
+                double damage = totalObject.get("damage").getAsDouble();
+
+                damageHistory.totalDamage.add(source, damage);
+            });
+        }
+
+        // Entries are written from most to least recent. Record them in the order in which they were dealt
+        long now = System.currentTimeMillis();
+        for (int i = damageEntriesArray.size() - 1; i >= 0; i--) {
+            JsonElement damageEntryElement = damageEntriesArray.get(i);
             if (!damageEntryElement.isJsonObject()) {
-                return;
+                continue;
             }
 
             JsonObject damageEntryObject = damageEntryElement.getAsJsonObject();
 
             UUID source = UUID.fromString(damageEntryObject.get("source").getAsString());
             double damage = damageEntryObject.get("damage").getAsDouble();
+            long timestamp = damageEntryObject.has("timestamp") ? damageEntryObject.get("timestamp").getAsLong() : now;
 
-            damageHistory.recordDamage(source, damage);
-        });
+            // Histories written before totals were serialized accumulate their totals from their entries
+            int slot = (totalDamageArray == null) ? damageHistory.totalDamage.add(source, damage) : damageHistory.totalDamage.getSlot(source);
+            if (slot >= 0 && damageEntryObject.has("timestamp")) {
+                damageHistory.damageTimeline.record(slot, damage, timestamp);
+            }
+
+            damageHistory.damageHistory.add(source.getMostSignificantBits(), source.getLeastSignificantBits(), damage, timestamp, maxEntries);
+        }
 
         return damageHistory;
     }
@@ -375,6 +590,192 @@ public final class DamageHistory {
         ENTITY_DAMAGE_HISTORY.clear();
     }
 
+    /**
+     * Remove the {@link DamageHistory} associated with the given entity UUID from the histories
+     * retrievable with {@link #forEntity(UUID)}. Any reference to the evicted history remains
+     * valid. If the entity is damaged again, a new history will be created.
+     *
+     * @param uuid the entity whose history to evict
+     * @param reason the reason for which the history is evicted
+     *
+     * @return true if evicted, false if the entity had no history
+     */
+    public static boolean evict(@NotNull UUID uuid, @NotNull EvictionReason reason) {
+        Preconditions.checkArgument(uuid != null, "uuid must not be null");
+        Preconditions.checkArgument(reason != null, "reason must not be null");
+
+        if (ENTITY_DAMAGE_HISTORY.remove(uuid) == null) {
+            return false;
+        }
+
+        EVICTION_COUNTS[reason.ordinal()]++;
+        return true;
+    }
+
+    /**
+     * Notify the history of the given entity, if any, that the entity has been unloaded. The
+     * history will be evicted by {@link #evictStale()} if the entity has not been loaded again
+     * once the {@link #setEvictionDelay(long) eviction delay} has elapsed.
+     *
+     * @param entity the entity that has been unloaded
+     */
+    public static void notifyUnload(@NotNull Entity entity) {
+        Preconditions.checkArgument(entity != null, "entity must not be null");
+
+        DamageHistory history = ENTITY_DAMAGE_HISTORY.get(entity.getUniqueId());
+        if (history != null) {
+            history.unloadTimestamp = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Evict all histories whose entity has been unloaded for longer than the eviction delay,
+     * or whose entity has neither been damaged within the eviction delay nor exists. This is
+     * expected to be called periodically.
+     * <p>
+     * This must be called on the main thread.
+     *
+     * @return the amount of evicted histories
+     */
+    public static int evictStale() {
+        if (ENTITY_DAMAGE_HISTORY.isEmpty()) {
+            return 0;
+        }
+
+        long now = System.currentTimeMillis();
+        int evicted = 0;
+
+        for (Iterator<@NotNull DamageHistory> iterator = ENTITY_DAMAGE_HISTORY.values().iterator(); iterator.hasNext(); ) {
+            DamageHistory history = iterator.next();
+            EvictionReason reason = null;
+
+            if (history.unloadTimestamp != 0L) {
+                if (now - history.unloadTimestamp < evictionDelayMillis) {
+                    continue;
+                }
+
+                if (history.getEntity() != null) { // Loaded again without having been damaged since
+                    history.unloadTimestamp = 0L;
+                    continue;
+                }
+
+                reason = EvictionReason.UNLOADED;
+            }
+            else if (now - history.lastDamageTimestamp >= evictionDelayMillis && history.getEntity() == null) {
+                reason = EvictionReason.EXPIRED;
+            }
+
+            if (reason != null) {
+                iterator.remove();
+                EVICTION_COUNTS[reason.ordinal()]++;
+                evicted++;
+            }
+        }
+
+        return evicted;
+    }
+
+    /**
+     * Get the amount of histories currently retrievable with {@link #forEntity(UUID)}.
+     *
+     * @return the amount of live histories
+     */
+    public static int getLiveHistoryCount() {
+        return ENTITY_DAMAGE_HISTORY.size();
+    }
+
+    /**
+     * Get the amount of histories evicted for the given reason since the server started.
+     *
+     * @param reason the reason for which histories were evicted
+     *
+     * @return the amount of evicted histories
+     */
+    public static long getEvictionCount(@NotNull EvictionReason reason) {
+        Preconditions.checkArgument(reason != null, "reason must not be null");
+        return EVICTION_COUNTS[reason.ordinal()];
+    }
+
+    /**
+     * Set the delay after which the histories of unloaded or nonexistent entities are evicted
+     * by {@link #evictStale()}.
+     *
+     * @param evictionDelayMillis the delay in milliseconds. Must not be negative
+     */
+    public static void setEvictionDelay(long evictionDelayMillis) {
+        Preconditions.checkArgument(evictionDelayMillis >= 0, "evictionDelayMillis must not be negative");
+        DamageHistory.evictionDelayMillis = evictionDelayMillis;
+    }
+
+    /**
+     * Get the delay after which the histories of unloaded or nonexistent entities are evicted.
+     *
+     * @return the delay in milliseconds
+     */
+    public static long getEvictionDelay() {
+        return evictionDelayMillis;
+    }
+
+    /**
+     * Set the retention of the damage entries of all histories. Once a history holds the
+     * maximum amount of entries, its oldest entry is discarded for every new entry. Entries
+     * older than the maximum age are discarded regardless. Total damage is never discarded.
+     *
+     * @param maxEntries the maximum amount of entries kept by each history. Must be positive
+     * @param maxAgeMillis the maximum age of entries in milliseconds, or {@link #NO_MAX_AGE}
+     * to keep entries regardless of their age. Must not be negative
+     */
+    public static void setRetention(int maxEntries, long maxAgeMillis) {
+        Preconditions.checkArgument(maxEntries > 0, "maxEntries must be positive");
+        Preconditions.checkArgument(maxAgeMillis >= 0, "maxAgeMillis must not be negative");
+
+        DamageHistory.maxEntries = maxEntries;
+        DamageHistory.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Get the maximum amount of damage entries kept by each history.
+     *
+     * @return the maximum amount of entries
+     */
+    public static int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Get the maximum age of the damage entries kept by each history.
+     *
+     * @return the maximum age in milliseconds, or {@link #NO_MAX_AGE} if entries are kept
+     * regardless of their age
+     */
+    public static long getMaxAgeMillis() {
+        return maxAgeMillis;
+    }
+
+
+    /**
+     * Represents a reason for which a {@link DamageHistory} was evicted.
+     *
+     * @author Parker Hawke - Choco
+     */
+    public enum EvictionReason {
+
+        /**
+         * The history was captured by a record of the entity's battle.
+         */
+        CAPTURED,
+
+        /**
+         * The entity was unloaded and not loaded again within the eviction delay.
+         */
+        UNLOADED,
+
+        /**
+         * The entity no longer exists and was not damaged within the eviction delay.
+         */
+        EXPIRED;
+
+    }
 
     /**
      * Represents a mapping of an entity's UUID to an amount of damage.
@@ -385,14 +786,12 @@ public final class DamageHistory {
 
         private final UUID source;
         private final double damage;
+        private final long timestamp;
 
-        private DamageEntry(@NotNull UUID source, double damage) {
+        private DamageEntry(@NotNull UUID source, double damage, long timestamp) {
             this.source = source;
             this.damage = damage;
-        }
-
-        private DamageEntry(@NotNull Map.Entry<@NotNull UUID, @NotNull Double> entry) {
-            this(entry.getKey(), entry.getValue());
+            this.timestamp = timestamp;
         }
 
         /**
@@ -432,6 +831,16 @@ public final class DamageHistory {
             return damage;
         }
 
+        /**
+         * Get the time at which the damage was dealt. For entries of total damage, this is
+         * the time at which the entity last dealt damage.
+         *
+         * @return the timestamp in milliseconds since epoch, or 0 if unknown
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
     }
 
 }
@@ -0,0 +1,166 @@
+package wtf.choco.dragoneggdrop.dragon;
+
+import com.google.common.base.Preconditions;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A bounded log of recorded damage held in a ring buffer of primitive arrays, one per field.
+ * Entries are addressed by their offset from the most recent entry in constant time. The
+ * buffer grows as needed up to the maximum amount of entries, after which the oldest entry
+ * is overwritten by every new entry.
+ *
+ * @author Parker Hawke - Choco
+ */
+final class DamageLog {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] sourceMostSignificantBits = new long[INITIAL_CAPACITY];
+    private long[] sourceLeastSignificantBits = new long[INITIAL_CAPACITY];
+    private double[] damage = new double[INITIAL_CAPACITY];
+    private long[] timestamp = new long[INITIAL_CAPACITY];
+
+    private int head = 0; // The index at which the next entry is written
+    private int size = 0;
+
+    /**
+     * Add an entry to this log, discarding the oldest entries if the log already holds the
+     * given maximum amount of entries.
+     *
+     * @param mostSignificantBits the most significant bits of the source's UUID
+     * @param leastSignificantBits the least significant bits of the source's UUID
+     * @param damage the damage
+     * @param timestamp the time at which the damage was dealt in milliseconds since epoch
+     * @param maxEntries the maximum amount of entries to keep. Must be positive
+     */
+    void add(long mostSignificantBits, long leastSignificantBits, double damage, long timestamp, int maxEntries) {
+        Preconditions.checkArgument(maxEntries > 0, "maxEntries must be positive");
+
+        if (size >= maxEntries) {
+            this.size = maxEntries - 1;
+        }
+        else if (size == this.damage.length) {
+            this.resize(Math.min(size * 2, maxEntries));
+        }
+
+        int index = head;
+        this.sourceMostSignificantBits[index] = mostSignificantBits;
+        this.sourceLeastSignificantBits[index] = leastSignificantBits;
+        this.damage[index] = damage;
+        this.timestamp[index] = timestamp;
+
+        this.head = (index + 1 == this.damage.length) ? 0 : index + 1;
+        this.size++;
+    }
+
+    /**
+     * Discard all entries recorded before the given time.
+     *
+     * @param cutoff the time in milliseconds since epoch before which entries are discarded
+     */
+    void discardBefore(long cutoff) {
+        // Entries are recorded in chronological order. The oldest entries are at the highest offsets
+        while (size > 0 && timestamp[indexOf(size - 1)] < cutoff) {
+            this.size--;
+        }
+    }
+
+    /**
+     * Get the most significant bits of the source's UUID of the entry at the given offset.
+     *
+     * @param offset the offset from the most recent entry. Must be {@literal <} {@link #size()}
+     *
+     * @return the most significant bits
+     */
+    long getSourceMostSignificantBits(int offset) {
+        return sourceMostSignificantBits[indexOf(offset)];
+    }
+
+    /**
+     * Get the least significant bits of the source's UUID of the entry at the given offset.
+     *
+     * @param offset the offset from the most recent entry. Must be {@literal <} {@link #size()}
+     *
+     * @return the least significant bits
+     */
+    long getSourceLeastSignificantBits(int offset) {
+        return sourceLeastSignificantBits[indexOf(offset)];
+    }
+
+    /**
+     * Get the damage of the entry at the given offset.
+     *
+     * @param offset the offset from the most recent entry. Must be {@literal <} {@link #size()}
+     *
+     * @return the damage
+     */
+    double getDamage(int offset) {
+        return damage[indexOf(offset)];
+    }
+
+    /**
+     * Get the time at which the damage of the entry at the given offset was dealt.
+     *
+     * @param offset the offset from the most recent entry. Must be {@literal <} {@link #size()}
+     *
+     * @return the timestamp in milliseconds since epoch
+     */
+    long getTimestamp(int offset) {
+        return timestamp[indexOf(offset)];
+    }
+
+    /**
+     * Get the amount of entries in this log.
+     *
+     * @return the amount of entries
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Discard all entries and release the memory held by this log.
+     */
+    void clear() {
+        this.head = 0;
+        this.size = 0;
+
+        if (damage.length > INITIAL_CAPACITY) {
+            this.sourceMostSignificantBits = new long[INITIAL_CAPACITY];
+            this.sourceLeastSignificantBits = new long[INITIAL_CAPACITY];
+            this.damage = new double[INITIAL_CAPACITY];
+            this.timestamp = new long[INITIAL_CAPACITY];
+        }
+    }
+
+    private int indexOf(int offset) {
+        int index = head - 1 - offset;
+        return (index < 0) ? index + damage.length : index;
+    }
+
+    // Copy all entries, oldest first, to the start of new arrays of the given capacity
+    private void resize(int capacity) {
+        int oldest = indexOf(size - 1);
+        this.sourceMostSignificantBits = unwrap(sourceMostSignificantBits, oldest, capacity);
+        this.sourceLeastSignificantBits = unwrap(sourceLeastSignificantBits, oldest, capacity);
+        this.timestamp = unwrap(timestamp, oldest, capacity);
+
+        double[] damage = new double[capacity];
+        int tail = Math.min(size, this.damage.length - oldest);
+        System.arraycopy(this.damage, oldest, damage, 0, tail);
+        System.arraycopy(this.damage, 0, damage, tail, size - tail);
+        this.damage = damage;
+
+        this.head = size;
+    }
+
+    private long @NotNull [] unwrap(long @NotNull [] array, int oldest, int capacity) {
+        long[] result = new long[capacity];
+        int tail = Math.min(size, array.length - oldest);
+        System.arraycopy(array, oldest, result, 0, tail);
+        System.arraycopy(array, 0, result, tail, size - tail);
+        return result;
+    }
+
+}
@@ -0,0 +1,311 @@
+package wtf.choco.dragoneggdrop.dragon;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * An incrementally maintained ranking of damagers by their total damage. Damagers are ordered
+ * by an AVL tree whose nodes are the damagers' slots and whose subtrees know their size, such
+ * that recording damage, and finding the damager at any rank, take O(log n) time without
+ * allocating. Damagers with equal total damage are ranked in the order in which they first
+ * dealt damage.
+ *
+ * @author Parker Hawke - Choco
+ */
+final class DamageRanking {
+
+    private static final int INITIAL_CAPACITY = 8;
+    private static final int NIL = -1;
+
+    // Damagers by UUID. Slots are assigned in the order in which damagers first dealt damage
+    private final DamagerTable slots = new DamagerTable();
+    private int count = 0;
+
+    // Per-slot damager and total damage. Totals are accumulated in place, never boxed
+    private UUID[] damagers = new UUID[INITIAL_CAPACITY];
+    private double[] totals = new double[INITIAL_CAPACITY];
+
+    // Per-slot tree links, heights and subtree sizes
+    private int[] left = new int[INITIAL_CAPACITY], right = new int[INITIAL_CAPACITY];
+    private int[] height = new int[INITIAL_CAPACITY], size = new int[INITIAL_CAPACITY];
+    private int root = NIL;
+
+    /**
+     * Add damage to the total damage of the given damager and update its rank.
+     *
+     * @param damager the damager
+     * @param damage the damage to add. Must be positive
+     *
+     * @return the damager's slot
+     */
+    int add(@NotNull UUID damager, double damage) {
+        int slot = slots.getOrAdd(damager.getMostSignificantBits(), damager.getLeastSignificantBits());
+
+        if (slot == count) {
+            this.ensureCapacity(++count);
+            this.damagers[slot] = damager;
+            this.totals[slot] = 0.0;
+        }
+        else {
+            // The damager's position depends on its total damage. Remove it before its total changes
+            this.root = remove(root, slot);
+        }
+
+        this.totals[slot] += damage;
+        this.root = insert(root, slot);
+        return slot;
+    }
+
+    /**
+     * Get the slot of the given damager.
+     *
+     * @param damager the damager
+     *
+     * @return the damager's slot, or -1 if the damager has dealt no damage
+     */
+    int getSlot(@NotNull UUID damager) {
+        return slots.get(damager.getMostSignificantBits(), damager.getLeastSignificantBits());
+    }
+
+    /**
+     * Get the slot of the damager at the given rank.
+     *
+     * @param rank the rank, where 0 is the damager with the most total damage. Must be
+     * {@literal <} {@link #size()}
+     *
+     * @return the damager's slot
+     */
+    int getSlotAt(int rank) {
+        return select(rank);
+    }
+
+    /**
+     * Get the damager in the given slot.
+     *
+     * @param slot the slot. Must be {@literal <} {@link #size()}
+     *
+     * @return the damager
+     */
+    @NotNull
+    UUID getDamagerInSlot(int slot) {
+        return damagers[slot];
+    }
+
+    /**
+     * Get the total damage of the damager in the given slot.
+     *
+     * @param slot the slot. Must be {@literal <} {@link #size()}
+     *
+     * @return the total damage
+     */
+    double getTotalInSlot(int slot) {
+        return totals[slot];
+    }
+
+    /**
+     * Get the total damage dealt by the given damager.
+     *
+     * @param damager the damager
+     *
+     * @return the total damage, or 0 if the damager has dealt no damage
+     */
+    double getTotal(@NotNull UUID damager) {
+        int slot = getSlot(damager);
+        return (slot >= 0) ? totals[slot] : 0.0;
+    }
+
+    /**
+     * Get the damager at the given rank.
+     *
+     * @param rank the rank, where 0 is the damager with the most total damage. Must be
+     * {@literal <} {@link #size()}
+     *
+     * @return the damager
+     */
+    @NotNull
+    UUID getDamager(int rank) {
+        return damagers[select(rank)];
+    }
+
+    /**
+     * Get the total damage of the damager at the given rank.
+     *
+     * @param rank the rank, where 0 is the damager with the most total damage. Must be
+     * {@literal <} {@link #size()}
+     *
+     * @return the total damage
+     */
+    double getTotal(int rank) {
+        return totals[select(rank)];
+    }
+
+    /**
+     * Get the amount of ranked damagers.
+     *
+     * @return the amount of damagers
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * Remove all damagers from this ranking.
+     */
+    void clear() {
+        this.slots.clear();
+        Arrays.fill(damagers, 0, count, null);
+        this.count = 0;
+        this.root = NIL;
+    }
+
+    private int select(int rank) {
+        int node = root;
+
+        while (true) {
+            int leftSize = sizeOf(left[node]);
+            if (rank < leftSize) {
+                node = left[node];
+            }
+            else if (rank == leftSize) {
+                return node;
+            }
+            else {
+                rank -= leftSize + 1;
+                node = right[node];
+            }
+        }
+    }
+
+    // Whether or not slot a is ranked before slot b
+    private boolean isBefore(int a, int b) {
+        return totals[a] > totals[b] || (totals[a] == totals[b] && a < b);
+    }
+
+    private int insert(int node, int slot) {
+        if (node == NIL) {
+            this.left[slot] = NIL;
+            this.right[slot] = NIL;
+            this.height[slot] = 1;
+            this.size[slot] = 1;
+            return slot;
+        }
+
+        if (isBefore(slot, node)) {
+            this.left[node] = insert(left[node], slot);
+        }
+        else {
+            this.right[node] = insert(right[node], slot);
+        }
+
+        return balance(node);
+    }
+
+    private int remove(int node, int slot) {
+        if (node != slot) {
+            if (isBefore(slot, node)) {
+                this.left[node] = remove(left[node], slot);
+            }
+            else {
+                this.right[node] = remove(right[node], slot);
+            }
+
+            return balance(node);
+        }
+
+        if (left[node] == NIL) {
+            return right[node];
+        }
+        else if (right[node] == NIL) {
+            return left[node];
+        }
+
+        // Replace the node with its successor
+        int successor = right[node];
+        while (left[successor] != NIL) {
+            successor = left[successor];
+        }
+
+        this.right[successor] = removeFirst(right[node]);
+        this.left[successor] = left[node];
+        return balance(successor);
+    }
+
+    private int removeFirst(int node) {
+        if (left[node] == NIL) {
+            return right[node];
+        }
+
+        this.left[node] = removeFirst(left[node]);
+        return balance(node);
+    }
+
+    private int balance(int node) {
+        this.update(node);
+
+        int balance = heightOf(left[node]) - heightOf(right[node]);
+        if (balance > 1) {
+            if (heightOf(left[left[node]]) < heightOf(right[left[node]])) {
+                this.left[node] = rotateLeft(left[node]);
+            }
+
+            return rotateRight(node);
+        }
+        else if (balance < -1) {
+            if (heightOf(right[right[node]]) < heightOf(left[right[node]])) {
+                this.right[node] = rotateRight(right[node]);
+            }
+
+            return rotateLeft(node);
+        }
+
+        return node;
+    }
+
+    private int rotateLeft(int node) {
+        int pivot = right[node];
+        this.right[node] = left[pivot];
+        this.left[pivot] = node;
+        this.update(node);
+        this.update(pivot);
+        return pivot;
+    }
+
+    private int rotateRight(int node) {
+        int pivot = left[node];
+        this.left[node] = right[pivot];
+        this.right[pivot] = node;
+        this.update(node);
+        this.update(pivot);
+        return pivot;
+    }
+
+    private void update(int node) {
+        this.height[node] = Math.max(heightOf(left[node]), heightOf(right[node])) + 1;
+        this.size[node] = sizeOf(left[node]) + sizeOf(right[node]) + 1;
+    }
+
+    private int heightOf(int node) {
+        return (node != NIL) ? height[node] : 0;
+    }
+
+    private int sizeOf(int node) {
+        return (node != NIL) ? size[node] : 0;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= damagers.length) {
+            return;
+        }
+
+        int newCapacity = Math.max(capacity, damagers.length * 2);
+        this.damagers = Arrays.copyOf(damagers, newCapacity);
+        this.totals = Arrays.copyOf(totals, newCapacity);
+        this.left = Arrays.copyOf(left, newCapacity);
+        this.right = Arrays.copyOf(right, newCapacity);
+        this.height = Arrays.copyOf(height, newCapacity);
+        this.size = Arrays.copyOf(size, newCapacity);
+    }
+
+}
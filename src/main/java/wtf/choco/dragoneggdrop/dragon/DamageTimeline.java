@@ -0,0 +1,187 @@
+package wtf.choco.dragoneggdrop.dragon;
+
+import java.util.Arrays;
+
+/**
+ * A per-second time series of the damage dealt by each damager, and by all damagers combined.
+ * Rather than the damage dealt within each second, each series holds its cumulative damage at
+ * the end of each of the last {@link #WINDOW_SECONDS} seconds in a ring of primitive values,
+ * such that the damage dealt within any window of up to {@link #WINDOW_SECONDS} seconds is the
+ * difference of two values and is found in constant time. Recording damage takes amortized
+ * constant time.
+ * <p>
+ * Damagers are identified by their slot in the history's {@link DamageRanking}.
+ *
+ * @author Parker Hawke - Choco
+ */
+final class DamageTimeline {
+
+    /**
+     * The maximum amount of seconds over which recent damage may be queried.
+     */
+    static final int WINDOW_SECONDS = 60;
+
+    private static final int STRIDE = WINDOW_SECONDS + 1; // Values per series. One more than the window to hold its start
+    private static final int INITIAL_CAPACITY = 8;
+    private static final int ALL = 0; // The series of all damagers combined. Damager series follow at slot + 1
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private double[] cumulative = new double[INITIAL_CAPACITY * STRIDE];
+    private double[] total = new double[INITIAL_CAPACITY];
+    private double[] peak = new double[INITIAL_CAPACITY];
+    private long[] lastSecond = new long[INITIAL_CAPACITY];
+    private long[] lastTimestamp = new long[INITIAL_CAPACITY];
+
+    DamageTimeline() {
+        Arrays.fill(lastSecond, EMPTY);
+    }
+
+    /**
+     * Record damage dealt by the damager in the given slot.
+     *
+     * @param slot the damager's slot
+     * @param damage the damage
+     * @param timestamp the time at which the damage was dealt in milliseconds since epoch
+     */
+    void record(int slot, double damage, long timestamp) {
+        this.ensureCapacity(slot + 2);
+
+        long second = Math.floorDiv(timestamp, 1000L);
+        this.record(ALL, damage, second, timestamp);
+        this.record(slot + 1, damage, second, timestamp);
+    }
+
+    /**
+     * Get the damage dealt by the damager in the given slot within the given amount of
+     * seconds, including the current second.
+     *
+     * @param slot the damager's slot
+     * @param seconds the amount of seconds. Must be between 1 and {@link #WINDOW_SECONDS}
+     * @param now the current time in milliseconds since epoch
+     *
+     * @return the recent damage
+     */
+    double getRecentDamage(int slot, int seconds, long now) {
+        return getRecentDamage0(slot + 1, seconds, now);
+    }
+
+    /**
+     * Get the damage dealt by all damagers combined within the given amount of seconds,
+     * including the current second.
+     *
+     * @param seconds the amount of seconds. Must be between 1 and {@link #WINDOW_SECONDS}
+     * @param now the current time in milliseconds since epoch
+     *
+     * @return the recent damage
+     */
+    double getRecentDamage(int seconds, long now) {
+        return getRecentDamage0(ALL, seconds, now);
+    }
+
+    /**
+     * Get the most damage dealt by the damager in the given slot within a single second.
+     *
+     * @param slot the damager's slot
+     *
+     * @return the peak damage per second
+     */
+    double getPeakDamagePerSecond(int slot) {
+        return (slot + 1 < peak.length) ? peak[slot + 1] : 0.0;
+    }
+
+    /**
+     * Get the most damage dealt by all damagers combined within a single second.
+     *
+     * @return the peak damage per second
+     */
+    double getPeakDamagePerSecond() {
+        return peak[ALL];
+    }
+
+    /**
+     * Get the time at which the damager in the given slot last dealt damage.
+     *
+     * @param slot the damager's slot
+     *
+     * @return the timestamp in milliseconds since epoch, or 0 if no damage has been recorded
+     */
+    long getLastTimestamp(int slot) {
+        return (slot + 1 < lastTimestamp.length) ? lastTimestamp[slot + 1] : 0L;
+    }
+
+    /**
+     * Remove all recorded damage from this timeline.
+     */
+    void clear() {
+        Arrays.fill(total, 0.0);
+        Arrays.fill(peak, 0.0);
+        Arrays.fill(lastSecond, EMPTY);
+        Arrays.fill(lastTimestamp, 0L);
+    }
+
+    private void record(int series, double damage, long second, long timestamp) {
+        int base = series * STRIDE;
+        long last = lastSecond[series];
+
+        if (last == EMPTY) {
+            Arrays.fill(cumulative, base, base + STRIDE, 0.0);
+            this.lastSecond[series] = last = second;
+        }
+        else if (second > last) {
+            // No damage was dealt in the seconds since the last hit. Their cumulative damage is the total so far
+            double total = this.total[series];
+            for (long s = Math.max(last + 1, second - WINDOW_SECONDS); s <= second; s++) {
+                this.cumulative[base + index(s)] = total;
+            }
+
+            this.lastSecond[series] = last = second;
+        }
+
+        // Damage is usually dealt in the last second. Damage dealt earlier (i.e. when loaded) also counts towards later seconds
+        for (long s = Math.max(second, last - WINDOW_SECONDS); s <= last; s++) {
+            this.cumulative[base + index(s)] += damage;
+        }
+
+        this.total[series] += damage;
+        this.lastTimestamp[series] = Math.max(lastTimestamp[series], timestamp);
+
+        if (second > last - WINDOW_SECONDS) {
+            this.peak[series] = Math.max(peak[series], cumulative[base + index(second)] - cumulative[base + index(second - 1)]);
+        }
+    }
+
+    private double getRecentDamage0(int series, int seconds, long now) {
+        if (series >= lastSecond.length || lastSecond[series] == EMPTY) {
+            return 0.0;
+        }
+
+        long last = lastSecond[series];
+        long start = Math.floorDiv(now, 1000L) - seconds; // The last second before the window
+        if (start >= last) {
+            return 0.0;
+        }
+
+        // Only the window's start is known if the clock has since moved backwards
+        start = Math.max(start, last - WINDOW_SECONDS);
+        return total[series] - cumulative[series * STRIDE + index(start)];
+    }
+
+    private static int index(long second) {
+        return (int) Math.floorMod(second, (long) STRIDE);
+    }
+
+    private void ensureCapacity(int series) {
+        if (series <= total.length) {
+            return;
+        }
+
+        int oldCapacity = total.length, newCapacity = Math.max(series, oldCapacity * 2);
+        this.cumulative = Arrays.copyOf(cumulative, newCapacity * STRIDE);
+        this.total = Arrays.copyOf(total, newCapacity);
+        this.peak = Arrays.copyOf(peak, newCapacity);
+        this.lastSecond = Arrays.copyOf(lastSecond, newCapacity);
+        this.lastTimestamp = Arrays.copyOf(lastTimestamp, newCapacity);
+        Arrays.fill(lastSecond, oldCapacity, newCapacity, EMPTY);
+    }
+
+}
@@ -0,0 +1,123 @@
+package wtf.choco.dragoneggdrop.dragon;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressing hash table mapping the most and least significant bits of a damager's
+ * UUID to the damager's slot. Slots are assigned consecutively from 0 in the order in which
+ * damagers are added. Keys are held in primitive arrays such that neither lookups nor
+ * insertions box their keys or values, and collisions are resolved by linear probing.
+ *
+ * @author Parker Hawke - Choco
+ */
+final class DamagerTable {
+
+    private static final int INITIAL_CAPACITY = 16; // Must be a power of 2
+    private static final int EMPTY = 0;
+
+    private long[] keyMostSignificantBits = new long[INITIAL_CAPACITY];
+    private long[] keyLeastSignificantBits = new long[INITIAL_CAPACITY];
+    private int[] values = new int[INITIAL_CAPACITY]; // Slot + 1, such that 0 marks an empty entry
+    private int size = 0;
+
+    /**
+     * Get the slot of the damager with the given UUID bits.
+     *
+     * @param mostSignificantBits the most significant bits of the damager's UUID
+     * @param leastSignificantBits the least significant bits of the damager's UUID
+     *
+     * @return the damager's slot, or -1 if the damager has not been added
+     */
+    int get(long mostSignificantBits, long leastSignificantBits) {
+        int mask = values.length - 1;
+
+        for (int index = hash(mostSignificantBits, leastSignificantBits) & mask; values[index] != EMPTY; index = (index + 1) & mask) {
+            if (keyMostSignificantBits[index] == mostSignificantBits && keyLeastSignificantBits[index] == leastSignificantBits) {
+                return values[index] - 1;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Get the slot of the damager with the given UUID bits, adding the damager if it has not
+     * yet been added.
+     *
+     * @param mostSignificantBits the most significant bits of the damager's UUID
+     * @param leastSignificantBits the least significant bits of the damager's UUID
+     *
+     * @return the damager's slot. If added, equal to the previous {@link #size()}
+     */
+    int getOrAdd(long mostSignificantBits, long leastSignificantBits) {
+        int mask = values.length - 1;
+        int index = hash(mostSignificantBits, leastSignificantBits) & mask;
+
+        for (; values[index] != EMPTY; index = (index + 1) & mask) {
+            if (keyMostSignificantBits[index] == mostSignificantBits && keyLeastSignificantBits[index] == leastSignificantBits) {
+                return values[index] - 1;
+            }
+        }
+
+        int slot = size++;
+        this.keyMostSignificantBits[index] = mostSignificantBits;
+        this.keyLeastSignificantBits[index] = leastSignificantBits;
+        this.values[index] = slot + 1;
+
+        // Keep the table at most half full such that probe sequences remain short
+        if (size * 2 > values.length) {
+            this.resize(values.length * 2);
+        }
+
+        return slot;
+    }
+
+    /**
+     * Get the amount of damagers in this table.
+     *
+     * @return the amount of damagers
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Remove all damagers from this table.
+     */
+    void clear() {
+        Arrays.fill(values, EMPTY);
+        this.size = 0;
+    }
+
+    private void resize(int capacity) {
+        long[] oldMostSignificantBits = keyMostSignificantBits, oldLeastSignificantBits = keyLeastSignificantBits;
+        int[] oldValues = values;
+
+        this.keyMostSignificantBits = new long[capacity];
+        this.keyLeastSignificantBits = new long[capacity];
+        this.values = new int[capacity];
+
+        int mask = capacity - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] == EMPTY) {
+                continue;
+            }
+
+            int index = hash(oldMostSignificantBits[i], oldLeastSignificantBits[i]) & mask;
+            while (values[index] != EMPTY) {
+                index = (index + 1) & mask;
+            }
+
+            this.keyMostSignificantBits[index] = oldMostSignificantBits[i];
+            this.keyLeastSignificantBits[index] = oldLeastSignificantBits[i];
+            this.values[index] = oldValues[i];
+        }
+    }
+
+    private static int hash(long mostSignificantBits, long leastSignificantBits) {
+        // Player UUIDs are mostly random, but offline mode UUIDs share their version and variant bits. Mix all bits regardless
+        long hash = (mostSignificantBits ^ Long.rotateLeft(leastSignificantBits, 32)) * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+}
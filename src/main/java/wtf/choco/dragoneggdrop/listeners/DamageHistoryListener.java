@@ -8,6 +8,7 @@ import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.entity.EntityDamageByEntityEvent;
 import org.bukkit.event.entity.EntityDamageEvent.DamageCause;
+import org.bukkit.event.world.ChunkUnloadEvent;
 import org.bukkit.projectiles.ProjectileSource;
 import org.jetbrains.annotations.NotNull;
 
@@ -48,6 +49,19 @@ public final class DamageHistoryListener implements Listener {
         DamageHistory.forEntity(damaged).recordDamage(damager, event.getFinalDamage());
     }
 
+    @EventHandler
+    private void onUnloadDragon(ChunkUnloadEvent event) {
+        if (DamageHistory.getLiveHistoryCount() == 0) {
+            return;
+        }
+
+        for (Entity entity : event.getChunk().getEntities()) {
+            if (entity.getType() == EntityType.ENDER_DRAGON) {
+                DamageHistory.notifyUnload(entity);
+            }
+        }
+    }
+
     @EventHandler
     private void onEntityDamagedByLightning(EntityDamageByEntityEvent event) {
         if (event.getCause() != DamageCause.LIGHTNING || plugin.getConfig().getBoolean(DEDConstants.CONFIG_LIGHTNING_DAMAGES_ENTITIES, false)) {
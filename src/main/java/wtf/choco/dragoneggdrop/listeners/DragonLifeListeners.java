@@ -125,6 +125,7 @@ public final class DragonLifeListeners implements Listener {
         if (dragonTemplate != null) {
             DragonBattleRecord record = new DragonBattleRecord(worldWrapper, dragonTemplate, DamageHistory.forEntity(dragon), System.currentTimeMillis(), worldWrapper.getLootTableOverride());
             worldWrapper.recordDragonBattle(record);
+            DamageHistory.evict(dragon.getUniqueId(), DamageHistory.EvictionReason.CAPTURED);
         }
 
         BattleStateChangeEvent bscEventCrystals = new BattleStateChangeEvent(dragonBattle, dragon, BattleState.BATTLE_COMMENCED, BattleState.BATTLE_END);
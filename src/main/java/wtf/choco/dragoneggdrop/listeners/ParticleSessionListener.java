@@ -0,0 +1,33 @@
+package wtf.choco.dragoneggdrop.listeners;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+
+import wtf.choco.dragoneggdrop.particle.AnimatedParticleSession;
+
+/**
+ * Notifies particle sessions of block changes in the columns they animate in such that their
+ * cached stop levels are rescanned. Only block placement and breaking are watched as bedrock is
+ * immune to explosions, pistons and fluids. Changes made without an event (i.e. by commands or
+ * other plugins) are caught by each session's periodic rescan.
+ *
+ * @author Parker Hawke - Choco
+ *
+ * @see AnimatedParticleSession#notifyBlockChange(org.bukkit.block.Block)
+ */
+public final class ParticleSessionListener implements Listener {
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    private void onPlaceBlock(BlockPlaceEvent event) {
+        AnimatedParticleSession.notifyBlockChange(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    private void onBreakBlock(BlockBreakEvent event) {
+        AnimatedParticleSession.notifyBlockChange(event.getBlock());
+    }
+
+}
@@ -2,20 +2,33 @@ package wtf.choco.dragoneggdrop.particle;
 
 import com.google.common.base.Preconditions;
 
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
+import org.bukkit.block.Block;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import wtf.choco.commons.util.MathUtil;
-import wtf.choco.dragoneggdrop.particle.condition.ConditionContext;
 
 /**
  * Represents a set of tickable equation data capable of animating a {@link ParticleShapeDefinition}
  * in the world. Stated data for a specific animation.
+ * <p>
+ * Sessions are pooled by their shape definition. Once a session has finished animating, it
+ * may be handed back with {@link ParticleShapeDefinition#releaseSession(AnimatedParticleSession)}
+ * to be reset and reused by a later call to {@code createSession()}.
  *
  * @author Parker Hawke - Choco
  *
@@ -23,83 +36,339 @@ import wtf.choco.dragoneggdrop.particle.condition.ConditionContext;
  */
 public class AnimatedParticleSession {
 
-    private int animationTick = 0;
-    private double theta = 0.0;
-    private int wait = 0;
+    /**
+     * The maximum amount of frames computed ahead of time when computing asynchronously.
+     */
+    public static final int MAX_FRAMES_AHEAD = 4;
+
+    // Sessions watching each block column (keyed by packed x and z) for changes that may affect when they should stop
+    private static final Map<@NotNull Long, @NotNull Set<@NotNull AnimatedParticleSession>> WATCHED_COLUMNS = new HashMap<>();
+    private static int watchedColumnsPurgeThreshold = 16;
+
+    // Blocks may change without an event (i.e. by commands or other plugins), so the levels above the next stop level are rescanned periodically
+    private static final int RESCAN_INTERVAL_TICKS = 20;
+
+    // Compute stage. Only ever accessed by one thread at a time
+    private ParticleTrack track;
+    private int trackTick = 0;
+    private double computeY;
+
+    // Asynchronous pipeline. Frames in [emittedFrames, computedFrames) are ready to be displayed
+    private Executor executor;
+    private ParticleFrame[] frames;
+    private volatile int computedFrames = 0, emittedFrames = 0;
+    private volatile RuntimeException computeFailure;
+    private final AtomicBoolean computing = new AtomicBoolean();
 
     private final ParticleShapeDefinition shape;
     private final List<@NotNull ConditionalEquationData> equationData;
 
-    private final World world;
-    private final Location currentLocation;
-    private final ParticleVariables variables;
-    private final ConditionContext equationContext;
+    private World world;
+    private double originX, originZ;
+    private double currentY;
+    private final AnimationState state;
+    private final ParticleFrame frame = new ParticleFrame();
+    private final Runnable computeTask = this::computeAhead;
+    private ParticleScheduler scheduler;
+    private boolean ticked = false, released = false;
 
-    AnimatedParticleSession(@NotNull ParticleShapeDefinition definition, @NotNull List<@NotNull ConditionalEquationData> equationData, @NotNull World world, double x, double y, double z) {
+    // The y coordinates at which the animation should stop in this session's block column
+    private int blockX, blockZ;
+    private final BitSet stopLevels = new BitSet();
+    private boolean stopLevelsStale;
+    private int ticksUntilRescan;
+
+    AnimatedParticleSession(@NotNull ParticleShapeDefinition definition, @NotNull List<@NotNull ConditionalEquationData> equationData, @Nullable EquationSelector selector, @Nullable ParticleTrack track, @NotNull World world, double x, double y, double z) {
         Preconditions.checkArgument(definition != null, "definition must not be null");
         Preconditions.checkArgument(equationData != null, "equationData must not be null");
         Preconditions.checkArgument(world != null, "world must not be null");
 
         this.shape = definition;
         this.equationData = equationData;
+        this.track = track;
+        this.computeY = y;
 
         this.world = world;
-        this.currentLocation = new Location(world, x, y, z);
-        this.variables = new ParticleVariables();
-        this.equationContext = new ConditionContext(variables, world);
+        this.originX = x;
+        this.originZ = z;
+        this.currentY = y;
+        this.state = new AnimationState(equationData, selector, world, definition.createRandom());
+
+        this.blockX = (int) Math.floor(x);
+        this.blockZ = (int) Math.floor(z);
+        this.scanColumn(Math.min((int) Math.floor(y), world.getMaxHeight() - 1), 0);
+        this.watchColumn();
     }
 
     /**
-     * Tick this animation.
+     * Reset this session such that it animates its shape from the start at the given
+     * coordinates, as if it were newly created. Buffers are kept such that a reset session
+     * need not allocate them again.
+     *
+     * @param track the shape's precomputed track, or null if evaluated live
+     * @param world the world in which to animate
+     * @param x the x coordinate at which the animation should originate
+     * @param y the y coordinate at which the animation should originate
+     * @param z the z coordinate at which the animation should originate
      */
-    public void tick() {
-        ConditionalEquationData equationData = getEquationDataForCurrentContext();
-        if (equationData == null) {
-            return;
+    void reset(@Nullable ParticleTrack track, @NotNull World world, double x, double y, double z) {
+        Preconditions.checkArgument(world != null, "world must not be null");
+        Preconditions.checkState(released, "session must be released before it is reset");
+
+        this.track = track;
+        this.trackTick = 0;
+        this.computeY = y;
+
+        this.executor = null;
+        this.computedFrames = 0;
+        this.emittedFrames = 0;
+        this.computeFailure = null;
+
+        this.world = world;
+        this.originX = x;
+        this.originZ = z;
+        this.currentY = y;
+        this.state.reset(world);
+        this.shape.reseedRandom(state.getRandom());
+
+        this.scheduler = null;
+        this.ticked = false;
+        this.released = false;
+
+        this.blockX = (int) Math.floor(x);
+        this.blockZ = (int) Math.floor(z);
+        this.stopLevels.clear();
+        this.scanColumn(Math.min((int) Math.floor(y), world.getMaxHeight() - 1), 0);
+        this.watchColumn();
+    }
+
+    /**
+     * Mark this session as released such that it may be reset and reused. Sessions still
+     * computing frames asynchronously may not be released.
+     *
+     * @return true if released, false if still computing
+     */
+    boolean release() {
+        Preconditions.checkState(!released, "session has already been released");
+
+        if (computing.get()) {
+            return false;
         }
 
-        if (++wait < equationData.getFrameIntervalTicks()) {
-            return;
+        // Frames are no longer needed. Drop references to the equation data they hold
+        this.frame.clear();
+        if (frames != null) {
+            for (ParticleFrame frame : frames) {
+                frame.clear();
+            }
         }
 
-        this.animationTick++;
-        this.theta += equationData.getThetaIncrement();
-        this.variables.update(currentLocation.getX(), currentLocation.getY(), currentLocation.getZ(), animationTick, 0.0);
+        long key = getColumnKey(blockX, blockZ);
+        Set<@NotNull AnimatedParticleSession> sessions = WATCHED_COLUMNS.get(key);
+        if (sessions != null && sessions.remove(this) && sessions.isEmpty()) {
+            WATCHED_COLUMNS.remove(key);
+        }
 
-        double streamSeparationDegrees = 360.0 / Math.max(equationData.getParticleStreams(), 1);
-        if (streamSeparationDegrees < 360) { // If there is more than one stream...
-            for (int i = 0; i <= 360; i += streamSeparationDegrees) {
-                this.displayParticles(equationData);
-                this.variables.update(currentLocation.getX(), currentLocation.getY(), currentLocation.getZ(), animationTick, theta += streamSeparationDegrees);
+        this.released = true;
+        return true;
+    }
+
+    /**
+     * Compute this session's frames asynchronously using the given {@link Executor}. Up to
+     * {@link #MAX_FRAMES_AHEAD} frames will be computed ahead of time such that {@link #tick()}
+     * need only spawn particles. If a frame has not yet been computed when this session is
+     * ticked, it will instead be displayed on the following tick.
+     * <p>
+     * Computing a frame checks the conditions of the shape's equation data. If any of them
+     * are not thread safe (see {@link ParticleShapeDefinition#isThreadSafe()}), this method
+     * does nothing and the session continues to compute its frames on the main thread.
+     * <p>
+     * This must be called before this session is first ticked.
+     *
+     * @param executor the executor on which to compute frames
+     *
+     * @see #isAsync()
+     */
+    public void computeAsync(@NotNull Executor executor) {
+        Preconditions.checkArgument(executor != null, "executor must not be null");
+        Preconditions.checkState(this.executor == null, "session is already computing asynchronously");
+        Preconditions.checkState(!ticked, "session has already been ticked");
+
+        if (!shape.isThreadSafe()) {
+            return;
+        }
+
+        this.executor = executor;
+        if (frames == null) { // Reset sessions keep their frames
+            this.frames = new ParticleFrame[MAX_FRAMES_AHEAD];
+            for (int i = 0; i < frames.length; i++) {
+                this.frames[i] = new ParticleFrame();
             }
         }
-        else {
-            this.displayParticles(equationData);
+
+        this.scheduleComputation();
+    }
+
+    /**
+     * Check whether or not this session computes its frames asynchronously.
+     *
+     * @return true if asynchronous, false otherwise
+     *
+     * @see #computeAsync(Executor)
+     */
+    public boolean isAsync() {
+        return executor != null;
+    }
+
+    /**
+     * Evaluate the points of each frame in parallel on the given {@link ForkJoinPool} if the
+     * frame has at least the given amount of points. Frames with fewer points, or whose
+     * equation data reads random values, are evaluated sequentially. Particles are spawned on
+     * the main thread regardless.
+     * <p>
+     * This must be called before this session is first ticked or computes asynchronously.
+     *
+     * @param pool the pool on which to evaluate points, or null to always evaluate sequentially
+     * @param threshold the minimum amount of points in a frame for it to be evaluated in
+     * parallel. Must be positive
+     *
+     * @see ConditionalEquationData#isParallelizable()
+     */
+    public void setParallelEvaluation(@Nullable ForkJoinPool pool, int threshold) {
+        Preconditions.checkArgument(threshold > 0, "threshold must be positive");
+        Preconditions.checkState(executor == null, "session is already computing asynchronously");
+        Preconditions.checkState(!ticked, "session has already been ticked");
+
+        this.state.setParallelEvaluation(pool, threshold);
+    }
+
+    /**
+     * Set the {@link ParticleScheduler} to which this session's frames should be submitted. If
+     * the scheduler neither is limited nor batches frames, frames will be displayed by the
+     * scheduler immediately. If null, frames will be displayed immediately to all players in
+     * range.
+     *
+     * @param scheduler the scheduler to set
+     */
+    public void setScheduler(@Nullable ParticleScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Get the {@link ParticleScheduler} to which this session's frames are submitted.
+     *
+     * @return the scheduler, or null if frames are displayed immediately
+     */
+    @Nullable
+    public ParticleScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Tick this animation.
+     */
+    public void tick() {
+        Preconditions.checkState(!released, "session has been released");
+        this.ticked = true;
+
+        if (executor == null) {
+            this.computeFrame(frame);
+            this.displayFrame(frame);
+            return;
         }
 
-        this.currentLocation.subtract(0.0D, MathUtil.clamp(equationData.getSpeedMultiplier(), 0.1, 2.0), 0.0D);
-        this.wait = 0;
+        RuntimeException failure = computeFailure;
+        if (failure != null) {
+            throw new IllegalStateException("Could not compute particle frame for shape " + shape.getId(), failure);
+        }
+
+        int emitted = emittedFrames;
+        if (emitted < computedFrames) {
+            this.displayFrame(frames[emitted % frames.length]);
+            this.emittedFrames = emitted + 1;
+        }
+
+        this.scheduleComputation();
     }
 
     /**
      * Check whether or not this particle session should stop animating. Note that despite the
      * result of this method, this session may still be ticked. The stopping of the animation should
      * be handled by the class calling upon this session.
+     * <p>
+     * Stop levels are cached per block column and kept up to date by {@link #notifyBlockChange(Block)}.
+     * As blocks may also change without an event, a cached stop level is confirmed against the
+     * live block before stopping, and the levels above the next cached stop level are rescanned
+     * periodically.
      *
      * @return true if should stop, false otherwise
      */
     public boolean shouldStop() {
-        return currentLocation.getBlock().getType() == Material.BEDROCK || equationData.isEmpty();
+        if (equationData.isEmpty()) {
+            return true;
+        }
+
+        int y = (int) Math.floor(currentY);
+        if (y < 0) {
+            return false;
+        }
+
+        if (stopLevelsStale) {
+            this.scanColumn(Math.min(y, world.getMaxHeight() - 1), 0);
+        }
+        else if (--ticksUntilRescan <= 0) {
+            this.scanColumn(Math.min(y, world.getMaxHeight() - 1), Math.max(stopLevels.previousSetBit(y), 0));
+        }
+
+        if (!stopLevels.get(y)) {
+            return false;
+        }
+
+        if (world.getBlockAt(blockX, y, blockZ).getType() == Material.BEDROCK) {
+            return true;
+        }
+
+        this.stopLevels.clear(y); // Removed without an event
+        return false;
     }
 
     /**
-     * Get the {@link Location} at which this session is currently animating.
+     * Get the {@link Location} at which this session is currently animating. A new Location
+     * is created on every call. Prefer {@link #getCurrentX()}, {@link #getCurrentY()} and
+     * {@link #getCurrentZ()} where called every tick.
      *
      * @return the current location
      */
     @NotNull
     public Location getCurrentLocation() {
-        return currentLocation.clone();
+        return new Location(world, originX, currentY, originZ);
+    }
+
+    /**
+     * Get the x coordinate at which this session is currently animating.
+     *
+     * @return the current x coordinate
+     */
+    public double getCurrentX() {
+        return originX;
+    }
+
+    /**
+     * Get the y coordinate at which this session is currently animating.
+     *
+     * @return the current y coordinate
+     */
+    public double getCurrentY() {
+        return currentY;
+    }
+
+    /**
+     * Get the z coordinate at which this session is currently animating.
+     *
+     * @return the current z coordinate
+     */
+    public double getCurrentZ() {
+        return originZ;
     }
 
     /**
@@ -112,23 +381,156 @@ public class AnimatedParticleSession {
         return shape;
     }
 
-    @Nullable
-    private ConditionalEquationData getEquationDataForCurrentContext() {
-        for (ConditionalEquationData equation : equationData) {
-            if (equation.isMet(equationContext)) {
-                return equation;
+    @NotNull
+    ParticleRandom getRandom() {
+        return state.getRandom();
+    }
+
+    /**
+     * Notify all sessions animating in the column of the given block that the block has
+     * changed. Sessions will rescan their column the next time {@link #shouldStop()} is called.
+     * Changes that do not fire an event are picked up by the periodic rescan instead.
+     * <p>
+     * This must be called on the main thread.
+     *
+     * @param block the block that has changed
+     */
+    public static void notifyBlockChange(@NotNull Block block) {
+        Preconditions.checkArgument(block != null, "block must not be null");
+
+        if (WATCHED_COLUMNS.isEmpty()) {
+            return;
+        }
+
+        long key = getColumnKey(block.getX(), block.getZ());
+        Set<@NotNull AnimatedParticleSession> sessions = WATCHED_COLUMNS.get(key);
+        if (sessions == null) {
+            return;
+        }
+
+        World world = block.getWorld();
+        for (AnimatedParticleSession session : sessions) {
+            if (session.world == world) {
+                session.stopLevelsStale = true;
+            }
+        }
+
+        if (sessions.isEmpty()) {
+            WATCHED_COLUMNS.remove(key);
+        }
+    }
+
+    // Record every bedrock block in this session's column between the given levels (inclusive). The animation only ever descends
+    private void scanColumn(int top, int bottom) {
+        if (top >= bottom) {
+            this.stopLevels.clear(bottom, top + 1);
+        }
+
+        for (int y = top; y >= bottom; y--) {
+            if (world.getBlockAt(blockX, y, blockZ).getType() == Material.BEDROCK) {
+                this.stopLevels.set(y);
             }
         }
 
-        return null;
+        this.stopLevelsStale = false;
+        this.ticksUntilRescan = RESCAN_INTERVAL_TICKS;
     }
 
-    private void displayParticles(@NotNull ConditionalEquationData equationData) {
-        double x = equationData.getXExpression().evaluate(variables), z = equationData.getZExpression().evaluate(variables);
+    private void watchColumn() {
+        // Forget columns whose sessions have all been collected, but only once the map has doubled in size since the last purge
+        if (WATCHED_COLUMNS.size() >= watchedColumnsPurgeThreshold) {
+            WATCHED_COLUMNS.values().removeIf(Set::isEmpty);
+            watchedColumnsPurgeThreshold = Math.max(WATCHED_COLUMNS.size() * 2, 16);
+        }
+
+        WATCHED_COLUMNS.computeIfAbsent(getColumnKey(blockX, blockZ), key -> Collections.newSetFromMap(new WeakHashMap<>())).add(this);
+    }
+
+    private void scheduleComputation() {
+        if (!computing.compareAndSet(false, true)) {
+            return;
+        }
+
+        this.executor.execute(computeTask);
+    }
+
+    // Compute frames until MAX_FRAMES_AHEAD frames are ready to be displayed
+    private void computeAhead() {
+        try {
+            int computed = computedFrames;
+            while (computed - emittedFrames < frames.length) {
+                this.computeFrame(frames[computed % frames.length]);
+                this.computedFrames = ++computed;
+            }
+        } catch (RuntimeException e) {
+            this.computeFailure = e;
+        } finally {
+            this.computing.set(false);
+        }
+    }
+
+    // Compute stage. Must not interact with the world beyond what conditions require
+    private void computeFrame(@NotNull ParticleFrame frame) {
+        ConditionalEquationData equationData;
+
+        if (track != null && track.ensureComputed(trackTick, world)) {
+            int tick = trackTick++;
+
+            equationData = track.getFrameData(tick);
+            if (equationData != null) {
+                frame.set(equationData, track.getOffsets(), track.getFrameStart(tick));
+            }
+        }
+        else {
+            if (track != null) {
+                // This session has outlived its track. Continue animating live from where the track left off
+                this.state.copyFrom(track.getEndState(world));
+                this.track = null;
+            }
+
+            equationData = state.tick(originX, computeY, originZ);
+            if (equationData != null) {
+                frame.copy(equationData, state.getOffsetX(), state.getOffsetZ());
+            }
+        }
+
+        if (equationData == null) {
+            frame.clear();
+            return;
+        }
+
+        this.computeY -= getDescent(equationData);
+    }
+
+    // Display stage. Only ever called on the main thread
+    private void displayFrame(@NotNull ParticleFrame frame) {
+        ConditionalEquationData equationData = frame.getEquationData();
+        if (equationData == null) {
+            return;
+        }
+
+        double[] offsets = frame.getOffsets();
+        if (scheduler != null && scheduler.isDeferring()) {
+            this.scheduler.submit(world, equationData, originX, currentY, originZ, offsets, frame.getStart(), frame.getEnd());
+        }
+        else if (scheduler != null) {
+            this.scheduler.display(world, equationData, originX, currentY, originZ, offsets, frame.getStart(), frame.getEnd());
+        }
+        else {
+            for (int i = frame.getStart(); i < frame.getEnd(); i += 2) {
+                this.world.spawnParticle(equationData.getParticle(), originX + offsets[i], currentY, originZ + offsets[i + 1], equationData.getParticleAmount(), equationData.getParticleOffsetX(), equationData.getParticleOffsetY(), equationData.getParticleOffsetZ(), equationData.getParticleExtra(), null, true);
+            }
+        }
+
+        this.currentY -= getDescent(equationData);
+    }
+
+    private static long getColumnKey(int x, int z) {
+        return ((long) x << 32) | (z & 0xFFFFFFFFL);
+    }
 
-        this.currentLocation.add(x, 0.0, z);
-        this.world.spawnParticle(equationData.getParticle(), currentLocation, equationData.getParticleAmount(), equationData.getParticleOffsetX(), equationData.getParticleOffsetY(), equationData.getParticleOffsetZ(), equationData.getParticleExtra(), null, true);
-        this.currentLocation.subtract(x, 0.0, z);
+    private static double getDescent(@NotNull ConditionalEquationData equationData) {
+        return MathUtil.clamp(equationData.getSpeedMultiplier(), 0.1, 2.0);
     }
 
 }
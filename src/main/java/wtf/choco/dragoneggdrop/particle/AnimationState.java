@@ -0,0 +1,275 @@
+package wtf.choco.dragoneggdrop.particle;
+
+import com.google.common.base.Preconditions;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.bukkit.World;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import wtf.choco.dragoneggdrop.particle.condition.ConditionContext;
+
+/**
+ * The mutable state of a particle animation. Responsible for selecting the equation data for
+ * each tick and evaluating the relative offset of every point in a frame.
+ *
+ * @author Parker Hawke - Choco
+ */
+final class AnimationState {
+
+    private static final int MIN_POINTS_PER_TASK = 8;
+
+    private int animationTick = 0;
+    private double theta = 0.0;
+    private int wait = 0;
+
+    private final List<@NotNull ConditionalEquationData> equationData;
+    private final EquationSelector selector;
+    private int worldId;
+    private final ParticleVariables variables;
+    private ConditionContext equationContext;
+
+    // Per-frame evaluation buffers, one entry per point. Grown as needed
+    private double[] frameT = new double[0], frameTheta = new double[0];
+    private double[] offsetX = new double[0], offsetZ = new double[0];
+
+    // Parallel evaluation. If the pool is null, points are always evaluated sequentially
+    private ForkJoinPool pool;
+    private int parallelThreshold;
+    private EvaluationTask[] tasks;
+    private final RecursiveAction evaluateTasks = new EvaluateTasksAction();
+    private int taskCount;
+
+    AnimationState(@NotNull List<@NotNull ConditionalEquationData> equationData, @Nullable EquationSelector selector, @NotNull World world, @NotNull ParticleRandom random) {
+        this.equationData = equationData;
+        this.selector = selector;
+        this.worldId = (selector != null) ? selector.getWorldId(world) : -1;
+        this.variables = new ParticleVariables(random);
+        this.equationContext = new ConditionContext(variables, world);
+    }
+
+    /**
+     * Advance the animation by one tick. If a frame is to be displayed this tick, the offsets
+     * of each of its points are made available through {@link #getOffsetX()} and
+     * {@link #getOffsetZ()}.
+     *
+     * @param x the current x coordinate of the animation
+     * @param y the current y coordinate of the animation
+     * @param z the current z coordinate of the animation
+     *
+     * @return the equation data of the frame to display, or null if no frame is to be displayed
+     */
+    @Nullable
+    ConditionalEquationData tick(double x, double y, double z) {
+        ConditionalEquationData equationData = getEquationDataForCurrentContext();
+        if (equationData == null) {
+            return null;
+        }
+
+        if (++wait < equationData.getFrameIntervalTicks()) {
+            return null;
+        }
+
+        this.animationTick++;
+        this.theta += equationData.getThetaIncrement();
+
+        int points = equationData.getPointsPerFrame();
+        this.ensureCapacity(points);
+
+        // The first point is always displayed at a theta of 0. Every other point is offset from the current theta by one stream
+        double streamSeparationDegrees = equationData.getStreamSeparationDegrees();
+        double streamTheta = theta;
+        this.frameT[0] = animationTick;
+        this.frameTheta[0] = 0.0;
+        for (int i = 1; i < points; i++) {
+            this.frameT[i] = animationTick;
+            this.frameTheta[i] = (streamTheta += streamSeparationDegrees);
+        }
+
+        if (points > 1) {
+            this.theta = streamTheta + streamSeparationDegrees;
+        }
+
+        this.variables.update(x, y, z, animationTick, 0.0);
+        this.evaluate(equationData, points);
+        this.variables.update(x, y, z, animationTick, (points > 1) ? theta : 0.0);
+
+        this.wait = 0;
+        return equationData;
+    }
+
+    /**
+     * Evaluate the points of frames with at least the given amount of points in parallel on
+     * the given pool. Frames with fewer points, or whose equation data may not be evaluated in
+     * parallel, are evaluated sequentially on the calling thread.
+     *
+     * @param pool the pool on which to evaluate points, or null to always evaluate sequentially
+     * @param threshold the minimum amount of points in a frame for it to be evaluated in
+     * parallel. Must be positive
+     *
+     * @see ConditionalEquationData#isParallelizable()
+     */
+    void setParallelEvaluation(@Nullable ForkJoinPool pool, int threshold) {
+        Preconditions.checkArgument(threshold > 0, "threshold must be positive");
+
+        this.pool = pool;
+        this.parallelThreshold = threshold;
+
+        if (pool != null && (tasks == null || tasks.length != pool.getParallelism())) {
+            this.tasks = new EvaluationTask[pool.getParallelism()];
+            for (int i = 0; i < tasks.length; i++) {
+                this.tasks[i] = new EvaluationTask();
+            }
+        }
+    }
+
+    /**
+     * Reset this state to the start of the animation in the given world. The parallel
+     * evaluation pool is cleared, though its tasks are kept in case the same pool is set again.
+     *
+     * @param world the world in which the animation is to be displayed
+     */
+    void reset(@NotNull World world) {
+        this.animationTick = 0;
+        this.theta = 0.0;
+        this.wait = 0;
+        this.variables.update(0.0, 0.0, 0.0, 0.0, 0.0);
+        this.pool = null;
+
+        if (equationContext.getWorld() != world) {
+            this.worldId = (selector != null) ? selector.getWorldId(world) : -1;
+            this.equationContext = new ConditionContext(variables, world);
+        }
+    }
+
+    /**
+     * Get the source of values read from the random variable.
+     *
+     * @return the random source
+     */
+    @NotNull
+    ParticleRandom getRandom() {
+        return variables.getRandom();
+    }
+
+    /**
+     * Get the x offsets of the points in the last displayed frame. Only the first
+     * {@link ConditionalEquationData#getPointsPerFrame()} entries are meaningful.
+     *
+     * @return the x offsets
+     */
+    double @NotNull [] getOffsetX() {
+        return offsetX;
+    }
+
+    /**
+     * Get the z offsets of the points in the last displayed frame. Only the first
+     * {@link ConditionalEquationData#getPointsPerFrame()} entries are meaningful.
+     *
+     * @return the z offsets
+     */
+    double @NotNull [] getOffsetZ() {
+        return offsetZ;
+    }
+
+    /**
+     * Copy the progress of another animation state into this state such that both states will
+     * produce the same frames from this point onward.
+     *
+     * @param other the state to copy
+     */
+    void copyFrom(@NotNull AnimationState other) {
+        this.animationTick = other.animationTick;
+        this.theta = other.theta;
+        this.wait = other.wait;
+        this.variables.update(other.variables.getX(), other.variables.getY(), other.variables.getZ(), other.variables.getT(), other.variables.getTheta());
+    }
+
+    @Nullable
+    private ConditionalEquationData getEquationDataForCurrentContext() {
+        if (selector != null) {
+            return selector.select(variables, worldId);
+        }
+
+        // Indexed rather than iterated such that no iterator is allocated every tick
+        for (int i = 0; i < equationData.size(); i++) {
+            ConditionalEquationData equation = equationData.get(i);
+            if (equation.isMet(equationContext)) {
+                return equation;
+            }
+        }
+
+        return null;
+    }
+
+    private void evaluate(@NotNull ConditionalEquationData equationData, int points) {
+        int taskCount = (pool != null && points >= parallelThreshold) ? Math.min(tasks.length, (points + MIN_POINTS_PER_TASK - 1) / MIN_POINTS_PER_TASK) : 1;
+        if (taskCount <= 1 || !equationData.isParallelizable()) {
+            equationData.evaluate(variables, frameT, frameTheta, offsetX, offsetZ, points);
+            return;
+        }
+
+        // Split the frame's points evenly between tasks, each with its own copy of the variables
+        for (int i = 0; i < taskCount; i++) {
+            EvaluationTask task = tasks[i];
+            task.reinitialize();
+            task.equationData = equationData;
+            task.from = (int) ((long) points * i / taskCount);
+            task.to = (int) ((long) points * (i + 1) / taskCount);
+            task.variables.update(variables.getX(), variables.getY(), variables.getZ(), variables.getT(), variables.getTheta());
+        }
+
+        this.taskCount = taskCount;
+        this.evaluateTasks.reinitialize();
+        this.pool.invoke(evaluateTasks);
+    }
+
+    private void ensureCapacity(int points) {
+        if (frameT.length >= points) {
+            return;
+        }
+
+        this.frameT = new double[points];
+        this.frameTheta = new double[points];
+        this.offsetX = new double[points];
+        this.offsetZ = new double[points];
+    }
+
+    private final class EvaluateTasksAction extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void compute() {
+            for (int i = taskCount - 1; i > 0; i--) {
+                tasks[i].fork();
+            }
+
+            tasks[0].invoke();
+
+            for (int i = 1; i < taskCount; i++) {
+                tasks[i].join();
+            }
+        }
+
+    }
+
+    private final class EvaluationTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private ConditionalEquationData equationData;
+        private int from, to;
+        private final ParticleVariables variables = new ParticleVariables();
+
+        @Override
+        protected void compute() {
+            this.equationData.evaluate(variables, frameT, frameTheta, offsetX, offsetZ, from, to);
+        }
+
+    }
+
+}
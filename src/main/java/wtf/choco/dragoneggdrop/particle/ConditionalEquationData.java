@@ -3,6 +3,7 @@ package wtf.choco.dragoneggdrop.particle;
 import com.google.common.base.Preconditions;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.bukkit.Particle;
@@ -21,6 +22,10 @@ import wtf.choco.dragoneggdrop.utils.math.MathExpression;
  */
 public class ConditionalEquationData {
 
+    private static final int[] SESSION_DEPENDENT_SLOTS = {
+        ParticleVariables.SLOT_X, ParticleVariables.SLOT_Y, ParticleVariables.SLOT_Z, ParticleVariables.SLOT_RANDOM
+    };
+
     Particle particle;
     int particleAmount;
     double particleExtra;
@@ -32,6 +37,7 @@ public class ConditionalEquationData {
     double thetaIncrement;
 
     private List<@NotNull EquationCondition> conditions;
+    private int pointsPerFrame = -1;
 
     private final MathExpression xExpression, zExpression;
 
@@ -69,6 +75,51 @@ public class ConditionalEquationData {
         return zExpression;
     }
 
+    /**
+     * Evaluate both the x and z expressions over a batch of t and theta values.
+     *
+     * @param variables the variables against which to evaluate
+     * @param t the values of t to evaluate
+     * @param theta the values of theta to evaluate
+     * @param outX the array to which x results should be written
+     * @param outZ the array to which z results should be written
+     * @param length the amount of values to evaluate
+     *
+     * @see MathExpression#evaluate(ParticleVariables, double[], double[], double[], int)
+     */
+    public void evaluate(@NotNull ParticleVariables variables, double @NotNull [] t, double @NotNull [] theta, double @NotNull [] outX, double @NotNull [] outZ, int length) {
+        this.evaluate(variables, t, theta, outX, outZ, 0, length);
+    }
+
+    /**
+     * Evaluate both the x and z expressions over a range of a batch of t and theta values.
+     *
+     * @param variables the variables against which to evaluate
+     * @param t the values of t to evaluate
+     * @param theta the values of theta to evaluate
+     * @param outX the array to which x results should be written
+     * @param outZ the array to which z results should be written
+     * @param from the index of the first value to evaluate (inclusive)
+     * @param to the index after the last value to evaluate (exclusive)
+     *
+     * @see MathExpression#evaluate(ParticleVariables, double[], double[], double[], int, int)
+     */
+    public void evaluate(@NotNull ParticleVariables variables, double @NotNull [] t, double @NotNull [] theta, double @NotNull [] outX, double @NotNull [] outZ, int from, int to) {
+        this.xExpression.evaluate(variables, t, theta, outX, from, to);
+        this.zExpression.evaluate(variables, t, theta, outZ, from, to);
+    }
+
+    /**
+     * Check whether or not disjoint ranges of a batch may be evaluated concurrently. This is
+     * not the case if either expression reads a random value or calls upon an operator with
+     * side effects, neither of which are guaranteed to be thread safe.
+     *
+     * @return true if parallelizable, false otherwise
+     */
+    public boolean isParallelizable() {
+        return !xExpression.dependsOn(ParticleVariables.SLOT_RANDOM) && !zExpression.dependsOn(ParticleVariables.SLOT_RANDOM);
+    }
+
     /**
      * Add a condition that must be met for this equation data.
      *
@@ -84,6 +135,16 @@ public class ConditionalEquationData {
         this.conditions.add(condition);
     }
 
+    /**
+     * Get an unmodifiable view of the conditions that must be met for this equation data.
+     *
+     * @return the conditions
+     */
+    @NotNull
+    public List<@NotNull EquationCondition> getConditions() {
+        return (conditions != null) ? Collections.unmodifiableList(conditions) : Collections.emptyList();
+    }
+
     /**
      * Check whether or not this equation data's conditions have all been met given the
      * provided context.
@@ -99,8 +160,8 @@ public class ConditionalEquationData {
             return true;
         }
 
-        for (EquationCondition condition : conditions) {
-            if (!condition.isMet(context)) {
+        for (int i = 0; i < conditions.size(); i++) {
+            if (!conditions.get(i).isMet(context)) {
                 return false;
             }
         }
@@ -108,6 +169,54 @@ public class ConditionalEquationData {
         return true;
     }
 
+    /**
+     * Check whether or not this equation data may produce different results for two sessions
+     * at the same point in their animation. Equation data is session dependent if either of its
+     * expressions read the session's location or a random value, or if any of its conditions
+     * are session dependent.
+     *
+     * @return true if session dependent, false otherwise
+     *
+     * @see EquationCondition#isSessionDependent()
+     */
+    public boolean isSessionDependent() {
+        for (int slot : SESSION_DEPENDENT_SLOTS) {
+            if (xExpression.dependsOn(slot) || zExpression.dependsOn(slot)) {
+                return true;
+            }
+        }
+
+        if (conditions != null) {
+            for (EquationCondition condition : conditions) {
+                if (condition.isSessionDependent()) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Check whether or not all of this equation data's conditions may safely be checked off of
+     * the server's main thread.
+     *
+     * @return true if thread safe, false otherwise
+     *
+     * @see EquationCondition#isThreadSafe()
+     */
+    public boolean isThreadSafe() {
+        if (conditions != null) {
+            for (EquationCondition condition : conditions) {
+                if (!condition.isThreadSafe()) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
     /**
      * Get the particle to be spawned for this shape definition.
      *
@@ -173,6 +282,41 @@ public class ConditionalEquationData {
         return particleStreams;
     }
 
+    /**
+     * Get the amount of points displayed every frame of the animation. If there is more than
+     * one particle stream, the first point is displayed at a theta of 0 and each subsequent
+     * point is separated by {@code 360 / getParticleStreams()} degrees until a full rotation
+     * has been completed (inclusive).
+     *
+     * @return the amount of points per frame
+     */
+    public int getPointsPerFrame() {
+        if (pointsPerFrame == -1) {
+            double streamSeparationDegrees = getStreamSeparationDegrees();
+            int points = 1;
+
+            if (streamSeparationDegrees < 360) { // If there is more than one stream...
+                points = 0;
+                for (int i = 0; i <= 360; i += streamSeparationDegrees) {
+                    points++;
+                }
+            }
+
+            this.pointsPerFrame = points;
+        }
+
+        return pointsPerFrame;
+    }
+
+    /**
+     * Get the amount of degrees separating each particle stream.
+     *
+     * @return the stream separation in degrees
+     */
+    public double getStreamSeparationDegrees() {
+        return 360.0 / Math.max(particleStreams, 1);
+    }
+
     /**
      * Get the animation's speed multiplier.
      *
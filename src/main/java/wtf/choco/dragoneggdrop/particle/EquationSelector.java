@@ -0,0 +1,258 @@
+package wtf.choco.dragoneggdrop.particle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.bukkit.World;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import wtf.choco.dragoneggdrop.particle.condition.EquationCondition;
+import wtf.choco.dragoneggdrop.particle.condition.EquationConditionAlwaysTrue;
+import wtf.choco.dragoneggdrop.particle.condition.EquationConditionDoubleComparison;
+import wtf.choco.dragoneggdrop.particle.condition.EquationConditionWorld;
+
+/**
+ * A decision table compiled from the ordered condition lists of a shape's equation data.
+ * Selects the first {@link ConditionalEquationData} whose conditions are all met without
+ * evaluating any conditions.
+ * <p>
+ * Each equation data is represented by a bit in a 64 bit mask. For every variable compared by
+ * any condition, the values against which it is compared split the number line into sorted
+ * intervals, each mapped to the mask of equation data whose conditions on that variable hold
+ * anywhere in the interval. World names are interned to ids, each mapped to a mask in the same
+ * way. Selection is then a binary search per compared variable, the intersection of the
+ * resulting masks, and its lowest set bit.
+ *
+ * @author Parker Hawke - Choco
+ */
+final class EquationSelector {
+
+    private static final int MAX_EQUATIONS = Long.SIZE;
+    private static final int VARIABLE_SLOTS = ParticleVariables.SLOT_THETA + 1;
+
+    // The variable slots compared by at least one condition, and for each, its interval bounds and interval masks
+    private final int[] slots;
+    private final double[][] bounds;
+    private final long[][] intervalMasks;
+    private final long[] nanMasks;
+
+    // The last world mask is used for all worlds not named by any condition
+    private final Map<@NotNull String, @NotNull Integer> worldIds;
+    private final long[] worldMasks;
+
+    private final ConditionalEquationData[] equationData;
+
+    private EquationSelector(@NotNull ConditionalEquationData[] equationData, int[] slots, double[][] bounds, long[][] intervalMasks, long[] nanMasks, @NotNull Map<@NotNull String, @NotNull Integer> worldIds, long[] worldMasks) {
+        this.equationData = equationData;
+        this.slots = slots;
+        this.bounds = bounds;
+        this.intervalMasks = intervalMasks;
+        this.nanMasks = nanMasks;
+        this.worldIds = worldIds;
+        this.worldMasks = worldMasks;
+    }
+
+    /**
+     * Get the interned id of the given world. Ids are only meaningful to this selector.
+     *
+     * @param world the world
+     *
+     * @return the world id
+     */
+    int getWorldId(@NotNull World world) {
+        return worldIds.getOrDefault(world.getName(), worldMasks.length - 1);
+    }
+
+    /**
+     * Select the first equation data whose conditions are all met.
+     *
+     * @param variables the current variables
+     * @param worldId the id of the current world as returned by {@link #getWorldId(World)}
+     *
+     * @return the selected equation data, or null if the conditions of none are met
+     */
+    @Nullable
+    ConditionalEquationData select(@NotNull ParticleVariables variables, int worldId) {
+        long mask = worldMasks[worldId];
+
+        for (int i = 0; i < slots.length && mask != 0; i++) {
+            double value = variables.get(slots[i]);
+
+            if (Double.isNaN(value)) {
+                mask &= nanMasks[i];
+                continue;
+            }
+
+            int index = Arrays.binarySearch(bounds[i], value + 0.0); // + 0.0 to treat -0.0 as 0.0
+            mask &= intervalMasks[i][(index >= 0) ? (index * 2) + 1 : (-index - 1) * 2];
+        }
+
+        return (mask != 0) ? equationData[Long.numberOfTrailingZeros(mask)] : null;
+    }
+
+    /**
+     * Compile a decision table from the given equation data.
+     *
+     * @param equationData the equation data, in order of precedence
+     *
+     * @return the compiled selector, or null if any condition is of a type that cannot be
+     * compiled (in which case conditions should be evaluated instead)
+     */
+    @Nullable
+    static EquationSelector compile(@NotNull List<@NotNull ConditionalEquationData> equationData) {
+        if (equationData.isEmpty() || equationData.size() > MAX_EQUATIONS) {
+            return null;
+        }
+
+        // Group the conditions of each equation data by variable slot and collect world names
+        @SuppressWarnings("unchecked")
+        List<@NotNull EquationConditionDoubleComparison>[][] comparisons = new List[equationData.size()][VARIABLE_SLOTS];
+        String[] worldNames = new String[equationData.size()];
+        boolean[] unsatisfiable = new boolean[equationData.size()];
+
+        Map<@NotNull String, @NotNull Integer> worldIds = new HashMap<>();
+        boolean[] comparedSlots = new boolean[VARIABLE_SLOTS];
+
+        for (int i = 0; i < equationData.size(); i++) {
+            for (EquationCondition condition : equationData.get(i).getConditions()) {
+                if (condition instanceof EquationConditionAlwaysTrue) {
+                    continue;
+                }
+                else if (condition instanceof EquationConditionDoubleComparison) {
+                    EquationConditionDoubleComparison comparison = (EquationConditionDoubleComparison) condition;
+                    int slot = comparison.getVariableSlot();
+                    if (slot < 0 || slot >= VARIABLE_SLOTS) {
+                        return null;
+                    }
+
+                    if (comparisons[i][slot] == null) {
+                        comparisons[i][slot] = new ArrayList<>();
+                    }
+
+                    comparisons[i][slot].add(comparison);
+                    comparedSlots[slot] = true;
+                }
+                else if (condition instanceof EquationConditionWorld) {
+                    String worldName = ((EquationConditionWorld) condition).getWorldName();
+                    worldIds.putIfAbsent(worldName, worldIds.size());
+
+                    if (worldNames[i] != null && !worldNames[i].equals(worldName)) {
+                        unsatisfiable[i] = true; // Cannot be in two worlds at once
+                    }
+
+                    worldNames[i] = worldName;
+                }
+                else {
+                    return null;
+                }
+            }
+        }
+
+        // World masks. The last id represents any world not named by a condition
+        long[] worldMasks = new long[worldIds.size() + 1];
+        for (int i = 0; i < equationData.size(); i++) {
+            if (unsatisfiable[i]) {
+                continue;
+            }
+
+            if (worldNames[i] == null) {
+                for (int id = 0; id < worldMasks.length; id++) {
+                    worldMasks[id] |= 1L << i;
+                }
+            }
+            else {
+                worldMasks[worldIds.get(worldNames[i])] |= 1L << i;
+            }
+        }
+
+        // Interval tables for each compared slot
+        int slotCount = 0;
+        for (boolean compared : comparedSlots) {
+            if (compared) {
+                slotCount++;
+            }
+        }
+
+        int[] slots = new int[slotCount];
+        double[][] bounds = new double[slotCount][];
+        long[][] intervalMasks = new long[slotCount][];
+        long[] nanMasks = new long[slotCount];
+
+        for (int slot = 0, index = 0; slot < VARIABLE_SLOTS; slot++) {
+            if (!comparedSlots[slot]) {
+                continue;
+            }
+
+            TreeSet<@NotNull Double> values = new TreeSet<>();
+            for (int i = 0; i < equationData.size(); i++) {
+                if (comparisons[i][slot] == null) {
+                    continue;
+                }
+
+                for (EquationConditionDoubleComparison comparison : comparisons[i][slot]) {
+                    if (!Double.isNaN(comparison.getValue())) {
+                        values.add(comparison.getValue() + 0.0);
+                    }
+                }
+            }
+
+            double[] slotBounds = values.stream().mapToDouble(Double::doubleValue).toArray();
+            long[] slotMasks = new long[(slotBounds.length * 2) + 1];
+
+            // Even intervals lie between bounds (exclusive), odd intervals are the bounds themselves
+            for (int interval = 0; interval < slotMasks.length; interval++) {
+                double representative;
+                if (interval % 2 == 1) {
+                    representative = slotBounds[interval / 2];
+                }
+                else if (interval == 0) {
+                    representative = (slotBounds.length > 0) ? Math.nextDown(slotBounds[0]) : 0.0;
+                }
+                else {
+                    representative = Math.nextUp(slotBounds[(interval / 2) - 1]);
+                }
+
+                slotMasks[interval] = getSatisfiedMask(comparisons, slot, representative);
+            }
+
+            slots[index] = slot;
+            bounds[index] = slotBounds;
+            intervalMasks[index] = slotMasks;
+            nanMasks[index++] = getSatisfiedMask(comparisons, slot, Double.NaN);
+        }
+
+        return new EquationSelector(equationData.toArray(new ConditionalEquationData[0]), slots, bounds, intervalMasks, nanMasks, worldIds, worldMasks);
+    }
+
+    private static long getSatisfiedMask(@NotNull List<@NotNull EquationConditionDoubleComparison>[][] comparisons, int slot, double value) {
+        long mask = 0;
+
+        for (int i = 0; i < comparisons.length; i++) {
+            if (isSatisfied(comparisons[i][slot], value)) {
+                mask |= 1L << i;
+            }
+        }
+
+        return mask;
+    }
+
+    private static boolean isSatisfied(@Nullable List<@NotNull EquationConditionDoubleComparison> comparisons, double value) {
+        if (comparisons == null) {
+            return true;
+        }
+
+        for (EquationConditionDoubleComparison comparison : comparisons) {
+            if (!comparison.test(value)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+}
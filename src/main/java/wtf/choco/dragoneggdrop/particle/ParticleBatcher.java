@@ -0,0 +1,277 @@
+package wtf.choco.dragoneggdrop.particle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Collects the points of all frames displayed in a single world over the course of a tick
+ * such that they may be emitted together. Points of identical particles from different frames
+ * that fall within the same cell of a grid (whose cells are the batcher's tolerance wide) are
+ * considered to overlap and only the first is emitted. Points of the same frame are never
+ * merged with one another, and each emitted point absorbs at most one point of every other
+ * frame, so a frame's shape is never thinned by its own density.
+ *
+ * @author Parker Hawke - Choco
+ *
+ * @see ParticleScheduler#setBatchTolerance(double)
+ */
+final class ParticleBatcher {
+
+    private static final int NO_POINT = -1;
+
+    private World world;
+    private double tolerance;
+
+    // Frames added this tick. Each point belongs to one frame and takes on its style (the particle and its data)
+    private int frameCount = 0;
+    private double[] frameX = new double[8], frameY = new double[8], frameZ = new double[8];
+    private int[] frameStyle = new int[8];
+    private int[] frameInterval = new int[8];
+    private final List<@NotNull ConditionalEquationData> styles = new ArrayList<>();
+
+    // Points added this tick, deduplicated by their style and grid cell
+    private int pointCount = 0;
+    private double[] pointX = new double[64], pointY = new double[64], pointZ = new double[64];
+    private long[] pointCellX = new long[64], pointCellY = new long[64], pointCellZ = new long[64];
+    private int[] pointFrame = new int[64], pointIndex = new int[64];
+    private int[] pointMergedFrame = new int[64]; // The last frame of which a point was merged into this point
+    private int[] table = new int[128];
+    private int duplicates = 0;
+
+    ParticleBatcher(double tolerance) {
+        this.tolerance = tolerance;
+        Arrays.fill(table, NO_POINT);
+    }
+
+    /**
+     * Set the width of the grid cells within which points are considered to overlap.
+     *
+     * @param tolerance the tolerance in blocks. Must be positive
+     */
+    void setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Begin adding the points of a frame. All points added until the next call to this method
+     * belong to this frame.
+     *
+     * @param world the world in which the frame is displayed
+     * @param equationData the equation data of the frame
+     * @param x the x coordinate relative to which the frame is displayed
+     * @param y the y coordinate at which the frame is displayed
+     * @param z the z coordinate relative to which the frame is displayed
+     */
+    void beginFrame(@NotNull World world, @NotNull ConditionalEquationData equationData, double x, double y, double z) {
+        this.world = world;
+
+        if (frameCount == frameX.length) {
+            int capacity = frameCount * 2;
+            this.frameX = Arrays.copyOf(frameX, capacity);
+            this.frameY = Arrays.copyOf(frameY, capacity);
+            this.frameZ = Arrays.copyOf(frameZ, capacity);
+            this.frameStyle = Arrays.copyOf(frameStyle, capacity);
+            this.frameInterval = Arrays.copyOf(frameInterval, capacity);
+        }
+
+        this.frameX[frameCount] = x;
+        this.frameY[frameCount] = y;
+        this.frameZ[frameCount] = z;
+        this.frameStyle[frameCount++] = getStyle(equationData);
+    }
+
+    /**
+     * Add a point to the current frame.
+     *
+     * @param x the x coordinate of the point
+     * @param y the y coordinate of the point
+     * @param z the z coordinate of the point
+     * @param index the index of the point among those displayed of its frame
+     *
+     * @return true if added, false if the point overlaps a point of another frame already added
+     * this tick
+     */
+    boolean addPoint(double x, double y, double z, int index) {
+        int frame = frameCount - 1, style = frameStyle[frame];
+        long cellX = (long) Math.floor(x / tolerance), cellY = (long) Math.floor(y / tolerance), cellZ = (long) Math.floor(z / tolerance);
+
+        int mask = table.length - 1;
+        int slot = hash(cellX, cellY, cellZ, style) & mask;
+        for (int point; (point = table[slot]) != NO_POINT; slot = (slot + 1) & mask) {
+            if (pointCellX[point] != cellX || pointCellY[point] != cellY || pointCellZ[point] != cellZ || frameStyle[pointFrame[point]] != style) {
+                continue;
+            }
+
+            // Frames are added one after another, so this point has not yet absorbed a point of this frame if it was not the last to merge
+            if (pointFrame[point] != frame && pointMergedFrame[point] != frame) {
+                this.pointMergedFrame[point] = frame;
+                this.duplicates++;
+                return false;
+            }
+        }
+
+        if (pointCount == pointX.length) {
+            this.growPoints();
+        }
+
+        int point = pointCount++;
+        this.pointX[point] = x;
+        this.pointY[point] = y;
+        this.pointZ[point] = z;
+        this.pointCellX[point] = cellX;
+        this.pointCellY[point] = cellY;
+        this.pointCellZ[point] = cellZ;
+        this.pointFrame[point] = frame;
+        this.pointIndex[point] = index;
+        this.pointMergedFrame[point] = frame;
+        this.table[slot] = point;
+
+        if (pointCount * 2 > table.length) {
+            this.rehash(table.length * 2);
+        }
+
+        return true;
+    }
+
+    /**
+     * Check whether or not any points have been added since the last flush.
+     *
+     * @return true if empty, false otherwise
+     */
+    boolean isEmpty() {
+        return pointCount == 0;
+    }
+
+    /**
+     * Emit all points added since the last flush and reset this batcher for the next tick.
+     * If displayed with a level of detail, the viewers of the world are determined once and
+     * each is sent, in a single pass over all points, the points that their distance from each
+     * point's frame warrants.
+     *
+     * @param levelOfDetail the level of detail with which to emit points, or null to emit
+     * every point to all players in range
+     * @param viewerLocation a location to reuse when querying viewer locations
+     *
+     * @return the amount of points found to overlap and therefore not emitted
+     */
+    int flush(@Nullable ParticleLevelOfDetail levelOfDetail, @NotNull Location viewerLocation) {
+        if (levelOfDetail == null) {
+            for (int point = 0; point < pointCount; point++) {
+                ConditionalEquationData style = styles.get(frameStyle[pointFrame[point]]);
+                this.world.spawnParticle(style.getParticle(), pointX[point], pointY[point], pointZ[point], style.getParticleAmount(), style.getParticleOffsetX(), style.getParticleOffsetY(), style.getParticleOffsetZ(), style.getParticleExtra(), null, true);
+            }
+        }
+        else {
+            for (Player viewer : world.getPlayers()) {
+                this.emit(viewer, levelOfDetail, viewerLocation);
+            }
+        }
+
+        int duplicates = this.duplicates;
+        this.reset();
+        return duplicates;
+    }
+
+    private void emit(@NotNull Player viewer, @NotNull ParticleLevelOfDetail levelOfDetail, @NotNull Location viewerLocation) {
+        viewer.getLocation(viewerLocation);
+
+        boolean visible = false;
+        for (int frame = 0; frame < frameCount; frame++) {
+            double dx = viewerLocation.getX() - frameX[frame], dy = viewerLocation.getY() - frameY[frame], dz = viewerLocation.getZ() - frameZ[frame];
+            this.frameInterval[frame] = levelOfDetail.getPointInterval((dx * dx) + (dy * dy) + (dz * dz));
+            visible |= frameInterval[frame] != 0;
+        }
+
+        if (!visible) {
+            return;
+        }
+
+        for (int point = 0; point < pointCount; point++) {
+            int interval = frameInterval[pointFrame[point]];
+            if (interval == 0 || pointIndex[point] % interval != 0) {
+                continue;
+            }
+
+            ConditionalEquationData style = styles.get(frameStyle[pointFrame[point]]);
+            viewer.spawnParticle(style.getParticle(), pointX[point], pointY[point], pointZ[point], style.getParticleAmount(), style.getParticleOffsetX(), style.getParticleOffsetY(), style.getParticleOffsetZ(), style.getParticleExtra());
+        }
+    }
+
+    private void reset() {
+        for (int point = 0; point < pointCount; point++) {
+            int mask = table.length - 1;
+            int slot = hash(pointCellX[point], pointCellY[point], pointCellZ[point], frameStyle[pointFrame[point]]) & mask;
+            while (table[slot] != point) {
+                slot = (slot + 1) & mask;
+            }
+
+            this.table[slot] = NO_POINT;
+        }
+
+        this.world = null;
+        this.frameCount = 0;
+        this.pointCount = 0;
+        this.duplicates = 0;
+        this.styles.clear();
+    }
+
+    // Equation data sharing a style spawn identical particles and their points may be merged
+    private int getStyle(@NotNull ConditionalEquationData equationData) {
+        for (int i = 0; i < styles.size(); i++) {
+            ConditionalEquationData style = styles.get(i);
+            if (style == equationData || (style.getParticle() == equationData.getParticle()
+                    && style.getParticleAmount() == equationData.getParticleAmount()
+                    && style.getParticleOffsetX() == equationData.getParticleOffsetX()
+                    && style.getParticleOffsetY() == equationData.getParticleOffsetY()
+                    && style.getParticleOffsetZ() == equationData.getParticleOffsetZ()
+                    && style.getParticleExtra() == equationData.getParticleExtra())) {
+                return i;
+            }
+        }
+
+        this.styles.add(equationData);
+        return styles.size() - 1;
+    }
+
+    private void growPoints() {
+        int capacity = pointX.length * 2;
+        this.pointX = Arrays.copyOf(pointX, capacity);
+        this.pointY = Arrays.copyOf(pointY, capacity);
+        this.pointZ = Arrays.copyOf(pointZ, capacity);
+        this.pointCellX = Arrays.copyOf(pointCellX, capacity);
+        this.pointCellY = Arrays.copyOf(pointCellY, capacity);
+        this.pointCellZ = Arrays.copyOf(pointCellZ, capacity);
+        this.pointFrame = Arrays.copyOf(pointFrame, capacity);
+        this.pointIndex = Arrays.copyOf(pointIndex, capacity);
+        this.pointMergedFrame = Arrays.copyOf(pointMergedFrame, capacity);
+    }
+
+    private void rehash(int capacity) {
+        this.table = new int[capacity];
+        Arrays.fill(table, NO_POINT);
+
+        int mask = capacity - 1;
+        for (int point = 0; point < pointCount; point++) {
+            int slot = hash(pointCellX[point], pointCellY[point], pointCellZ[point], frameStyle[pointFrame[point]]) & mask;
+            while (table[slot] != NO_POINT) {
+                slot = (slot + 1) & mask;
+            }
+
+            this.table[slot] = point;
+        }
+    }
+
+    private static int hash(long cellX, long cellY, long cellZ, int style) {
+        long hash = (cellX * 0x9E3779B97F4A7C15L) ^ (cellY * 0xC2B2AE3D27D4EB4FL) ^ (cellZ * 0x165667B19E3779F9L) ^ style;
+        hash ^= (hash >>> 32);
+        return (int) (hash ^ (hash >>> 16));
+    }
+
+}
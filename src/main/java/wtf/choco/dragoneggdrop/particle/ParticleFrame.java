@@ -0,0 +1,100 @@
+package wtf.choco.dragoneggdrop.particle;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A single computed tick of a particle animation, ready to be displayed. Points are stored
+ * as relative offsets, each represented by two consecutive entries in {@link #getOffsets()}:
+ * its x offset followed by its z offset.
+ *
+ * @author Parker Hawke - Choco
+ */
+final class ParticleFrame {
+
+    private ConditionalEquationData equationData;
+    private double[] offsets;
+    private int start;
+
+    private double[] buffer = new double[0];
+
+    /**
+     * Set this frame to display no particles.
+     */
+    void clear() {
+        this.equationData = null;
+    }
+
+    /**
+     * Set this frame to display a range of externally owned offsets. The offsets in the range
+     * must not be modified for as long as this frame is in use.
+     *
+     * @param equationData the equation data of the frame
+     * @param offsets the offsets array
+     * @param start the index of the first x offset
+     */
+    void set(@NotNull ConditionalEquationData equationData, double @NotNull [] offsets, int start) {
+        this.equationData = equationData;
+        this.offsets = offsets;
+        this.start = start;
+    }
+
+    /**
+     * Set this frame to display a copy of the given offsets.
+     *
+     * @param equationData the equation data of the frame
+     * @param offsetX the x offsets
+     * @param offsetZ the z offsets
+     */
+    void copy(@NotNull ConditionalEquationData equationData, double @NotNull [] offsetX, double @NotNull [] offsetZ) {
+        int points = equationData.getPointsPerFrame();
+        if (buffer.length < points * 2) {
+            this.buffer = new double[points * 2];
+        }
+
+        for (int i = 0; i < points; i++) {
+            this.buffer[i * 2] = offsetX[i];
+            this.buffer[(i * 2) + 1] = offsetZ[i];
+        }
+
+        this.set(equationData, buffer, 0);
+    }
+
+    /**
+     * Get the equation data of this frame.
+     *
+     * @return the equation data, or null if this frame displays no particles
+     */
+    @Nullable
+    ConditionalEquationData getEquationData() {
+        return equationData;
+    }
+
+    /**
+     * Get the array holding this frame's offsets.
+     *
+     * @return the offsets
+     */
+    double @NotNull [] getOffsets() {
+        return offsets;
+    }
+
+    /**
+     * Get the index in {@link #getOffsets()} of this frame's first x offset.
+     *
+     * @return the start index
+     */
+    int getStart() {
+        return start;
+    }
+
+    /**
+     * Get the index in {@link #getOffsets()} after this frame's last z offset.
+     *
+     * @return the end index (exclusive)
+     */
+    int getEnd() {
+        return start + (equationData.getPointsPerFrame() * 2);
+    }
+
+}
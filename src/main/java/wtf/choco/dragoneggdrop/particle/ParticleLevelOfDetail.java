@@ -0,0 +1,77 @@
+package wtf.choco.dragoneggdrop.particle;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Represents distance-based level of detail settings for particle animations. Viewers within
+ * the full detail distance of an animation are shown every point of each frame whereas more
+ * distant viewers are shown fewer points in proportion to their distance. Viewers beyond the
+ * cutoff distance are shown nothing at all.
+ *
+ * @author Parker Hawke - Choco
+ *
+ * @see ParticleScheduler#setLevelOfDetail(ParticleLevelOfDetail)
+ */
+public final class ParticleLevelOfDetail {
+
+    private final double fullDetailDistance, cutoffDistance;
+    private final double fullDetailDistanceSquared, cutoffDistanceSquared;
+
+    /**
+     * Construct new level of detail settings.
+     *
+     * @param fullDetailDistance the distance (in blocks) within which viewers are shown every
+     * point. Must be positive
+     * @param cutoffDistance the distance (in blocks) beyond which viewers are shown nothing.
+     * Must be greater than or equal to the full detail distance
+     */
+    public ParticleLevelOfDetail(double fullDetailDistance, double cutoffDistance) {
+        Preconditions.checkArgument(fullDetailDistance > 0, "fullDetailDistance must be positive");
+        Preconditions.checkArgument(cutoffDistance >= fullDetailDistance, "cutoffDistance must be >= fullDetailDistance");
+
+        this.fullDetailDistance = fullDetailDistance;
+        this.cutoffDistance = cutoffDistance;
+        this.fullDetailDistanceSquared = fullDetailDistance * fullDetailDistance;
+        this.cutoffDistanceSquared = cutoffDistance * cutoffDistance;
+    }
+
+    /**
+     * Get the distance within which viewers are shown every point.
+     *
+     * @return the full detail distance
+     */
+    public double getFullDetailDistance() {
+        return fullDetailDistance;
+    }
+
+    /**
+     * Get the distance beyond which viewers are shown nothing.
+     *
+     * @return the cutoff distance
+     */
+    public double getCutoffDistance() {
+        return cutoffDistance;
+    }
+
+    /**
+     * Get the interval between the points shown to a viewer at the given distance from an
+     * animation. An interval of 1 shows every point, 2 shows every second point, and so on.
+     * Beyond the full detail distance, the interval grows by one for every multiple of the full
+     * detail distance (i.e. half of all points are shown at twice the full detail distance).
+     *
+     * @param distanceSquared the squared distance between the viewer and the animation
+     *
+     * @return the point interval, or 0 if the viewer should be shown nothing
+     */
+    public int getPointInterval(double distanceSquared) {
+        if (distanceSquared > cutoffDistanceSquared) {
+            return 0;
+        }
+        else if (distanceSquared <= fullDetailDistanceSquared) {
+            return 1;
+        }
+
+        return (int) Math.ceil(Math.sqrt(distanceSquared) / fullDetailDistance);
+    }
+
+}
@@ -0,0 +1,240 @@
+package wtf.choco.dragoneggdrop.particle;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A source of the values read from the {@link ParticleVariables#SLOT_RANDOM random} variable.
+ * Each session owns its own source, which is only ever accessed by one thread at a time, so
+ * sources need not be thread safe. Sources created with the same {@link Type} and seed produce
+ * the same sequence of values, allowing animations to be reproduced between runs.
+ *
+ * @author Parker Hawke - Choco
+ *
+ * @see ParticleShapeDefinition#setRandomSource(Type, Long)
+ */
+public abstract class ParticleRandom {
+
+    private ParticleRandom() { }
+
+    /**
+     * Get the next random value.
+     *
+     * @return a value between 0.0 (inclusive) and 1.0 (exclusive)
+     */
+    public abstract double nextDouble();
+
+    /**
+     * Restart the sequence of values produced by this source as if it were newly created
+     * with the given seed.
+     *
+     * @param seed the seed
+     */
+    abstract void setSeed(long seed);
+
+    /**
+     * Get the type of this random source.
+     *
+     * @return the type
+     */
+    @NotNull
+    public abstract Type getType();
+
+    /**
+     * Represents an implementation of {@link ParticleRandom}.
+     */
+    public enum Type {
+
+        /**
+         * A {@link Random}. Synchronizes on every value and is the slowest of all types.
+         */
+        JAVA("java") {
+            @NotNull
+            @Override
+            public ParticleRandom create(long seed) {
+                return new JavaParticleRandom(new Random(seed));
+            }
+
+            @NotNull
+            @Override
+            public ParticleRandom create() {
+                return new JavaParticleRandom(new Random());
+            }
+        },
+
+        /**
+         * A {@link SplittableRandom}. Unsynchronized and of high statistical quality.
+         */
+        SPLITTABLE("splittable") {
+            @NotNull
+            @Override
+            public ParticleRandom create(long seed) {
+                return new SplittableParticleRandom(new SplittableRandom(seed));
+            }
+        },
+
+        /**
+         * An xorshift64* generator. Unsynchronized and the fastest of all types, though of
+         * lesser statistical quality than {@link #SPLITTABLE} (which is of no concern to
+         * particle animations).
+         */
+        XORSHIFT("xorshift") {
+            @NotNull
+            @Override
+            public ParticleRandom create(long seed) {
+                return new XorShiftParticleRandom(seed);
+            }
+        };
+
+        private final String name;
+
+        private Type(@NotNull String name) {
+            this.name = name;
+        }
+
+        /**
+         * Get the name of this type as written in shape definition files.
+         *
+         * @return the name
+         */
+        @NotNull
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Create a random source of this type producing a sequence of values determined
+         * entirely by the given seed.
+         *
+         * @param seed the seed
+         *
+         * @return the random source
+         */
+        @NotNull
+        public abstract ParticleRandom create(long seed);
+
+        /**
+         * Create a random source of this type with an arbitrary seed.
+         *
+         * @return the random source
+         */
+        @NotNull
+        public ParticleRandom create() {
+            return create(ThreadLocalRandom.current().nextLong());
+        }
+
+        /**
+         * Get a type by its name as written in shape definition files.
+         *
+         * @param name the name of the type (case insensitive)
+         *
+         * @return the type, or null if no type exists with the given name
+         */
+        @Nullable
+        public static Type getByName(@NotNull String name) {
+            for (Type type : values()) {
+                if (type.name.equalsIgnoreCase(name)) {
+                    return type;
+                }
+            }
+
+            return null;
+        }
+
+    }
+
+    private static final class JavaParticleRandom extends ParticleRandom {
+
+        private final Random random;
+
+        private JavaParticleRandom(@NotNull Random random) {
+            this.random = random;
+        }
+
+        @Override
+        public double nextDouble() {
+            return random.nextDouble();
+        }
+
+        @Override
+        void setSeed(long seed) {
+            this.random.setSeed(seed);
+        }
+
+        @NotNull
+        @Override
+        public Type getType() {
+            return Type.JAVA;
+        }
+
+    }
+
+    private static final class SplittableParticleRandom extends ParticleRandom {
+
+        private SplittableRandom random;
+
+        private SplittableParticleRandom(@NotNull SplittableRandom random) {
+            this.random = random;
+        }
+
+        @Override
+        public double nextDouble() {
+            return random.nextDouble();
+        }
+
+        @Override
+        void setSeed(long seed) {
+            this.random = new SplittableRandom(seed); // Cannot be reseeded
+        }
+
+        @NotNull
+        @Override
+        public Type getType() {
+            return Type.SPLITTABLE;
+        }
+
+    }
+
+    private static final class XorShiftParticleRandom extends ParticleRandom {
+
+        private long state;
+
+        private XorShiftParticleRandom(long seed) {
+            this.setSeed(seed);
+        }
+
+        @Override
+        public double nextDouble() {
+            long state = this.state;
+            state ^= (state >>> 12);
+            state ^= (state << 25);
+            state ^= (state >>> 27);
+            this.state = state;
+
+            return ((state * 0x2545F4914F6CDD1DL) >>> 11) * 0x1.0p-53;
+        }
+
+        @Override
+        void setSeed(long seed) {
+            // Scramble the seed (SplitMix64) such that similar seeds produce dissimilar sequences. The state must never be 0
+            long state = (seed + 0x9E3779B97F4A7C15L);
+            state = (state ^ (state >>> 30)) * 0xBF58476D1CE4E5B9L;
+            state = (state ^ (state >>> 27)) * 0x94D049BB133111EBL;
+            state ^= (state >>> 31);
+
+            this.state = (state != 0) ? state : 0x9E3779B97F4A7C15L;
+        }
+
+        @NotNull
+        @Override
+        public Type getType() {
+            return Type.XORSHIFT;
+        }
+
+    }
+
+}
@@ -0,0 +1,536 @@
+package wtf.choco.dragoneggdrop.particle;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import org.bukkit.Location;
+import org.bukkit.Particle;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A central scheduler enforcing a global, per-tick budget on the particles spawned by all
+ * {@link AnimatedParticleSession AnimatedParticleSessions}. Sessions submit their frames to the
+ * scheduler rather than spawning them directly and the scheduler spawns all submitted frames
+ * once per tick (see {@link #tick()}).
+ * <p>
+ * If the submitted frames exceed the budget, the budget is divided fairly between them such
+ * that no frame receives more than its share while frames requiring less than their share
+ * leave the remainder to others. Frames exceeding their share are thinned by displaying an
+ * evenly spaced subset of their points, or skipped entirely if their share permits no points.
+ * Every point is sent as a separate packet to each player viewing it, so the packet cost of a
+ * frame is weighted by its viewers (and, with a level of detail, by how many of its points
+ * each viewer is shown). Frames without viewers cost no packets.
+ * <p>
+ * Frames may additionally be displayed with a distance-based {@link ParticleLevelOfDetail}, in
+ * which case the viewers of each frame are determined once per frame and each is sent only as
+ * many points as their distance warrants.
+ * <p>
+ * If batching is enabled (see {@link #setBatchTolerance(double)}), the points of all frames
+ * displayed in the same world are collected and emitted together. Points of identical
+ * particles from different frames overlapping within the batch tolerance, such as those of two
+ * animations playing at the same location, are emitted only once.
+ *
+ * @author Parker Hawke - Choco
+ */
+public final class ParticleScheduler {
+
+    /**
+     * A budget value representing no limit.
+     */
+    public static final int UNLIMITED = -1;
+
+    /**
+     * A batch tolerance value representing no batching.
+     */
+    public static final double NO_BATCHING = -1.0;
+
+    private static final int REPORT_INTERVAL_TICKS = 20 * 60;
+    private static final double FORCED_VIEW_DISTANCE_SQUARED = 512.0 * 512.0; // Players within this distance receive forced particles
+    private static final Comparator<@NotNull PendingFrame> BY_PACKET_DEMAND = Comparator.comparingLong(frame -> frame.getPackets(frame.allowedPoints));
+    private static final Comparator<@NotNull PendingFrame> BY_PARTICLE_DEMAND = Comparator.comparingLong(frame -> (long) frame.allowedPoints * frame.getParticlesPerPoint());
+
+    private int maxParticlesPerTick, maxPacketsPerTick;
+    private ParticleLevelOfDetail levelOfDetail;
+    private double batchTolerance = NO_BATCHING;
+
+    private long spawnedParticles, droppedParticles, mergedPoints;
+    private long thinnedFrames, skippedFrames;
+
+    private int ticksSinceReport = 0;
+    private long reportDroppedParticles, reportThinnedFrames, reportSkippedFrames;
+
+    private final List<@NotNull PendingFrame> pending = new ArrayList<>();
+    private final List<@NotNull PendingFrame> pool = new ArrayList<>();
+    private final Map<@NotNull UUID, @NotNull ParticleBatcher> batchers = new HashMap<>();
+    private final Location viewerLocation = new Location(null, 0.0, 0.0, 0.0);
+
+    private final Logger logger;
+
+    /**
+     * Construct a new particle scheduler.
+     *
+     * @param logger the logger to which dropped particles should be periodically reported
+     * @param maxParticlesPerTick the maximum amount of particles spawned per tick, or
+     * {@link #UNLIMITED}
+     * @param maxPacketsPerTick the maximum amount of particle packets sent per tick (one per
+     * displayed point per viewer), or {@link #UNLIMITED}
+     */
+    public ParticleScheduler(@NotNull Logger logger, int maxParticlesPerTick, int maxPacketsPerTick) {
+        Preconditions.checkArgument(logger != null, "logger must not be null");
+
+        this.logger = logger;
+        this.setBudget(maxParticlesPerTick, maxPacketsPerTick);
+    }
+
+    /**
+     * Set the per-tick budget of this scheduler.
+     *
+     * @param maxParticlesPerTick the maximum amount of particles spawned per tick, or
+     * {@link #UNLIMITED}
+     * @param maxPacketsPerTick the maximum amount of particle packets sent per tick (one per
+     * displayed point per viewer), or {@link #UNLIMITED}
+     */
+    public void setBudget(int maxParticlesPerTick, int maxPacketsPerTick) {
+        Preconditions.checkArgument(maxParticlesPerTick >= 0 || maxParticlesPerTick == UNLIMITED, "maxParticlesPerTick must be >= 0 or UNLIMITED");
+        Preconditions.checkArgument(maxPacketsPerTick >= 0 || maxPacketsPerTick == UNLIMITED, "maxPacketsPerTick must be >= 0 or UNLIMITED");
+
+        this.maxParticlesPerTick = maxParticlesPerTick;
+        this.maxPacketsPerTick = maxPacketsPerTick;
+    }
+
+    /**
+     * Get the maximum amount of particles spawned per tick.
+     *
+     * @return the particle budget, or {@link #UNLIMITED}
+     */
+    public int getMaxParticlesPerTick() {
+        return maxParticlesPerTick;
+    }
+
+    /**
+     * Get the maximum amount of particle packets sent per tick.
+     *
+     * @return the packet budget, or {@link #UNLIMITED}
+     */
+    public int getMaxPacketsPerTick() {
+        return maxPacketsPerTick;
+    }
+
+    /**
+     * Set the level of detail with which frames are displayed. If null, every point of every
+     * frame is displayed to all players in range regardless of their distance.
+     *
+     * @param levelOfDetail the level of detail to set
+     */
+    public void setLevelOfDetail(@Nullable ParticleLevelOfDetail levelOfDetail) {
+        this.levelOfDetail = levelOfDetail;
+    }
+
+    /**
+     * Get the level of detail with which frames are displayed.
+     *
+     * @return the level of detail, or null if frames are displayed in full detail to all players
+     */
+    @Nullable
+    public ParticleLevelOfDetail getLevelOfDetail() {
+        return levelOfDetail;
+    }
+
+    /**
+     * Set the tolerance within which the points of identical particles displayed by different
+     * frames in the same world and tick are considered to overlap and are emitted only once.
+     * Points are merged if they fall within the same cell of a grid whose cells are the tolerance
+     * wide. Points of the same frame are never merged with one another.
+     *
+     * @param batchTolerance the tolerance in blocks. Must be positive, or {@link #NO_BATCHING}
+     * to emit the points of every frame independently
+     */
+    public void setBatchTolerance(double batchTolerance) {
+        Preconditions.checkArgument(batchTolerance > 0 || batchTolerance == NO_BATCHING, "batchTolerance must be positive or NO_BATCHING");
+
+        this.batchTolerance = batchTolerance;
+        this.batchers.values().forEach(batcher -> batcher.setTolerance(batchTolerance));
+    }
+
+    /**
+     * Get the tolerance within which the points of identical particles are merged.
+     *
+     * @return the batch tolerance, or {@link #NO_BATCHING}
+     */
+    public double getBatchTolerance() {
+        return batchTolerance;
+    }
+
+    /**
+     * Check whether or not this scheduler batches the points of frames displayed in the same
+     * world and tick.
+     *
+     * @return true if batching, false otherwise
+     */
+    public boolean isBatching() {
+        return batchTolerance != NO_BATCHING;
+    }
+
+    /**
+     * Check whether or not this scheduler enforces any budget.
+     *
+     * @return true if limited, false otherwise
+     */
+    public boolean isLimited() {
+        return maxParticlesPerTick != UNLIMITED || maxPacketsPerTick != UNLIMITED;
+    }
+
+    /**
+     * Check whether or not frames must be submitted to this scheduler. Frames displayed by
+     * schedulers that neither enforce a budget nor batch frames need not be submitted and may
+     * instead be displayed immediately.
+     *
+     * @return true if frames must be submitted, false if they may be displayed immediately
+     */
+    boolean isDeferring() {
+        return isLimited() || isBatching();
+    }
+
+    /**
+     * Get the total amount of particles spawned by this scheduler.
+     *
+     * @return the spawned particles
+     */
+    public long getSpawnedParticles() {
+        return spawnedParticles;
+    }
+
+    /**
+     * Get the total amount of particles dropped by this scheduler in order to remain within
+     * its budget.
+     *
+     * @return the dropped particles
+     */
+    public long getDroppedParticles() {
+        return droppedParticles;
+    }
+
+    /**
+     * Get the total amount of points that were not emitted because they overlapped points of
+     * other frames displayed in the same world and tick.
+     *
+     * @return the merged points
+     */
+    public long getMergedPoints() {
+        return mergedPoints;
+    }
+
+    /**
+     * Get the total amount of frames of which only some points were displayed in order to
+     * remain within this scheduler's budget.
+     *
+     * @return the thinned frames
+     */
+    public long getThinnedFrames() {
+        return thinnedFrames;
+    }
+
+    /**
+     * Get the total amount of frames of which no points were displayed in order to remain
+     * within this scheduler's budget.
+     *
+     * @return the skipped frames
+     */
+    public long getSkippedFrames() {
+        return skippedFrames;
+    }
+
+    /**
+     * Submit a frame to be displayed on the next call to {@link #tick()}. The offsets are
+     * copied and may be modified once this method returns.
+     *
+     * @param world the world in which to display the frame
+     * @param equationData the equation data of the frame
+     * @param x the x coordinate relative to which the frame is displayed
+     * @param y the y coordinate at which the frame is displayed
+     * @param z the z coordinate relative to which the frame is displayed
+     * @param offsets the offsets of the frame's points. Each point is represented by two
+     * consecutive entries, its x offset followed by its z offset
+     * @param start the index of the frame's first x offset
+     * @param end the index after the frame's last z offset
+     */
+    void submit(@NotNull World world, @NotNull ConditionalEquationData equationData, double x, double y, double z, double @NotNull [] offsets, int start, int end) {
+        PendingFrame frame = pool.isEmpty() ? new PendingFrame() : pool.remove(pool.size() - 1);
+        frame.set(world, equationData, x, y, z, offsets, start, end);
+        this.pending.add(frame);
+    }
+
+    /**
+     * Display a frame immediately, bypassing this scheduler's budget. The frame is still
+     * subject to this scheduler's level of detail.
+     *
+     * @param world the world in which to display the frame
+     * @param equationData the equation data of the frame
+     * @param x the x coordinate relative to which the frame is displayed
+     * @param y the y coordinate at which the frame is displayed
+     * @param z the z coordinate relative to which the frame is displayed
+     * @param offsets the offsets of the frame's points. Each point is represented by two
+     * consecutive entries, its x offset followed by its z offset
+     * @param start the index of the frame's first x offset
+     * @param end the index after the frame's last z offset
+     */
+    void display(@NotNull World world, @NotNull ConditionalEquationData equationData, double x, double y, double z, double @NotNull [] offsets, int start, int end) {
+        int points = (end - start) / 2;
+        this.emit(world, equationData, x, y, z, offsets, start, points, points);
+    }
+
+    /**
+     * Display all frames submitted since the last tick within this scheduler's budget. This
+     * should be called once every server tick.
+     */
+    public void tick() {
+        if (!pending.isEmpty() || !batchers.isEmpty()) {
+            this.flush();
+        }
+
+        if (++ticksSinceReport >= REPORT_INTERVAL_TICKS) {
+            this.report();
+        }
+    }
+
+    private void flush() {
+        for (PendingFrame frame : pending) {
+            frame.allowedPoints = frame.points;
+        }
+
+        if (maxPacketsPerTick != UNLIMITED) {
+            for (PendingFrame frame : pending) {
+                this.collectViewers(frame);
+            }
+
+            this.distributePackets(maxPacketsPerTick);
+        }
+
+        if (maxParticlesPerTick != UNLIMITED) {
+            this.distributeParticles(maxParticlesPerTick);
+        }
+
+        for (PendingFrame frame : pending) {
+            this.display(frame);
+            this.pool.add(frame.reset());
+        }
+
+        this.pending.clear();
+
+        if (batchers.isEmpty()) {
+            return;
+        }
+
+        // Flush batched points, forgetting batchers of worlds in which nothing was displayed this tick
+        Iterator<@NotNull ParticleBatcher> iterator = batchers.values().iterator();
+        while (iterator.hasNext()) {
+            ParticleBatcher batcher = iterator.next();
+            if (batcher.isEmpty()) {
+                iterator.remove();
+                continue;
+            }
+
+            this.mergedPoints += batcher.flush(levelOfDetail, viewerLocation);
+        }
+    }
+
+    // Water-filling. Frames are granted in ascending order of demand, none receiving more than an even share of the remaining budget
+    private void distributeParticles(int budget) {
+        this.pending.sort(BY_PARTICLE_DEMAND);
+
+        int remaining = budget;
+        for (int i = 0; i < pending.size(); i++) {
+            PendingFrame frame = pending.get(i);
+            int cost = frame.getParticlesPerPoint();
+
+            int share = remaining / (pending.size() - i);
+            int granted = Math.min(frame.allowedPoints, share / cost);
+
+            frame.allowedPoints = granted;
+            remaining -= granted * cost;
+        }
+    }
+
+    // As above, but the packet cost of a frame's points depends on its viewers. Grants the most points whose packets fit the share
+    private void distributePackets(int budget) {
+        this.pending.sort(BY_PACKET_DEMAND);
+
+        long remaining = budget;
+        for (int i = 0; i < pending.size(); i++) {
+            PendingFrame frame = pending.get(i);
+            long share = remaining / (pending.size() - i);
+
+            int low = 0, high = frame.allowedPoints;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (frame.getPackets(mid) <= share) {
+                    low = mid;
+                }
+                else {
+                    high = mid - 1;
+                }
+            }
+
+            frame.allowedPoints = low;
+            remaining -= frame.getPackets(low);
+        }
+    }
+
+    // Records the point interval of each player to whom the frame would be sent, as emit() would determine them
+    private void collectViewers(@NotNull PendingFrame frame) {
+        frame.viewerCount = 0;
+
+        for (Player viewer : frame.world.getPlayers()) {
+            viewer.getLocation(viewerLocation);
+
+            double dx = viewerLocation.getX() - frame.x, dy = viewerLocation.getY() - frame.y, dz = viewerLocation.getZ() - frame.z;
+            double distanceSquared = (dx * dx) + (dy * dy) + (dz * dz);
+
+            int interval = (levelOfDetail != null) ? levelOfDetail.getPointInterval(distanceSquared) : (distanceSquared <= FORCED_VIEW_DISTANCE_SQUARED ? 1 : 0);
+            if (interval == 0) {
+                continue;
+            }
+
+            if (frame.viewerCount == frame.viewerIntervals.length) {
+                frame.viewerIntervals = Arrays.copyOf(frame.viewerIntervals, Math.max(frame.viewerIntervals.length * 2, 8));
+            }
+
+            frame.viewerIntervals[frame.viewerCount++] = interval;
+        }
+    }
+
+    private void display(@NotNull PendingFrame frame) {
+        int points = frame.points, allowedPoints = frame.allowedPoints;
+
+        if (allowedPoints < points) {
+            this.droppedParticles += (long) (points - allowedPoints) * frame.getParticlesPerPoint();
+            this.reportDroppedParticles += (long) (points - allowedPoints) * frame.getParticlesPerPoint();
+
+            if (allowedPoints == 0) {
+                this.skippedFrames++;
+                this.reportSkippedFrames++;
+                return;
+            }
+
+            this.thinnedFrames++;
+            this.reportThinnedFrames++;
+        }
+
+        this.emit(frame.world, frame.equationData, frame.x, frame.y, frame.z, frame.offsets, 0, points, allowedPoints);
+        this.spawnedParticles += (long) allowedPoints * frame.getParticlesPerPoint();
+    }
+
+    // Displays an evenly spaced subset of displayedPoints points. If all points are displayed, this is every point
+    private void emit(@NotNull World world, @NotNull ConditionalEquationData equationData, double x, double y, double z, double @NotNull [] offsets, int start, int points, int displayedPoints) {
+        Particle particle = equationData.getParticle();
+
+        if (batchTolerance != NO_BATCHING) {
+            ParticleBatcher batcher = batchers.computeIfAbsent(world.getUID(), uuid -> new ParticleBatcher(batchTolerance));
+            batcher.beginFrame(world, equationData, x, y, z);
+
+            for (int i = 0; i < displayedPoints; i++) {
+                int offset = start + (int) (((long) i * points) / displayedPoints) * 2;
+                batcher.addPoint(x + offsets[offset], y, z + offsets[offset + 1], i);
+            }
+
+            return;
+        }
+
+        if (levelOfDetail == null) {
+            for (int i = 0; i < displayedPoints; i++) {
+                int offset = start + (int) (((long) i * points) / displayedPoints) * 2;
+                world.spawnParticle(particle, x + offsets[offset], y, z + offsets[offset + 1], equationData.getParticleAmount(), equationData.getParticleOffsetX(), equationData.getParticleOffsetY(), equationData.getParticleOffsetZ(), equationData.getParticleExtra(), null, true);
+            }
+
+            return;
+        }
+
+        for (Player viewer : world.getPlayers()) {
+            viewer.getLocation(viewerLocation);
+
+            double dx = viewerLocation.getX() - x, dy = viewerLocation.getY() - y, dz = viewerLocation.getZ() - z;
+            int interval = levelOfDetail.getPointInterval((dx * dx) + (dy * dy) + (dz * dz));
+            if (interval == 0) {
+                continue;
+            }
+
+            for (int i = 0; i < displayedPoints; i += interval) {
+                int offset = start + (int) (((long) i * points) / displayedPoints) * 2;
+                viewer.spawnParticle(particle, x + offsets[offset], y, z + offsets[offset + 1], equationData.getParticleAmount(), equationData.getParticleOffsetX(), equationData.getParticleOffsetY(), equationData.getParticleOffsetZ(), equationData.getParticleExtra());
+            }
+        }
+    }
+
+    private void report() {
+        if (reportDroppedParticles > 0) {
+            this.logger.warning(String.format("Particle budget exceeded. Dropped %d particles in the last minute (%d frames thinned, %d frames skipped). Consider raising the particle budget in the config.yml", reportDroppedParticles, reportThinnedFrames, reportSkippedFrames));
+        }
+
+        this.ticksSinceReport = 0;
+        this.reportDroppedParticles = 0;
+        this.reportThinnedFrames = 0;
+        this.reportSkippedFrames = 0;
+    }
+
+    private static final class PendingFrame {
+
+        private World world;
+        private ConditionalEquationData equationData;
+        private double x, y, z;
+        private double[] offsets = new double[0];
+        private int points, allowedPoints;
+        private int[] viewerIntervals = new int[0];
+        private int viewerCount;
+
+        private void set(@NotNull World world, @NotNull ConditionalEquationData equationData, double x, double y, double z, double @NotNull [] offsets, int start, int end) {
+            this.world = world;
+            this.equationData = equationData;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+
+            if (this.offsets.length < end - start) {
+                this.offsets = new double[end - start];
+            }
+
+            System.arraycopy(offsets, start, this.offsets, 0, end - start);
+            this.points = (end - start) / 2;
+            this.viewerCount = 0;
+        }
+
+        // Each viewer is sent every interval-th of the displayed points
+        private long getPackets(int displayedPoints) {
+            long packets = 0;
+            for (int i = 0; i < viewerCount; i++) {
+                packets += (displayedPoints + viewerIntervals[i] - 1) / viewerIntervals[i];
+            }
+
+            return packets;
+        }
+
+        private int getParticlesPerPoint() {
+            return Math.max(equationData.getParticleAmount(), 1);
+        }
+
+        @NotNull
+        private PendingFrame reset() {
+            this.world = null;
+            this.equationData = null;
+            return this;
+        }
+
+    }
+
+}
@@ -3,31 +3,47 @@ package wtf.choco.dragoneggdrop.particle;
 import com.google.common.base.Enums;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.hash.Hashing;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.bukkit.Location;
 import org.bukkit.Particle;
 import org.bukkit.World;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import wtf.choco.dragoneggdrop.DragonEggDrop;
 import wtf.choco.dragoneggdrop.particle.condition.ConditionFactory;
 import wtf.choco.dragoneggdrop.particle.condition.EquationCondition;
 import wtf.choco.dragoneggdrop.particle.condition.EquationConditionAlwaysTrue;
 import wtf.choco.dragoneggdrop.particle.condition.EquationConditionDoubleComparison;
-import wtf.choco.dragoneggdrop.particle.condition.EquationConditionStringComparison;
+import wtf.choco.dragoneggdrop.particle.condition.EquationConditionWorld;
 import wtf.choco.dragoneggdrop.registry.Registerable;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionContext;
 import wtf.choco.dragoneggdrop.utils.math.ExpressionUtils;
+import wtf.choco.dragoneggdrop.utils.math.FastTrigonometry;
+import wtf.choco.dragoneggdrop.utils.math.MathExpression;
 
 import static wtf.choco.dragoneggdrop.utils.JsonUtils.getOptionalField;
 import static wtf.choco.dragoneggdrop.utils.JsonUtils.getRequiredField;
@@ -40,18 +56,39 @@ import static wtf.choco.dragoneggdrop.utils.JsonUtils.getRequiredField;
  */
 public class ParticleShapeDefinition implements Registerable {
 
+    /**
+     * The file extension of compiled shape definition cache files.
+     */
+    public static final String CACHE_FILE_EXTENSION = ".bin";
+
+    private static final int CACHE_MAGIC = 0x44454450; // "DEDP"
+    private static final int CACHE_VERSION = 2;
+
+    /**
+     * The maximum amount of released sessions kept for reuse by each shape definition.
+     */
+    public static final int MAX_POOLED_SESSIONS = 4;
+
     static {
         ConditionFactory.registerCondition("always_true", EquationConditionAlwaysTrue::create);
-        ConditionFactory.registerCondition("x_position", json -> EquationConditionDoubleComparison.create(json, context -> context != null ? context.getVariables().getX() : 0.0));
-        ConditionFactory.registerCondition("y_position", json -> EquationConditionDoubleComparison.create(json, context -> context != null ? context.getVariables().getY() : 0.0));
-        ConditionFactory.registerCondition("z_position", json -> EquationConditionDoubleComparison.create(json, context -> context != null ? context.getVariables().getZ() : 0.0));
-        ConditionFactory.registerCondition("t", json -> EquationConditionDoubleComparison.create(json, context -> context != null ? context.getVariables().getT() : 0.0));
-        ConditionFactory.registerCondition("theta", json -> EquationConditionDoubleComparison.create(json, context -> context != null ? context.getVariables().getTheta() : 0.0));
-        ConditionFactory.registerCondition("world", json -> EquationConditionStringComparison.create(json, context -> context.getWorld().getName()));
+        ConditionFactory.registerCondition("x_position", json -> EquationConditionDoubleComparison.create(json, ParticleVariables.SLOT_X));
+        ConditionFactory.registerCondition("y_position", json -> EquationConditionDoubleComparison.create(json, ParticleVariables.SLOT_Y));
+        ConditionFactory.registerCondition("z_position", json -> EquationConditionDoubleComparison.create(json, ParticleVariables.SLOT_Z));
+        ConditionFactory.registerCondition("t", json -> EquationConditionDoubleComparison.create(json, ParticleVariables.SLOT_T));
+        ConditionFactory.registerCondition("theta", json -> EquationConditionDoubleComparison.create(json, ParticleVariables.SLOT_THETA));
+        ConditionFactory.registerCondition("world", EquationConditionWorld::create);
     }
 
     private double startY;
     private List<@NotNull ConditionalEquationData> equationData = new ArrayList<>();
+    private EquationSelector selector;
+    private ParticleTrack track;
+
+    private ParticleRandom.Type randomType = ParticleRandom.Type.JAVA;
+    private Long randomSeed = null;
+
+    // Released sessions waiting to be reused, most recently released first
+    private final Deque<@NotNull AnimatedParticleSession> sessionPool = new ArrayDeque<>(MAX_POOLED_SESSIONS);
 
     private final String id;
 
@@ -70,6 +107,8 @@ public class ParticleShapeDefinition implements Registerable {
         this.id = id;
         this.startY = startY;
         this.equationData = new ArrayList<>(equationData);
+        this.selector = EquationSelector.compile(this.equationData);
+        this.track = ParticleTrack.isSupported(this.equationData) ? new ParticleTrack(this.equationData, selector) : null;
     }
 
     /**
@@ -97,6 +136,78 @@ public class ParticleShapeDefinition implements Registerable {
         return startY;
     }
 
+    /**
+     * Check whether or not the frames of this shape are precomputed and shared between all of
+     * its sessions. Shapes whose expressions read the session's location or a random value, or
+     * whose conditions depend on the session's location or world, are evaluated live by each
+     * session instead. So are shapes displaying too many points per frame for their frames to
+     * be recorded in a reasonable amount of memory.
+     *
+     * @return true if precomputed, false if evaluated live
+     */
+    public boolean isPrecomputed() {
+        return track != null;
+    }
+
+    /**
+     * Check whether or not the conditions of all of this shape's equation data may safely be
+     * checked off of the server's main thread, and therefore whether or not its sessions may
+     * compute their frames asynchronously.
+     *
+     * @return true if thread safe, false otherwise
+     *
+     * @see ConditionalEquationData#isThreadSafe()
+     */
+    public boolean isThreadSafe() {
+        for (ConditionalEquationData data : equationData) {
+            if (!data.isThreadSafe()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Set the source of the values read from the random variable by this shape's sessions.
+     * If seeded, every session produces the same sequence of random values, making this
+     * shape's animations reproducible between runs. Otherwise, every session is seeded
+     * arbitrarily.
+     *
+     * @param type the type of random source
+     * @param seed the seed, or null to seed each session arbitrarily
+     */
+    public void setRandomSource(@NotNull ParticleRandom.Type type, @Nullable Long seed) {
+        Preconditions.checkArgument(type != null, "type must not be null");
+
+        this.randomType = type;
+        this.randomSeed = seed;
+
+        synchronized (sessionPool) {
+            this.sessionPool.clear(); // Pooled sessions hold a random source of the previous type
+        }
+    }
+
+    /**
+     * Get the type of random source used by this shape's sessions.
+     *
+     * @return the random source type
+     */
+    @NotNull
+    public ParticleRandom.Type getRandomType() {
+        return randomType;
+    }
+
+    /**
+     * Get the seed of the random source used by this shape's sessions.
+     *
+     * @return the seed, or null if each session is seeded arbitrarily
+     */
+    @Nullable
+    public Long getRandomSeed() {
+        return randomSeed;
+    }
+
     /**
      * Create an animated particle session unique to the specified world and coordinates. The created
      * session will represent this shape definition.
@@ -118,7 +229,8 @@ public class ParticleShapeDefinition implements Registerable {
 
     /**
      * Create an animated particle session unique to the specified world and coordinates. The created
-     * session will represent this shape definition.
+     * session will represent this shape definition. If a previously {@link #releaseSession(AnimatedParticleSession)
+     * released} session is available, it is reset and reused rather than creating a new session.
      *
      * @param world the world in which to create the session
      * @param x the x coordinate at which the animation should originate
@@ -131,7 +243,17 @@ public class ParticleShapeDefinition implements Registerable {
     public AnimatedParticleSession createSession(@NotNull World world, double x, double y, double z) {
         Preconditions.checkArgument(world != null, "world must not be null");
 
-        return new AnimatedParticleSession(this, equationData, world, x, y, z);
+        AnimatedParticleSession session;
+        synchronized (sessionPool) {
+            session = sessionPool.pollFirst();
+        }
+
+        if (session == null) {
+            return new AnimatedParticleSession(this, equationData, selector, track, world, x, y, z);
+        }
+
+        session.reset(track, world, x, y, z);
+        return session;
     }
 
     /**
@@ -149,6 +271,42 @@ public class ParticleShapeDefinition implements Registerable {
         return createSession(world, x, getStartY(), z);
     }
 
+    /**
+     * Release a session of this shape definition that has finished animating such that it may
+     * be reused by a later call to {@code createSession()}. Up to {@link #MAX_POOLED_SESSIONS}
+     * sessions are kept. Sessions still computing frames asynchronously are not kept.
+     * <p>
+     * The released session must not be used once released.
+     *
+     * @param session the session to release
+     */
+    public void releaseSession(@NotNull AnimatedParticleSession session) {
+        Preconditions.checkArgument(session != null, "session must not be null");
+        Preconditions.checkArgument(session.getShape() == this, "session was not created by this shape definition");
+
+        // Sessions created before the random source was changed cannot be reused
+        if (!session.release() || session.getRandom().getType() != randomType) {
+            return;
+        }
+
+        synchronized (sessionPool) {
+            if (sessionPool.size() < MAX_POOLED_SESSIONS) {
+                this.sessionPool.addFirst(session);
+            }
+        }
+    }
+
+    /**
+     * Get the amount of released sessions currently kept for reuse.
+     *
+     * @return the amount of pooled sessions
+     */
+    public int getPooledSessionCount() {
+        synchronized (sessionPool) {
+            return sessionPool.size();
+        }
+    }
+
     /**
      * Load and create a {@link ParticleShapeDefinition} from a JSON {@link File}.
      *
@@ -158,6 +316,25 @@ public class ParticleShapeDefinition implements Registerable {
      */
     @NotNull
     public static ParticleShapeDefinition fromFile(@NotNull File file) {
+        return fromFile(file, null);
+    }
+
+    /**
+     * Load and create a {@link ParticleShapeDefinition} from a JSON {@link File}, using a
+     * compiled copy of the shape from the given cache directory if one exists. Compiled shapes
+     * are keyed by a hash of the JSON file's contents and hold the shape's parsed and
+     * optimized expressions, such that they may be loaded without parsing the JSON file or
+     * its expressions again. If no compiled shape exists, or if the JSON file has changed
+     * since it was compiled, the shape is parsed from the JSON file and compiled anew.
+     *
+     * @param file the file from which to parse a shape definition
+     * @param cacheDirectory the directory in which compiled shapes are cached, or null to
+     * always parse the JSON file
+     *
+     * @return the shape definition
+     */
+    @NotNull
+    public static ParticleShapeDefinition fromFile(@NotNull File file, @Nullable File cacheDirectory) {
         Preconditions.checkArgument(file != null, "file must not be null");
 
         String fileName = file.getName();
@@ -165,15 +342,46 @@ public class ParticleShapeDefinition implements Registerable {
             throw new IllegalArgumentException("Expected .json file. Got " + fileName.substring(fileName.lastIndexOf('.')) + " instead");
         }
 
-        JsonObject root = null;
+        byte[] source;
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            root = DragonEggDrop.GSON.fromJson(reader, JsonObject.class);
+        try {
+            source = Files.readAllBytes(file.toPath());
         } catch (IOException e) {
             throw new JsonParseException(e.getMessage(), e.getCause());
         }
 
         String id = fileName.substring(0, fileName.lastIndexOf('.')).replace(' ', '_');
+        if (cacheDirectory == null) {
+            return parse(id, source, null);
+        }
+
+        byte[] hash = Hashing.sha256().hashBytes(source).asBytes();
+        File cacheFile = new File(cacheDirectory, id + CACHE_FILE_EXTENSION);
+
+        ParticleShapeDefinition shapeDefinition = readCache(id, hash, cacheFile);
+        if (shapeDefinition != null) {
+            return shapeDefinition;
+        }
+
+        List<@NotNull EquationSource> equationSources = new ArrayList<>();
+        shapeDefinition = parse(id, source, equationSources);
+        writeCache(shapeDefinition, hash, equationSources, cacheFile);
+
+        return shapeDefinition;
+    }
+
+    @NotNull
+    ParticleRandom createRandom() {
+        return (randomSeed != null) ? randomType.create(randomSeed) : randomType.create();
+    }
+
+    void reseedRandom(@NotNull ParticleRandom random) {
+        random.setSeed((randomSeed != null) ? randomSeed : ThreadLocalRandom.current().nextLong());
+    }
+
+    @NotNull
+    private static ParticleShapeDefinition parse(@NotNull String id, byte @NotNull [] source, @Nullable List<@NotNull EquationSource> equationSources) {
+        JsonObject root = DragonEggDrop.GSON.fromJson(new String(source, Charset.defaultCharset()), JsonObject.class);
         double startY = getRequiredField(root, "start_y", JsonElement::getAsDouble);
 
         JsonObject argumentsObject = getRequiredField(root, "arguments", JsonElement::getAsJsonObject);
@@ -195,6 +403,33 @@ public class ParticleShapeDefinition implements Registerable {
         int frameIntervalTicks = getRequiredField(argumentsObject, "frame_interval_ticks", JsonElement::getAsInt);
         int thetaIncrement = getRequiredField(argumentsObject, "theta_increment", JsonElement::getAsInt);
 
+        String trigonometry = getOptionalField(argumentsObject, "trigonometry", JsonElement::getAsString, "strict");
+        int trigonometryResolution = getOptionalField(argumentsObject, "trigonometry_resolution", JsonElement::getAsInt, FastTrigonometry.DEFAULT_RESOLUTION);
+
+        String randomName = getOptionalField(argumentsObject, "random", JsonElement::getAsString, ParticleRandom.Type.JAVA.getName());
+        ParticleRandom.Type randomType = ParticleRandom.Type.getByName(randomName);
+        if (randomType == null) {
+            throw new JsonParseException("Unexpected random, \"" + randomName + "\". Expected \"java\", \"splittable\" or \"xorshift\"");
+        }
+
+        Long randomSeed = argumentsObject.has("random_seed") ? getRequiredField(argumentsObject, "random_seed", JsonElement::getAsLong) : null;
+
+        List<@NotNull JsonObject> functionObjects = new ArrayList<>();
+        if (root.has("functions")) {
+            JsonElement functionsElement = root.get("functions");
+            if (!functionsElement.isJsonArray()) {
+                throw new JsonParseException("Invalid functions element. Expected array, got " + functionsElement.getClass().getSimpleName());
+            }
+
+            for (JsonElement functionElement : functionsElement.getAsJsonArray()) {
+                if (!functionElement.isJsonObject()) {
+                    throw new JsonParseException("Invalid function element. Expected object, got " + functionElement.getClass().getSimpleName());
+                }
+
+                functionObjects.add(functionElement.getAsJsonObject());
+            }
+        }
+
         List<ConditionalEquationData> equationDataList = new ArrayList<>();
 
         JsonArray equationsArray = getRequiredField(root, "equations", JsonElement::getAsJsonArray);
@@ -205,10 +440,26 @@ public class ParticleShapeDefinition implements Registerable {
 
             JsonObject equationObject = equationElement.getAsJsonObject();
 
-            String xExpressionString = getRequiredField(equationObject, "x", JsonElement::getAsString);
-            String zExpressionString = getRequiredField(equationObject, "z", JsonElement::getAsString);
+            // Kind of cheating here. If we don't have an "arguments" tag in our equation data, use the argumentsObject from root instead
+            JsonElement equationArgumentsElement = getOptionalField(equationObject, "arguments", JsonElement::getAsJsonObject, argumentsObject);
+            if (!equationArgumentsElement.isJsonObject()) {
+                throw new JsonParseException("Invalid arguments element. Expected object, got " + equationArgumentsElement.getClass().getSimpleName());
+            }
 
-            ConditionalEquationData equationData = new ConditionalEquationData(ExpressionUtils.parseExpression(xExpressionString), ExpressionUtils.parseExpression(zExpressionString));
+            JsonObject equationArgumentsRoot = equationArgumentsElement.getAsJsonObject();
+
+            String equationTrigonometry = getOptionalField(equationArgumentsRoot, "trigonometry", JsonElement::getAsString, trigonometry);
+            int equationTrigonometryResolution = getOptionalField(equationArgumentsRoot, "trigonometry_resolution", JsonElement::getAsInt, trigonometryResolution);
+            ExpressionContext expressionContext = createExpressionContext(equationTrigonometry, equationTrigonometryResolution);
+            for (JsonObject functionObject : functionObjects) {
+                defineFunction(functionObject, expressionContext);
+            }
+
+            MathExpression xExpression = parseExpression(equationObject, "x", expressionContext);
+            MathExpression zExpression = parseExpression(equationObject, "z", expressionContext);
+
+            ConditionalEquationData equationData = new ConditionalEquationData(xExpression, zExpression);
+            List<@NotNull JsonObject> conditionObjects = new ArrayList<>();
 
             if (equationObject.has("conditions")) {
                 JsonElement conditionsElement = equationObject.get("conditions");
@@ -222,16 +473,10 @@ public class ParticleShapeDefinition implements Registerable {
                     }
 
                     equationData.addCondition(parseCondition(conditionElement.getAsJsonObject()));
+                    conditionObjects.add(conditionElement.getAsJsonObject());
                 }
             }
 
-            // Kind of cheating here. If we don't have an "arguments" tag in our equation data, use the argumentsObject from root instead
-            JsonElement equationArgumentsElement = getOptionalField(equationObject, "arguments", JsonElement::getAsJsonObject, argumentsObject);
-            if (!equationArgumentsElement.isJsonObject()) {
-                throw new JsonParseException("Invalid arguments element. Expected object, got " + equationArgumentsElement.getClass().getSimpleName());
-            }
-
-            JsonObject equationArgumentsRoot = equationArgumentsElement.getAsJsonObject();
             particleName = getOptionalField(equationArgumentsRoot, "particle", JsonElement::getAsString, particle.get().name()).toUpperCase();
             Optional<@NotNull Particle> equationParticle = Enums.getIfPresent(Particle.class, particleName);
             if (!equationParticle.isPresent()) {
@@ -251,9 +496,174 @@ public class ParticleShapeDefinition implements Registerable {
             equationData.thetaIncrement = getOptionalField(equationArgumentsRoot, "theta_increment", JsonElement::getAsInt, thetaIncrement);
 
             equationDataList.add(equationData);
+
+            if (equationSources != null) {
+                equationSources.add(new EquationSource(equationTrigonometry, equationTrigonometryResolution, conditionObjects));
+            }
+        }
+
+        ParticleShapeDefinition shapeDefinition = new ParticleShapeDefinition(id, startY, equationDataList);
+        shapeDefinition.setRandomSource(randomType, randomSeed);
+        return shapeDefinition;
+    }
+
+    private static ExpressionContext createExpressionContext(String trigonometry, int resolution) {
+        switch (trigonometry.toLowerCase()) {
+            case "strict":
+                return new ExpressionContext();
+            case "intrinsic":
+                return ExpressionContext.intrinsicTrigonometry();
+            case "table":
+                try {
+                    return ExpressionContext.tableTrigonometry(resolution);
+                } catch (IllegalArgumentException e) {
+                    throw new JsonParseException("Invalid trigonometry_resolution, " + resolution + ". " + e.getMessage());
+                }
+            default:
+                throw new JsonParseException("Unexpected trigonometry, \"" + trigonometry + "\". Expected \"strict\", \"intrinsic\" or \"table\"");
+        }
+    }
+
+    // Helpers are defined once per equation such that they use the equation's trigonometry
+    private static void defineFunction(JsonObject functionObject, ExpressionContext context) {
+        String name = getRequiredField(functionObject, "name", JsonElement::getAsString);
+        String expression = getRequiredField(functionObject, "expression", JsonElement::getAsString);
+
+        List<@NotNull String> parameters = new ArrayList<>();
+        for (JsonElement parameterElement : getOptionalField(functionObject, "parameters", JsonElement::getAsJsonArray, new JsonArray())) {
+            parameters.add(parameterElement.getAsString());
+        }
+
+        try {
+            context.defineFunction(name, parameters, expression);
+        } catch (RuntimeException e) {
+            throw new JsonParseException("Invalid function \"" + name + "\", \"" + expression + "\". " + e.getMessage());
+        }
+    }
+
+    private static MathExpression parseExpression(JsonObject equationObject, String axis, ExpressionContext context) {
+        String expression = getRequiredField(equationObject, axis, JsonElement::getAsString);
+
+        try {
+            return ExpressionUtils.parseExpression(expression, context);
+        } catch (RuntimeException e) {
+            throw new JsonParseException("Invalid " + axis + " expression, \"" + expression + "\". " + e.getMessage());
+        }
+    }
+
+    @Nullable
+    private static ParticleShapeDefinition readCache(@NotNull String id, byte @NotNull [] hash, @NotNull File cacheFile) {
+        if (!cacheFile.isFile()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+            if (in.readInt() != CACHE_MAGIC || in.readInt() != CACHE_VERSION) {
+                return null;
+            }
+
+            byte[] cachedHash = new byte[hash.length];
+            in.readFully(cachedHash);
+            if (!Arrays.equals(hash, cachedHash)) {
+                return null;
+            }
+
+            double startY = in.readDouble();
+            ParticleRandom.Type randomType = ParticleRandom.Type.valueOf(in.readUTF());
+            Long randomSeed = in.readBoolean() ? in.readLong() : null;
+            int equationCount = in.readInt();
+
+            List<@NotNull ConditionalEquationData> equationDataList = new ArrayList<>(equationCount);
+            for (int i = 0; i < equationCount; i++) {
+                equationDataList.add(readEquationData(in));
+            }
+
+            ParticleShapeDefinition shapeDefinition = new ParticleShapeDefinition(id, startY, equationDataList);
+            shapeDefinition.setRandomSource(randomType, randomSeed);
+            return shapeDefinition;
+        } catch (IOException | RuntimeException e) {
+            return null; // Stale or corrupt caches are rebuilt from the JSON source
         }
+    }
+
+    @NotNull
+    private static ConditionalEquationData readEquationData(@NotNull DataInput in) throws IOException {
+        ExpressionContext expressionContext = createExpressionContext(in.readUTF(), in.readInt());
+        MathExpression xExpression = ExpressionUtils.readExpression(in, expressionContext);
+        MathExpression zExpression = ExpressionUtils.readExpression(in, expressionContext);
+
+        ConditionalEquationData equationData = new ConditionalEquationData(xExpression, zExpression);
+
+        int conditionCount = in.readInt();
+        for (int i = 0; i < conditionCount; i++) {
+            equationData.addCondition(parseCondition(DragonEggDrop.GSON.fromJson(in.readUTF(), JsonObject.class)));
+        }
+
+        equationData.particle = Particle.valueOf(in.readUTF());
+        equationData.particleAmount = in.readInt();
+        equationData.particleExtra = in.readDouble();
+        equationData.particleOffsetX = in.readFloat();
+        equationData.particleOffsetY = in.readFloat();
+        equationData.particleOffsetZ = in.readFloat();
+        equationData.particleStreams = in.readInt();
+
+        equationData.speedMultiplier = in.readDouble();
+        equationData.frameIntervalTicks = in.readInt();
+        equationData.thetaIncrement = in.readDouble();
 
-        return new ParticleShapeDefinition(id, startY, equationDataList);
+        return equationData;
+    }
+
+    private static void writeCache(@NotNull ParticleShapeDefinition shapeDefinition, byte @NotNull [] hash, @NotNull List<@NotNull EquationSource> equationSources, @NotNull File cacheFile) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(CACHE_MAGIC);
+            out.writeInt(CACHE_VERSION);
+            out.write(hash);
+
+            out.writeDouble(shapeDefinition.startY);
+            out.writeUTF(shapeDefinition.randomType.name());
+            out.writeBoolean(shapeDefinition.randomSeed != null);
+            if (shapeDefinition.randomSeed != null) {
+                out.writeLong(shapeDefinition.randomSeed);
+            }
+
+            out.writeInt(shapeDefinition.equationData.size());
+
+            for (int i = 0; i < shapeDefinition.equationData.size(); i++) {
+                writeEquationData(out, shapeDefinition.equationData.get(i), equationSources.get(i));
+            }
+
+            cacheFile.getParentFile().mkdirs();
+            Files.write(cacheFile.toPath(), bytes.toByteArray());
+        } catch (IOException | RuntimeException e) {
+            cacheFile.delete(); // The cache is an optimization. The shape will be parsed from its JSON source next time
+        }
+    }
+
+    private static void writeEquationData(@NotNull DataOutput out, @NotNull ConditionalEquationData equationData, @NotNull EquationSource source) throws IOException {
+        out.writeUTF(source.trigonometry);
+        out.writeInt(source.trigonometryResolution);
+        ExpressionUtils.writeExpression(equationData.getXExpression(), out);
+        ExpressionUtils.writeExpression(equationData.getZExpression(), out);
+
+        out.writeInt(source.conditions.size());
+        for (JsonObject conditionObject : source.conditions) {
+            out.writeUTF(conditionObject.toString());
+        }
+
+        out.writeUTF(equationData.particle.name());
+        out.writeInt(equationData.particleAmount);
+        out.writeDouble(equationData.particleExtra);
+        out.writeFloat(equationData.particleOffsetX);
+        out.writeFloat(equationData.particleOffsetY);
+        out.writeFloat(equationData.particleOffsetZ);
+        out.writeInt(equationData.particleStreams);
+
+        out.writeDouble(equationData.speedMultiplier);
+        out.writeInt(equationData.frameIntervalTicks);
+        out.writeDouble(equationData.thetaIncrement);
     }
 
     private static EquationCondition parseCondition(JsonObject conditionObject) {
@@ -267,4 +677,19 @@ public class ParticleShapeDefinition implements Registerable {
         return condition;
     }
 
+    // The parts of an equation's JSON source needed to recreate it that are not retained by ConditionalEquationData
+    private static final class EquationSource {
+
+        private final String trigonometry;
+        private final int trigonometryResolution;
+        private final List<@NotNull JsonObject> conditions;
+
+        private EquationSource(@NotNull String trigonometry, int trigonometryResolution, @NotNull List<@NotNull JsonObject> conditions) {
+            this.trigonometry = trigonometry;
+            this.trigonometryResolution = trigonometryResolution;
+            this.conditions = conditions;
+        }
+
+    }
+
 }
@@ -0,0 +1,208 @@
+package wtf.choco.dragoneggdrop.particle;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.bukkit.World;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A precomputed sequence of frames for a {@link ParticleShapeDefinition}. Tracks may only be
+ * created for shapes whose frames do not differ between sessions (see
+ * {@link ConditionalEquationData#isSessionDependent()}), in which case every session of the
+ * shape may replay the same relative offsets rather than evaluating them.
+ * <p>
+ * Frames are computed lazily as sessions request them, up to {@link #MAX_TICKS} ticks or until
+ * the recorded offsets would exceed {@link #MAX_BYTES}, after which sessions are expected to
+ * continue animating live from {@link #getEndState(World)}.
+ * <p>
+ * Every recorded point costs 16 bytes (an x and a z offset), so a shape displaying 100
+ * streams every tick would need roughly 3.9 MB to record all {@link #MAX_TICKS} ticks. Such a
+ * shape is instead recorded for as many ticks as fit in {@link #MAX_BYTES}, and shapes whose
+ * frames are too large to record at least {@link #MIN_TICKS} ticks are not recorded at all
+ * (see {@link #isSupported(List)}).
+ *
+ * @author Parker Hawke - Choco
+ */
+final class ParticleTrack {
+
+    /**
+     * The maximum amount of ticks recorded by a track.
+     */
+    static final int MAX_TICKS = 20 * 60 * 2;
+
+    /**
+     * The maximum amount of memory in bytes occupied by the offsets recorded by a track.
+     */
+    static final int MAX_BYTES = 1024 * 1024;
+
+    /**
+     * The minimum amount of ticks a track must be able to record within {@link #MAX_BYTES}
+     * for it to be worth recording.
+     */
+    static final int MIN_TICKS = 20 * 5;
+
+    private static final int MAX_OFFSETS = MAX_BYTES / Double.BYTES;
+
+    private static final int NO_FRAME = -1;
+
+    private AnimationState state;
+    private int computedTicks = 0;
+    private int length = MAX_TICKS;
+
+    // Per tick, the index of the frame's first x offset in offsets (z offsets are interleaved) and the frame's equation data
+    private int[] frameStart = new int[64];
+    private ConditionalEquationData[] frameData = new ConditionalEquationData[64];
+    private double[] offsets = new double[256];
+    private int offsetsLength = 0;
+
+    private final List<@NotNull ConditionalEquationData> equationData;
+    private final EquationSelector selector;
+    private final int maxPointsPerFrame;
+
+    ParticleTrack(@NotNull List<@NotNull ConditionalEquationData> equationData, @Nullable EquationSelector selector) {
+        this.equationData = equationData;
+        this.selector = selector;
+        this.maxPointsPerFrame = getMaxPointsPerFrame(equationData);
+    }
+
+    /**
+     * Ensure that all ticks up to and including the given tick have been computed, unless
+     * the track ends before the given tick.
+     *
+     * @param tick the tick
+     * @param world the world with which to compute frames. Tracks are never session dependent,
+     * so any world will produce the same result
+     *
+     * @return true if the tick has been computed, false if it lies beyond the end of this track
+     */
+    synchronized boolean ensureComputed(int tick, @NotNull World world) {
+        if (tick < computedTicks) {
+            return true;
+        }
+        else if (tick >= length) {
+            return false;
+        }
+
+        if (state == null) {
+            this.state = new AnimationState(equationData, selector, world, ParticleRandom.Type.XORSHIFT.create(0L)); // Tracks never read random values
+        }
+
+        int targetTicks = Math.min(tick + 1, MAX_TICKS);
+        if (frameStart.length < targetTicks) {
+            int capacity = Math.min(Math.max(frameStart.length * 2, targetTicks), MAX_TICKS);
+            this.frameStart = Arrays.copyOf(frameStart, capacity);
+            this.frameData = Arrays.copyOf(frameData, capacity);
+        }
+
+        while (computedTicks < targetTicks) {
+            // Check before ticking so that the end state never skips a frame that was not recorded
+            if (offsetsLength + (maxPointsPerFrame * 2) > MAX_OFFSETS) {
+                this.length = computedTicks;
+                return false;
+            }
+
+            ConditionalEquationData data = state.tick(0.0, 0.0, 0.0);
+            if (data == null) {
+                this.frameStart[computedTicks] = NO_FRAME;
+                this.frameData[computedTicks++] = null;
+                continue;
+            }
+
+            int points = data.getPointsPerFrame();
+            if (offsets.length < offsetsLength + (points * 2)) {
+                this.offsets = Arrays.copyOf(offsets, Math.min(Math.max(offsets.length * 2, offsetsLength + (points * 2)), MAX_OFFSETS));
+            }
+
+            double[] offsetX = state.getOffsetX(), offsetZ = state.getOffsetZ();
+            for (int i = 0; i < points; i++) {
+                this.offsets[offsetsLength++] = offsetX[i];
+                this.offsets[offsetsLength++] = offsetZ[i];
+            }
+
+            this.frameStart[computedTicks] = offsetsLength - (points * 2);
+            this.frameData[computedTicks++] = data;
+        }
+
+        return true;
+    }
+
+    /**
+     * Get the equation data of the frame displayed at the given tick. The tick must have been
+     * computed by {@link #ensureComputed(int, World)}.
+     *
+     * @param tick the tick
+     *
+     * @return the equation data, or null if no frame is displayed at the given tick
+     */
+    @Nullable
+    synchronized ConditionalEquationData getFrameData(int tick) {
+        return frameData[tick];
+    }
+
+    /**
+     * Get the index in {@link #getOffsets()} of the first offset of the frame displayed at the
+     * given tick. The tick must have been computed by {@link #ensureComputed(int, World)}.
+     *
+     * @param tick the tick
+     *
+     * @return the frame's first offset index
+     */
+    synchronized int getFrameStart(int tick) {
+        return frameStart[tick];
+    }
+
+    /**
+     * Get the offsets of all computed frames. Each point is represented by two consecutive
+     * entries, its x offset followed by its z offset.
+     *
+     * @return the offsets
+     */
+    synchronized double @NotNull [] getOffsets() {
+        return offsets;
+    }
+
+    /**
+     * Get the state of the animation after the last tick of this track has been computed.
+     * Sessions that outlive this track should copy this state and continue animating live.
+     *
+     * @param world the world with which to compute frames
+     *
+     * @return the end state
+     */
+    @NotNull
+    synchronized AnimationState getEndState(@NotNull World world) {
+        this.ensureComputed(MAX_TICKS - 1, world);
+        return state;
+    }
+
+    /**
+     * Check whether or not the given equation data may be represented by a track. Equation
+     * data must not be session dependent, and its largest frame must be small enough for at
+     * least {@link #MIN_TICKS} ticks to be recorded within {@link #MAX_BYTES}.
+     *
+     * @param equationData the equation data to check
+     *
+     * @return true if supported, false if sessions must evaluate frames live
+     */
+    static boolean isSupported(@NotNull List<@NotNull ConditionalEquationData> equationData) {
+        for (ConditionalEquationData data : equationData) {
+            if (data.isSessionDependent()) {
+                return false;
+            }
+        }
+
+        return !equationData.isEmpty() && (long) getMaxPointsPerFrame(equationData) * 2 * MIN_TICKS <= MAX_OFFSETS;
+    }
+
+    private static int getMaxPointsPerFrame(@NotNull List<@NotNull ConditionalEquationData> equationData) {
+        int maxPoints = 0;
+        for (ConditionalEquationData data : equationData) {
+            maxPoints = Math.max(maxPoints, data.getPointsPerFrame());
+        }
+
+        return maxPoints;
+    }
+
+}
@@ -2,8 +2,6 @@ package wtf.choco.dragoneggdrop.particle;
 
 import com.google.common.base.Preconditions;
 
-import java.util.Random;
-
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -14,25 +12,80 @@ import org.jetbrains.annotations.NotNull;
  */
 public final class ParticleVariables {
 
-    private final Random random = new Random();
+    /**
+     * The slot index of the x variable.
+     */
+    public static final int SLOT_X = 0;
+
+    /**
+     * The slot index of the y variable.
+     */
+    public static final int SLOT_Y = 1;
+
+    /**
+     * The slot index of the z variable.
+     */
+    public static final int SLOT_Z = 2;
+
+    /**
+     * The slot index of the t variable.
+     */
+    public static final int SLOT_T = 3;
+
+    /**
+     * The slot index of the theta variable.
+     */
+    public static final int SLOT_THETA = 4;
+
+    /**
+     * The slot index of the random variable. Every read of this slot produces a new random value.
+     */
+    public static final int SLOT_RANDOM = 5;
 
-    private double x, y, z;
-    private double t;
-    private double theta;
+    private static final int VALUE_SLOTS = 5;
+
+    private final ParticleRandom random;
+    private final double[] values = new double[VALUE_SLOTS];
 
     /**
      * Construct a new set of variables.
      *
+     * @param random the source of values read from the random variable
      * @param x the initial x value
      * @param y the initial y value
      * @param z the initial z value
      * @param t the initial t value
      * @param theta the initial theta value
      */
-    public ParticleVariables(double x, double y, double z, double t, double theta) {
+    public ParticleVariables(@NotNull ParticleRandom random, double x, double y, double z, double t, double theta) {
+        Preconditions.checkArgument(random != null, "random must not be null");
+
+        this.random = random;
         this.update(x, y, z, t, theta);
     }
 
+    /**
+     * Construct a new set of variables.
+     *
+     * @param x the initial x value
+     * @param y the initial y value
+     * @param z the initial z value
+     * @param t the initial t value
+     * @param theta the initial theta value
+     */
+    public ParticleVariables(double x, double y, double z, double t, double theta) {
+        this(ParticleRandom.Type.JAVA.create(), x, y, z, t, theta);
+    }
+
+    /**
+     * Construct a new set of variables where all values are initialized to 0.0
+     *
+     * @param random the source of values read from the random variable
+     */
+    public ParticleVariables(@NotNull ParticleRandom random) {
+        this(random, 0.0, 0.0, 0.0, 0.0, 0.0);
+    }
+
     /**
      * Construct a new set of variables where all values are initialized to 0.0
      */
@@ -46,7 +99,7 @@ public final class ParticleVariables {
      * @return x
      */
     public double getX() {
-        return x;
+        return values[SLOT_X];
     }
 
     /**
@@ -55,7 +108,7 @@ public final class ParticleVariables {
      * @return y
      */
     public double getY() {
-        return y;
+        return values[SLOT_Y];
     }
 
     /**
@@ -64,7 +117,7 @@ public final class ParticleVariables {
      * @return z
      */
     public double getZ() {
-        return z;
+        return values[SLOT_Z];
     }
 
     /**
@@ -73,7 +126,7 @@ public final class ParticleVariables {
      * @return t
      */
     public double getT() {
-        return t;
+        return values[SLOT_T];
     }
 
     /**
@@ -82,15 +135,48 @@ public final class ParticleVariables {
      * @return theta
      */
     public double getTheta() {
-        return theta;
+        return values[SLOT_THETA];
+    }
+
+    /**
+     * Get the source of values read from the random variable.
+     *
+     * @return the random source
+     */
+    @NotNull
+    ParticleRandom getRandom() {
+        return random;
     }
 
     void update(double x, double y, double z, double t, double theta) {
-        this.x = x;
-        this.y = y;
-        this.z = z;
-        this.t = t;
-        this.theta = theta;
+        this.values[SLOT_X] = x;
+        this.values[SLOT_Y] = y;
+        this.values[SLOT_Z] = z;
+        this.values[SLOT_T] = t;
+        this.values[SLOT_THETA] = theta;
+    }
+
+    /**
+     * Set the value of a variable by its slot index.
+     *
+     * @param slot the variable slot. Must not be {@link #SLOT_RANDOM}
+     * @param value the new value
+     */
+    public void set(int slot, double value) {
+        Preconditions.checkArgument(slot >= 0 && slot < VALUE_SLOTS, "slot must be a settable variable slot");
+        this.values[slot] = value;
+    }
+
+    /**
+     * Get a variable by its slot index. Slots may be resolved from variable names once
+     * using {@link #getSlot(String)}.
+     *
+     * @param slot the variable slot
+     *
+     * @return the value of the variable
+     */
+    public double get(int slot) {
+        return (slot == SLOT_RANDOM) ? random.nextDouble() : values[slot];
     }
 
     /**
@@ -103,16 +189,28 @@ public final class ParticleVariables {
      * @return the value of the variable
      */
     public double get(@NotNull String name, double defaultValue) {
+        int slot = getSlot(name);
+        return (slot >= 0) ? get(slot) : defaultValue;
+    }
+
+    /**
+     * Resolve the slot index of a variable by its name.
+     *
+     * @param name the variable name
+     *
+     * @return the slot index of the variable, or -1 if no variable exists with the given name
+     */
+    public static int getSlot(@NotNull String name) {
         Preconditions.checkArgument(name != null, "name must not be null");
 
         switch (name) {
-            case "x": return x;
-            case "y": return y;
-            case "z": return z;
-            case "t": return t;
-            case "theta": return theta;
-            case "random": return random.nextDouble();
-            default: return defaultValue;
+            case "x": return SLOT_X;
+            case "y": return SLOT_Y;
+            case "z": return SLOT_Z;
+            case "t": return SLOT_T;
+            case "theta": return SLOT_THETA;
+            case "random": return SLOT_RANDOM;
+            default: return -1;
         }
     }
 
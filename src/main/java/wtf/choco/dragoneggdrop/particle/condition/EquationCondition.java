@@ -18,4 +18,32 @@ public interface EquationCondition {
      */
     public boolean isMet(@NotNull ConditionContext context);
 
+    /**
+     * Check whether or not the result of this condition may differ between two sessions at
+     * the same point in their animation. Conditions depending on a session's location or
+     * world are session dependent whereas those depending solely on the progress of the
+     * animation (such as t or theta) are not.
+     * <p>
+     * Implementations unable to determine this should return true.
+     *
+     * @return true if session dependent, false otherwise
+     */
+    public default boolean isSessionDependent() {
+        return true;
+    }
+
+    /**
+     * Check whether or not this condition may safely be checked off of the server's main
+     * thread. Conditions reading only the context's particle variables or immutable state
+     * (such as the name of its world) are thread safe whereas those querying the world (such
+     * as its time or weather) are not.
+     * <p>
+     * Implementations unable to determine this should return false.
+     *
+     * @return true if thread safe, false otherwise
+     */
+    public default boolean isThreadSafe() {
+        return false;
+    }
+
 }
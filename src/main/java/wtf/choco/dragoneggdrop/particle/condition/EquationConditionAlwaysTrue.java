@@ -23,6 +23,16 @@ public final class EquationConditionAlwaysTrue implements EquationCondition {
         return true;
     }
 
+    @Override
+    public boolean isSessionDependent() {
+        return false;
+    }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
     @NotNull
     public static EquationConditionAlwaysTrue create(@SuppressWarnings("unused") @NotNull JsonObject object) {
         return INSTANCE;
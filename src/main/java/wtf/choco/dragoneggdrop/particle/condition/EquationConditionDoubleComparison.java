@@ -8,6 +8,7 @@ import org.jetbrains.annotations.NotNull;
 
 import wtf.choco.commons.function.DoubleBiPredicate;
 import wtf.choco.commons.function.DoubleProvider;
+import wtf.choco.dragoneggdrop.particle.ParticleVariables;
 import wtf.choco.dragoneggdrop.utils.JsonUtils;
 
 /**
@@ -20,6 +21,7 @@ import wtf.choco.dragoneggdrop.utils.JsonUtils;
 public class EquationConditionDoubleComparison implements EquationCondition {
 
     private final DoubleProvider<@NotNull ConditionContext> query;
+    private final int variableSlot;
     private final double value;
     private final DoubleBiPredicate predicate;
 
@@ -32,17 +34,86 @@ public class EquationConditionDoubleComparison implements EquationCondition {
      */
     public EquationConditionDoubleComparison(@NotNull DoubleProvider<@NotNull ConditionContext> query, double value, @NotNull DoubleBiPredicate predicate) {
         this.query = query;
+        this.variableSlot = -1;
         this.value = value;
         this.predicate = predicate;
     }
 
+    /**
+     * Construct a value comparison condition against one of the context's particle variables.
+     *
+     * @param variableSlot the {@link ParticleVariables} slot of the variable to compare
+     * @param value the value against which the variable should be compared
+     * @param predicate the comparison predicate
+     */
+    public EquationConditionDoubleComparison(int variableSlot, double value, @NotNull DoubleBiPredicate predicate) {
+        this.query = context -> context != null ? context.getVariables().get(variableSlot) : 0.0;
+        this.variableSlot = variableSlot;
+        this.value = value;
+        this.predicate = predicate;
+    }
+
+    /**
+     * Get the {@link ParticleVariables} slot of the variable compared by this condition.
+     *
+     * @return the variable slot, or -1 if this condition compares an arbitrary queried value
+     */
+    public int getVariableSlot() {
+        return variableSlot;
+    }
+
+    /**
+     * Get the value against which queried values are compared.
+     *
+     * @return the value
+     */
+    public double getValue() {
+        return value;
+    }
+
+    /**
+     * Check whether or not the given queried value satisfies this condition.
+     *
+     * @param queried the queried value
+     *
+     * @return true if satisfied, false otherwise
+     */
+    public boolean test(double queried) {
+        return predicate.test(queried, value);
+    }
+
     @Override
     public boolean isMet(@NotNull ConditionContext context) {
         return predicate.test(query.get(context), value);
     }
 
+    @Override
+    public boolean isSessionDependent() {
+        return variableSlot != ParticleVariables.SLOT_T && variableSlot != ParticleVariables.SLOT_THETA;
+    }
+
+    @Override
+    public boolean isThreadSafe() {
+        return variableSlot >= 0; // Arbitrary queries may read the world
+    }
+
     @NotNull
     public static EquationConditionDoubleComparison create(@NotNull JsonObject object, @NotNull DoubleProvider<@NotNull ConditionContext> query) {
+        DoubleBiPredicate predicate = parsePredicate(object);
+        double value = parseValue(object);
+
+        return new EquationConditionDoubleComparison(query, value, predicate);
+    }
+
+    @NotNull
+    public static EquationConditionDoubleComparison create(@NotNull JsonObject object, int variableSlot) {
+        DoubleBiPredicate predicate = parsePredicate(object);
+        double value = parseValue(object);
+
+        return new EquationConditionDoubleComparison(variableSlot, value, predicate);
+    }
+
+    private static DoubleBiPredicate parsePredicate(JsonObject object) {
         String operation = JsonUtils.getRequiredField(object, "operation", JsonElement::getAsString);
 
         DoubleBiPredicate predicate = null;
@@ -56,10 +127,12 @@ public class EquationConditionDoubleComparison implements EquationCondition {
             throw new JsonParseException("Unexpected operation, " + "\"" + operation + "\"");
         }
 
-        JsonObject argumentsObject = JsonUtils.getRequiredField(object, "arguments", JsonElement::getAsJsonObject);
-        double value = JsonUtils.getRequiredField(argumentsObject, "value", JsonElement::getAsDouble);
+        return predicate;
+    }
 
-        return new EquationConditionDoubleComparison(query, value, predicate);
+    private static double parseValue(JsonObject object) {
+        JsonObject argumentsObject = JsonUtils.getRequiredField(object, "arguments", JsonElement::getAsJsonObject);
+        return JsonUtils.getRequiredField(argumentsObject, "value", JsonElement::getAsDouble);
     }
 
 }
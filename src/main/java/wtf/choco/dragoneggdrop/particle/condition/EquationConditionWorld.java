@@ -0,0 +1,61 @@
+package wtf.choco.dragoneggdrop.particle.condition;
+
+import com.google.common.base.Preconditions;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import org.jetbrains.annotations.NotNull;
+
+import wtf.choco.dragoneggdrop.utils.JsonUtils;
+
+/**
+ * An {@link EquationCondition} implementation. Met if the name of the {@link ConditionContext
+ * context's} world is equal to that of a hard-coded value.
+ *
+ * @author Parker Hawke - Choco
+ */
+public final class EquationConditionWorld implements EquationCondition {
+
+    private final String worldName;
+
+    /**
+     * Construct a world condition.
+     *
+     * @param worldName the name of the world in which this condition is met
+     */
+    public EquationConditionWorld(@NotNull String worldName) {
+        Preconditions.checkArgument(worldName != null, "worldName must not be null");
+        this.worldName = worldName;
+    }
+
+    /**
+     * Get the name of the world in which this condition is met.
+     *
+     * @return the world name
+     */
+    @NotNull
+    public String getWorldName() {
+        return worldName;
+    }
+
+    @Override
+    public boolean isMet(@NotNull ConditionContext context) {
+        return context.getWorld().getName().equals(worldName);
+    }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true; // World names never change
+    }
+
+    @NotNull
+    public static EquationConditionWorld create(@NotNull JsonObject object) {
+        Preconditions.checkArgument(object != null, "object must not be null");
+
+        JsonObject argumentsObject = JsonUtils.getRequiredField(object, "arguments", JsonElement::getAsJsonObject);
+        String value = JsonUtils.getRequiredField(argumentsObject, "value", JsonElement::getAsString);
+
+        return new EquationConditionWorld(value);
+    }
+
+}
@@ -24,7 +24,6 @@ import org.jetbrains.annotations.Nullable;
 import wtf.choco.commons.util.MathUtil;
 import wtf.choco.dragoneggdrop.DragonEggDrop;
 import wtf.choco.dragoneggdrop.dragon.DamageHistory;
-import wtf.choco.dragoneggdrop.dragon.DamageHistory.DamageEntry;
 import wtf.choco.dragoneggdrop.dragon.DragonTemplate;
 import wtf.choco.dragoneggdrop.utils.ConfigUtils;
 import wtf.choco.dragoneggdrop.utils.DEDConstants;
@@ -262,12 +261,7 @@ public final class DragonEggDropPlaceholders {
                 return "None";
             }
 
-            DamageEntry topDamageEntry = history.getTopDamager(offset);
-            if (topDamageEntry == null) {
-                return "None";
-            }
-
-            Entity topDamager = topDamageEntry.getSourceEntity();
+            Entity topDamager = Bukkit.getEntity(history.getTopDamagerUUID(offset));
             return (topDamager != null) ? topDamager.getName() : "INVALID_ENTITY";
         }
 
@@ -298,8 +292,7 @@ public final class DragonEggDropPlaceholders {
                 return "0";
             }
 
-            DamageEntry topDamageEntry = history.getTopDamager(offset);
-            return topDamageEntry != null ? DECIMAL_FORMAT.format(topDamageEntry.getDamage()) : "0";
+            return DECIMAL_FORMAT.format(history.getTopDamage(offset));
         }
 
         return null;
@@ -82,6 +82,15 @@ public class DragonDeathRunnable extends BukkitRunnable {
 
         if (particleShapeDefinition != null) {
             this.particleSession = particleShapeDefinition.createSession(worldWrapper.getWorld(), portalLocation.getX(), portalLocation.getZ());
+            this.particleSession.setScheduler(plugin.getParticleScheduler());
+
+            if (plugin.getParticleEvaluationPool() != null) {
+                this.particleSession.setParallelEvaluation(plugin.getParticleEvaluationPool(), plugin.getParallelEvaluationThreshold());
+            }
+
+            if (plugin.getParticleExecutor() != null) {
+                this.particleSession.computeAsync(plugin.getParticleExecutor());
+            }
         }
     }
 
@@ -93,6 +102,9 @@ public class DragonDeathRunnable extends BukkitRunnable {
             if (!particleSession.shouldStop()) {
                 return;
             }
+
+            this.particleSession.getShape().releaseSession(particleSession);
+            this.particleSession = null;
         }
 
         // Particles finished, place reward
@@ -18,11 +18,26 @@ public final class DEDConstants {
     public static final String CONFIG_RESPAWN_ON_DEATH = "respawn-on-death";
     public static final String CONFIG_DEATH_RESPAWN_DELAY = "death-respawn-delay";
 
+    public static final String CONFIG_PARTICLES_ASYNC_COMPUTATION = "particles.async-computation";
+    public static final String CONFIG_PARTICLES_COMPUTATION_THREADS = "particles.computation-threads";
+    public static final String CONFIG_PARTICLES_PARALLEL_EVALUATION_THRESHOLD = "particles.parallel-evaluation.threshold";
+    public static final String CONFIG_PARTICLES_PARALLEL_EVALUATION_THREADS = "particles.parallel-evaluation.threads";
+    public static final String CONFIG_PARTICLES_MAX_PARTICLES_PER_TICK = "particles.max-particles-per-tick";
+    public static final String CONFIG_PARTICLES_MAX_PACKETS_PER_TICK = "particles.max-packets-per-tick";
+    public static final String CONFIG_PARTICLES_BATCHING_ENABLED = "particles.batching.enabled";
+    public static final String CONFIG_PARTICLES_BATCHING_TOLERANCE = "particles.batching.tolerance";
+    public static final String CONFIG_PARTICLES_LEVEL_OF_DETAIL_ENABLED = "particles.level-of-detail.enabled";
+    public static final String CONFIG_PARTICLES_LEVEL_OF_DETAIL_FULL_DETAIL_DISTANCE = "particles.level-of-detail.full-detail-distance";
+    public static final String CONFIG_PARTICLES_LEVEL_OF_DETAIL_CUTOFF_DISTANCE = "particles.level-of-detail.cutoff-distance";
+
     public static final String CONFIG_ALLOW_CRYSTAL_RESPAWNS = "allow-crystal-respawns";
     public static final String CONFIG_STRICT_COUNTDOWN = "strict-countdown";
 
     public static final String CONFIG_DISABLED_WORLDS = "disabled-worlds";
     public static final String CONFIG_WORLD_HISTORY_SIZE = "world-history-size";
+    public static final String CONFIG_DAMAGE_HISTORY_MAX_ENTRIES = "damage-history.max-entries";
+    public static final String CONFIG_DAMAGE_HISTORY_MAX_AGE = "damage-history.max-age";
+    public static final String CONFIG_DAMAGE_HISTORY_EVICTION_DELAY = "damage-history.eviction-delay";
 
     public static final String CONFIG_RESPAWN_MESSAGES_MESSAGES = "respawn-messages.messages";
     public static final String CONFIG_RESPAWN_MESSAGES_CONDENSED = "respawn-messages.condensed";
@@ -6,6 +6,7 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonIOException;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
 import com.google.gson.stream.JsonWriter;
 
 import java.io.File;
@@ -232,9 +233,26 @@ public final class DataFileUtils {
         }
         Registry<@NotNull ParticleShapeDefinition> particleRegistry = plugin.getParticleShapeDefinitionRegistry();
         particleRegistry.clear();
+        File particleCacheDirectory = plugin.getParticleCacheDirectory();
         for (File file : plugin.getParticleDirectory().listFiles((file, name) -> name.endsWith(".json") && !name.equals("possible_conditions.json"))) {
-            ParticleShapeDefinition shapeDefinition = ParticleShapeDefinition.fromFile(file);
-            particleRegistry.register(shapeDefinition);
+            try {
+                ParticleShapeDefinition shapeDefinition = ParticleShapeDefinition.fromFile(file, particleCacheDirectory);
+                particleRegistry.register(shapeDefinition);
+            } catch (JsonParseException e) {
+                logger.warning("Could not load particle shape definition \"" + file.getName() + "\"");
+                logger.warning(e.getMessage());
+            }
+        }
+
+        // Delete compiled shapes whose source no longer exists (or no longer loads)
+        File[] particleCacheFiles = particleCacheDirectory.listFiles((file, name) -> name.endsWith(ParticleShapeDefinition.CACHE_FILE_EXTENSION));
+        if (particleCacheFiles != null) {
+            for (File file : particleCacheFiles) {
+                String id = file.getName().substring(0, file.getName().length() - ParticleShapeDefinition.CACHE_FILE_EXTENSION.length());
+                if (!particleRegistry.isRegistered(id)) {
+                    file.delete();
+                }
+            }
         }
         if (log) {
             logger.info("Done! Successfully loaded " + particleRegistry.size() + " shape definitions");
@@ -0,0 +1,50 @@
+package wtf.choco.dragoneggdrop.utils.math;
+
+import com.google.common.base.Preconditions;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Represents a {@link MathExpression} whose evaluation has been compiled to bytecode. All
+ * implementations of this class are generated at runtime by DragonEggDrop and retain a
+ * reference to the interpreted expression from which they were compiled.
+ *
+ * @author Parker Hawke - Choco
+ */
+public abstract class CompiledExpression implements MathExpression {
+
+    private final MathExpression source;
+
+    /**
+     * Construct a new compiled expression.
+     *
+     * @param source the interpreted expression from which this expression was compiled
+     */
+    protected CompiledExpression(@NotNull MathExpression source) {
+        Preconditions.checkArgument(source != null, "source must not be null");
+        this.source = source;
+    }
+
+    /**
+     * Get the interpreted expression from which this expression was compiled. The returned
+     * expression will always evaluate to the same result as this expression, though more
+     * slowly.
+     *
+     * @return the interpreted source expression
+     */
+    @NotNull
+    public MathExpression getSource() {
+        return source;
+    }
+
+    @Override
+    public boolean dependsOn(int slot) {
+        return source.dependsOn(slot);
+    }
+
+    @Override
+    public String toString() {
+        return source.toString();
+    }
+
+}
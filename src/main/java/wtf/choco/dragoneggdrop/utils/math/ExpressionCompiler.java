@@ -0,0 +1,331 @@
+package wtf.choco.dragoneggdrop.utils.math;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+import org.jetbrains.annotations.NotNull;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.IincInsnNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.IntInsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TypeInsnNode;
+import org.objectweb.asm.tree.VarInsnNode;
+
+import wtf.choco.dragoneggdrop.particle.ParticleVariables;
+
+/**
+ * Compiles a parsed {@link ExpressionNode} tree into a single generated class whose
+ * {@link MathExpression#evaluate(ParticleVariables)} method is a straight-line sequence of
+ * arithmetic instructions rather than a chain of nested expression calls. The generated
+ * class also overrides the ranged batch evaluation method with a tight loop over the input arrays.
+ * Intrinsic functions are compiled to inline instructions and calls to {@link Math}, whereas
+ * all other functions are held in fields of the generated class.
+ *
+ * @author Parker Hawke - Choco
+ */
+final class ExpressionCompiler {
+
+    private static final AtomicInteger CLASS_COUNTER = new AtomicInteger();
+
+    private static final String SUPER_NAME = Type.getInternalName(CompiledExpression.class);
+    private static final String CLASS_NAME_PREFIX = SUPER_NAME.replace("CompiledExpression", "GeneratedExpression$");
+
+    private static final String VARIABLES_NAME = Type.getInternalName(ParticleVariables.class);
+    private static final String OPERATOR_NAME = Type.getInternalName(DoubleUnaryOperator.class);
+    private static final String OPERATOR_DESCRIPTOR = Type.getDescriptor(DoubleUnaryOperator.class);
+    private static final String BINARY_OPERATOR_NAME = Type.getInternalName(DoubleBinaryOperator.class);
+    private static final String BINARY_OPERATOR_DESCRIPTOR = Type.getDescriptor(DoubleBinaryOperator.class);
+
+    private static final String CONSTRUCTOR_DESCRIPTOR = Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(MathExpression.class), Type.getType(Object[].class));
+    private static final String EVALUATE_DESCRIPTOR = Type.getMethodDescriptor(Type.DOUBLE_TYPE, Type.getType(ParticleVariables.class));
+    private static final String EVALUATE_BATCH_DESCRIPTOR = Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(ParticleVariables.class), Type.getType(double[].class), Type.getType(double[].class), Type.getType(double[].class), Type.INT_TYPE, Type.INT_TYPE);
+
+    // Local variable indices of the batch evaluation method
+    private static final int BATCH_LOCAL_VARIABLES = 1, BATCH_LOCAL_T = 2, BATCH_LOCAL_THETA = 3, BATCH_LOCAL_OUT = 4, BATCH_LOCAL_FROM = 5, BATCH_LOCAL_TO = 6, BATCH_LOCAL_INDEX = 7;
+
+    // Either DoubleUnaryOperators or DoubleBinaryOperators, each held in a field of the generated class
+    private final List<@NotNull Object> functions = new ArrayList<>();
+    private final Map<@NotNull ExpressionNode, @NotNull Integer> functionIndices = new IdentityHashMap<>();
+    private final String className;
+
+    private ExpressionCompiler() {
+        this.className = CLASS_NAME_PREFIX + CLASS_COUNTER.incrementAndGet();
+    }
+
+    /**
+     * Compile the given expression tree to bytecode and return an instance of the generated class.
+     *
+     * @param expression the expression to compile
+     *
+     * @return the compiled expression
+     *
+     * @throws IllegalStateException if the generated class could not be defined or instantiated
+     */
+    @NotNull
+    static CompiledExpression compile(@NotNull ExpressionNode expression) {
+        return new ExpressionCompiler().generate(expression);
+    }
+
+    @NotNull
+    private CompiledExpression generate(@NotNull ExpressionNode expression) {
+        InsnList evaluateInstructions = new InsnList();
+        this.emit(expression, evaluateInstructions, false);
+        evaluateInstructions.add(new InsnNode(Opcodes.DRETURN));
+
+        InsnList evaluateBatchInstructions = createBatchLoop(expression);
+
+        ClassNode classNode = new ClassNode();
+        classNode.version = Opcodes.V1_8;
+        classNode.access = Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER | Opcodes.ACC_SYNTHETIC;
+        classNode.name = className;
+        classNode.superName = SUPER_NAME;
+
+        for (int i = 0; i < functions.size(); i++) {
+            classNode.fields.add(new FieldNode(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, "function" + i, getFunctionDescriptor(i), null, null));
+        }
+
+        classNode.methods.add(createConstructor());
+
+        MethodNode evaluate = new MethodNode(Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL, "evaluate", EVALUATE_DESCRIPTOR, null, null);
+        evaluate.instructions.add(evaluateInstructions);
+        classNode.methods.add(evaluate);
+
+        MethodNode evaluateBatch = new MethodNode(Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL, "evaluate", EVALUATE_BATCH_DESCRIPTOR, null, null);
+        evaluateBatch.instructions.add(evaluateBatchInstructions);
+        classNode.methods.add(evaluateBatch);
+
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES) {
+
+            @Override
+            protected String getCommonSuperClass(String type1, String type2) {
+                return "java/lang/Object"; // Locals never change type, no need to load classes to compute frames
+            }
+
+        };
+        classNode.accept(writer);
+        byte[] bytecode = writer.toByteArray();
+
+        try {
+            Class<?> generatedClass = new GeneratedClassLoader(ExpressionCompiler.class.getClassLoader()).define(className.replace('/', '.'), bytecode);
+            Object instance = generatedClass.getConstructor(MathExpression.class, Object[].class).newInstance(expression, functions.toArray());
+            return (CompiledExpression) instance;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not instantiate compiled expression for \"" + expression + "\"", e);
+        }
+    }
+
+    @NotNull
+    private MethodNode createConstructor() {
+        MethodNode constructor = new MethodNode(Opcodes.ACC_PUBLIC, "<init>", CONSTRUCTOR_DESCRIPTOR, null, null);
+        InsnList instructions = constructor.instructions;
+
+        instructions.add(new VarInsnNode(Opcodes.ALOAD, 0));
+        instructions.add(new VarInsnNode(Opcodes.ALOAD, 1));
+        instructions.add(new MethodInsnNode(Opcodes.INVOKESPECIAL, SUPER_NAME, "<init>", Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(MathExpression.class)), false));
+
+        for (int i = 0; i < functions.size(); i++) {
+            instructions.add(new VarInsnNode(Opcodes.ALOAD, 0));
+            instructions.add(new VarInsnNode(Opcodes.ALOAD, 2));
+            instructions.add(pushInt(i));
+            instructions.add(new InsnNode(Opcodes.AALOAD));
+            instructions.add(new TypeInsnNode(Opcodes.CHECKCAST, (functions.get(i) instanceof DoubleBinaryOperator) ? BINARY_OPERATOR_NAME : OPERATOR_NAME));
+            instructions.add(new FieldInsnNode(Opcodes.PUTFIELD, className, "function" + i, getFunctionDescriptor(i)));
+        }
+
+        instructions.add(new InsnNode(Opcodes.RETURN));
+        return constructor;
+    }
+
+    /*
+     * for (int i = from; i < to; i++) {
+     *     out[i] = <expression, reading t[i] and theta[i] in place of the t and theta variables>;
+     * }
+     */
+    @NotNull
+    private InsnList createBatchLoop(@NotNull ExpressionNode expression) {
+        InsnList instructions = new InsnList();
+        LabelNode loopStart = new LabelNode(), loopEnd = new LabelNode();
+
+        instructions.add(new VarInsnNode(Opcodes.ILOAD, BATCH_LOCAL_FROM));
+        instructions.add(new VarInsnNode(Opcodes.ISTORE, BATCH_LOCAL_INDEX));
+
+        instructions.add(loopStart);
+        instructions.add(new VarInsnNode(Opcodes.ILOAD, BATCH_LOCAL_INDEX));
+        instructions.add(new VarInsnNode(Opcodes.ILOAD, BATCH_LOCAL_TO));
+        instructions.add(new JumpInsnNode(Opcodes.IF_ICMPGE, loopEnd));
+
+        instructions.add(new VarInsnNode(Opcodes.ALOAD, BATCH_LOCAL_OUT));
+        instructions.add(new VarInsnNode(Opcodes.ILOAD, BATCH_LOCAL_INDEX));
+        this.emit(expression, instructions, true);
+        instructions.add(new InsnNode(Opcodes.DASTORE));
+
+        instructions.add(new IincInsnNode(BATCH_LOCAL_INDEX, 1));
+        instructions.add(new JumpInsnNode(Opcodes.GOTO, loopStart));
+
+        instructions.add(loopEnd);
+        instructions.add(new InsnNode(Opcodes.RETURN));
+        return instructions;
+    }
+
+    private void emit(@NotNull ExpressionNode node, @NotNull InsnList instructions, boolean batch) {
+        if (node instanceof ExpressionNode.Constant) {
+            instructions.add(pushDouble(((ExpressionNode.Constant) node).value));
+        }
+        else if (node instanceof ExpressionNode.Variable) {
+            int slot = ((ExpressionNode.Variable) node).slot;
+
+            if (batch && (slot == ParticleVariables.SLOT_T || slot == ParticleVariables.SLOT_THETA)) {
+                instructions.add(new VarInsnNode(Opcodes.ALOAD, (slot == ParticleVariables.SLOT_T) ? BATCH_LOCAL_T : BATCH_LOCAL_THETA));
+                instructions.add(new VarInsnNode(Opcodes.ILOAD, BATCH_LOCAL_INDEX));
+                instructions.add(new InsnNode(Opcodes.DALOAD));
+            }
+            else {
+                instructions.add(new VarInsnNode(Opcodes.ALOAD, 1)); // Variables are local 1 in both methods
+                instructions.add(pushInt(slot));
+                instructions.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, VARIABLES_NAME, "get", "(I)D", false));
+            }
+        }
+        else if (node instanceof ExpressionNode.Negate) {
+            this.emit(((ExpressionNode.Negate) node).operand, instructions, batch);
+            instructions.add(new InsnNode(Opcodes.DNEG));
+        }
+        else if (node instanceof ExpressionNode.Binary) {
+            ExpressionNode.Binary binary = (ExpressionNode.Binary) node;
+            this.emit(binary.left, instructions, batch);
+            this.emit(binary.right, instructions, batch);
+
+            switch (binary.operation) {
+                case ADD: instructions.add(new InsnNode(Opcodes.DADD)); break;
+                case SUBTRACT: instructions.add(new InsnNode(Opcodes.DSUB)); break;
+                case MULTIPLY: instructions.add(new InsnNode(Opcodes.DMUL)); break;
+                case DIVIDE: instructions.add(new InsnNode(Opcodes.DDIV)); break;
+                case POWER: instructions.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "java/lang/Math", "pow", "(DD)D", false)); break;
+                default: throw new IllegalStateException("Unhandled operation: " + binary.operation);
+            }
+        }
+        else if (node instanceof ExpressionNode.Function) {
+            ExpressionNode.Function function = (ExpressionNode.Function) node;
+            int index = functionIndices.computeIfAbsent(function, key -> {
+                this.functions.add(function.operator);
+                return functions.size() - 1;
+            });
+
+            instructions.add(new VarInsnNode(Opcodes.ALOAD, 0));
+            instructions.add(new FieldInsnNode(Opcodes.GETFIELD, className, "function" + index, OPERATOR_DESCRIPTOR));
+            this.emit(function.argument, instructions, batch);
+            instructions.add(new MethodInsnNode(Opcodes.INVOKEINTERFACE, OPERATOR_NAME, "applyAsDouble", "(D)D", true));
+        }
+        else if (node instanceof ExpressionNode.BinaryFunction) {
+            ExpressionNode.BinaryFunction function = (ExpressionNode.BinaryFunction) node;
+            int index = functionIndices.computeIfAbsent(function, key -> {
+                this.functions.add(function.operator);
+                return functions.size() - 1;
+            });
+
+            instructions.add(new VarInsnNode(Opcodes.ALOAD, 0));
+            instructions.add(new FieldInsnNode(Opcodes.GETFIELD, className, "function" + index, BINARY_OPERATOR_DESCRIPTOR));
+            this.emit(function.left, instructions, batch);
+            this.emit(function.right, instructions, batch);
+            instructions.add(new MethodInsnNode(Opcodes.INVOKEINTERFACE, BINARY_OPERATOR_NAME, "applyAsDouble", "(DD)D", true));
+        }
+        else if (node instanceof ExpressionNode.Intrinsic) {
+            this.emitIntrinsic((ExpressionNode.Intrinsic) node, instructions, batch);
+        }
+        else {
+            throw new IllegalStateException("Cannot compile unknown expression node: " + node.getClass().getName());
+        }
+    }
+
+    // Must evaluate identically to ExpressionNode.IntrinsicFunction#apply(). Arguments are evaluated in order
+    private void emitIntrinsic(@NotNull ExpressionNode.Intrinsic intrinsic, @NotNull InsnList instructions, boolean batch) {
+        ExpressionNode[] arguments = intrinsic.arguments;
+
+        switch (intrinsic.function) {
+            case MIN:
+            case MAX:
+                this.emit(arguments[0], instructions, batch);
+                this.emit(arguments[1], instructions, batch);
+                instructions.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "java/lang/Math", (intrinsic.function == ExpressionNode.IntrinsicFunction.MIN) ? "min" : "max", "(DD)D", false));
+                break;
+            case CLAMP: // min(max(x, min), max)
+                this.emit(arguments[0], instructions, batch);
+                this.emit(arguments[1], instructions, batch);
+                instructions.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "java/lang/Math", "max", "(DD)D", false));
+                this.emit(arguments[2], instructions, batch);
+                instructions.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "java/lang/Math", "min", "(DD)D", false));
+                break;
+            case LERP: // a + ((b - a) * t), a is evaluated once and duplicated on the stack
+                this.emit(arguments[0], instructions, batch); // a
+                instructions.add(new InsnNode(Opcodes.DUP2)); // a, a
+                this.emit(arguments[1], instructions, batch); // a, a, b
+                instructions.add(new InsnNode(Opcodes.DUP2_X2)); // a, b, a, b
+                instructions.add(new InsnNode(Opcodes.POP2)); // a, b, a
+                instructions.add(new InsnNode(Opcodes.DSUB)); // a, b - a
+                this.emit(arguments[2], instructions, batch); // a, b - a, t
+                instructions.add(new InsnNode(Opcodes.DMUL));
+                instructions.add(new InsnNode(Opcodes.DADD));
+                break;
+            case ATAN2:
+                this.emit(arguments[0], instructions, batch);
+                this.emit(arguments[1], instructions, batch);
+                instructions.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "java/lang/Math", "atan2", "(DD)D", false));
+                instructions.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "java/lang/Math", "toDegrees", "(D)D", false));
+                break;
+            default:
+                throw new IllegalStateException("Unhandled intrinsic: " + intrinsic.function);
+        }
+    }
+
+    @NotNull
+    private String getFunctionDescriptor(int index) {
+        return (functions.get(index) instanceof DoubleBinaryOperator) ? BINARY_OPERATOR_DESCRIPTOR : OPERATOR_DESCRIPTOR;
+    }
+
+    @NotNull
+    private static AbstractInsnNode pushDouble(double value) {
+        if (Double.doubleToRawLongBits(value) == 0L) { // Positive zero only, -0.0 must be loaded as a constant
+            return new InsnNode(Opcodes.DCONST_0);
+        }
+
+        return (value == 1.0) ? new InsnNode(Opcodes.DCONST_1) : new LdcInsnNode(value);
+    }
+
+    @NotNull
+    private static AbstractInsnNode pushInt(int value) {
+        return (value <= Short.MAX_VALUE) ? new IntInsnNode(Opcodes.SIPUSH, value) : new LdcInsnNode(value);
+    }
+
+    /**
+     * A throwaway class loader used to define a single generated expression class. Each
+     * expression is given its own loader so that it may be unloaded when no longer referenced.
+     */
+    private static final class GeneratedClassLoader extends ClassLoader {
+
+        private GeneratedClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        private Class<?> define(@NotNull String name, byte @NotNull [] bytecode) {
+            return defineClass(name, bytecode, 0, bytecode.length);
+        }
+
+    }
+
+}
@@ -0,0 +1,235 @@
+package wtf.choco.dragoneggdrop.utils.math;
+
+import com.google.common.base.Preconditions;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import wtf.choco.dragoneggdrop.particle.ParticleVariables;
+
+/**
+ * Represents a set of operators available to an expression at parse time in addition to (or
+ * in place of) those globally registered in {@link ExpressionUtils}. Operators registered to a
+ * context take precedence over global operators of the same name.
+ * <p>
+ * Contexts may additionally define helper functions written as expressions of their own
+ * parameters (see {@link #defineFunction(String, List, String)}). Calls to helper functions
+ * are inlined when an expression is parsed and cost nothing more than the written-out
+ * expression would.
+ *
+ * @author Parker Hawke - Choco
+ *
+ * @see ExpressionUtils#parseExpression(String, ExpressionContext)
+ */
+public final class ExpressionContext {
+
+    private final Map<@NotNull String, @NotNull DoubleUnaryOperator> operators = new HashMap<>();
+    private final Map<@NotNull String, @NotNull DoubleBinaryOperator> binaryOperators = new HashMap<>();
+    private final Map<@NotNull String, @NotNull HelperFunction> helpers = new HashMap<>();
+    private final Set<@NotNull String> pureOperators = new HashSet<>();
+
+    /**
+     * Construct a new, empty expression context. Expressions parsed with an empty context
+     * behave identically to those parsed without one.
+     */
+    public ExpressionContext() { }
+
+    /**
+     * Register an operator to this context.
+     *
+     * @param functionName the name of the function (i.e. "sin")
+     * @param operator the operation to perform
+     * @param pure whether or not the operator is free of side effects and always returns the
+     * same result for the same input. Pure operators are folded at parse time if given a
+     * constant argument
+     *
+     * @return this instance. Allows for chained method calls
+     */
+    @NotNull
+    public ExpressionContext registerOperator(@NotNull String functionName, @NotNull DoubleUnaryOperator operator, boolean pure) {
+        Preconditions.checkArgument(functionName != null, "functionName must not be null");
+        Preconditions.checkArgument(operator != null, "operator must not be null");
+
+        this.unregister(functionName);
+        this.operators.put(functionName, operator);
+
+        if (pure) {
+            this.pureOperators.add(functionName);
+        }
+
+        return this;
+    }
+
+    /**
+     * Register an operator of two arguments to this context. Calls are written as
+     * {@code functionName(a, b)}.
+     *
+     * @param functionName the name of the function (i.e. "hypot")
+     * @param operator the operation to perform
+     * @param pure whether or not the operator is free of side effects and always returns the
+     * same result for the same input. Pure operators are folded at parse time if given
+     * constant arguments
+     *
+     * @return this instance. Allows for chained method calls
+     */
+    @NotNull
+    public ExpressionContext registerOperator(@NotNull String functionName, @NotNull DoubleBinaryOperator operator, boolean pure) {
+        Preconditions.checkArgument(functionName != null, "functionName must not be null");
+        Preconditions.checkArgument(operator != null, "operator must not be null");
+
+        this.unregister(functionName);
+        this.binaryOperators.put(functionName, operator);
+
+        if (pure) {
+            this.pureOperators.add(functionName);
+        }
+
+        return this;
+    }
+
+    /**
+     * Define a helper function in this context. The helper's expression is parsed with this
+     * context, may read its parameters in addition to the usual variables (parameters shadow
+     * variables of the same name), and may call any function available to this context
+     * including previously defined helpers. Calls are written as
+     * {@code functionName(a, b, ...)}, or as any other function if the helper has exactly one
+     * parameter.
+     * <p>
+     * Every call is inlined at parse time. Because an argument is evaluated once for every use
+     * of its parameter, arguments reading a random value may only be passed to parameters used
+     * exactly once.
+     *
+     * @param functionName the name of the function. Must consist of lowercase letters and
+     * digits, starting with a letter, and must not be the name of a variable
+     * @param parameters the names of the function's parameters, following the same rules as
+     * the function name. Must not be the names of functions available to this context
+     * @param expression the expression to which the function evaluates
+     *
+     * @return this instance. Allows for chained method calls
+     *
+     * @throws ArithmeticException if the function's name, its parameters or its expression are
+     * malformed
+     */
+    @NotNull
+    public ExpressionContext defineFunction(@NotNull String functionName, @NotNull List<@NotNull String> parameters, @NotNull String expression) {
+        Preconditions.checkArgument(functionName != null, "functionName must not be null");
+        Preconditions.checkArgument(parameters != null, "parameters must not be null");
+        Preconditions.checkArgument(expression != null, "expression must not be null");
+
+        checkName(functionName, "function name");
+        if (ParticleVariables.getSlot(functionName) >= 0) {
+            throw new ArithmeticException("Function name \"" + functionName + "\" is the name of a variable");
+        }
+
+        String[] parameterNames = parameters.toArray(new String[0]);
+        for (int i = 0; i < parameterNames.length; i++) {
+            String parameter = parameterNames[i];
+            checkName(parameter, "parameter name");
+
+            if (parameter.equals(functionName) || ExpressionUtils.isFunction(parameter, this)) {
+                throw new ArithmeticException("Parameter name \"" + parameter + "\" is the name of a function");
+            }
+
+            for (int j = 0; j < i; j++) {
+                if (parameterNames[j].equals(parameter)) {
+                    throw new ArithmeticException("Duplicate parameter \"" + parameter + "\"");
+                }
+            }
+        }
+
+        ExpressionNode body = ExpressionUtils.parseFunctionBody(expression, this, parameterNames);
+
+        this.unregister(functionName);
+        this.helpers.put(functionName, new HelperFunction(functionName, parameterNames, body));
+        return this;
+    }
+
+    @Nullable
+    DoubleUnaryOperator getOperator(@NotNull String functionName) {
+        return operators.get(functionName);
+    }
+
+    @Nullable
+    DoubleBinaryOperator getBinaryOperator(@NotNull String functionName) {
+        return binaryOperators.get(functionName);
+    }
+
+    @Nullable
+    HelperFunction getHelper(@NotNull String functionName) {
+        return helpers.get(functionName);
+    }
+
+    boolean isPure(@NotNull String functionName) {
+        return pureOperators.contains(functionName);
+    }
+
+    private void unregister(@NotNull String functionName) {
+        this.operators.remove(functionName);
+        this.binaryOperators.remove(functionName);
+        this.helpers.remove(functionName);
+        this.pureOperators.remove(functionName);
+    }
+
+    private static void checkName(@NotNull String name, @NotNull String description) {
+        boolean valid = !name.isEmpty() && name.charAt(0) >= 'a' && name.charAt(0) <= 'z';
+        for (int i = 1; i < name.length() && valid; i++) {
+            char character = name.charAt(i);
+            valid = (character >= 'a' && character <= 'z') || (character >= '0' && character <= '9');
+        }
+
+        if (!valid) {
+            throw new ArithmeticException("Invalid " + description + " \"" + name + "\". Expected lowercase letters and digits, starting with a letter");
+        }
+    }
+
+    /**
+     * Create a context whose trigonometric functions ({@code sin}, {@code cos}, {@code tan},
+     * {@code csc}, {@code sec} and {@code cot}) use the {@link Math} intrinsics rather than
+     * {@link StrictMath}. Results of {@code sin}, {@code cos} and {@code tan} may differ from the
+     * default functions by at most two ulps, as each is within one ulp of the exact result.
+     *
+     * @return the expression context
+     */
+    @NotNull
+    public static ExpressionContext intrinsicTrigonometry() {
+        return new ExpressionContext()
+                .registerOperator("sin", x -> Math.sin(Math.toRadians(x)), true)
+                .registerOperator("cos", x -> Math.cos(Math.toRadians(x)), true)
+                .registerOperator("tan", x -> Math.tan(Math.toRadians(x)), true)
+                .registerOperator("csc", x -> 1 / Math.sin(Math.toRadians(x)), true)
+                .registerOperator("sec", x -> 1 / Math.cos(Math.toRadians(x)), true)
+                .registerOperator("cot", x -> 1 / Math.tan(Math.toRadians(x)), true);
+    }
+
+    /**
+     * Create a context whose trigonometric functions ({@code sin}, {@code cos}, {@code tan},
+     * {@code csc}, {@code sec} and {@code cot}) are approximated using precomputed lookup tables.
+     *
+     * @param resolution the amount of table entries per full rotation. Must be a power of two
+     *
+     * @return the expression context
+     *
+     * @see FastTrigonometry
+     */
+    @NotNull
+    public static ExpressionContext tableTrigonometry(int resolution) {
+        FastTrigonometry trig = FastTrigonometry.withResolution(resolution);
+
+        return new ExpressionContext()
+                .registerOperator("sin", trig::sin, true)
+                .registerOperator("cos", trig::cos, true)
+                .registerOperator("tan", trig::tan, true)
+                .registerOperator("csc", x -> 1 / trig.sin(x), true)
+                .registerOperator("sec", x -> 1 / trig.cos(x), true)
+                .registerOperator("cot", x -> 1 / trig.tan(x), true);
+    }
+
+}
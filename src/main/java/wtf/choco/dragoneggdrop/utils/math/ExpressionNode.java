@@ -0,0 +1,377 @@
+package wtf.choco.dragoneggdrop.utils.math;
+
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import wtf.choco.dragoneggdrop.particle.ParticleVariables;
+
+/**
+ * Represents a node in a parsed {@link MathExpression} tree. Nodes are built once by the
+ * expression parser and may be evaluated directly (interpreted) or handed off to the
+ * {@link ExpressionCompiler} to be compiled to bytecode.
+ *
+ * @author Parker Hawke - Choco
+ */
+abstract class ExpressionNode implements MathExpression {
+
+    /**
+     * A constant numeric value.
+     */
+    static final class Constant extends ExpressionNode {
+
+        final double value;
+
+        Constant(double value) {
+            this.value = value;
+        }
+
+        @Override
+        public double evaluate(@NotNull ParticleVariables variables) {
+            return value;
+        }
+
+        @Override
+        public boolean dependsOn(int slot) {
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(value);
+        }
+
+    }
+
+    /**
+     * A named variable to be fetched from {@link ParticleVariables}. The variable's slot is
+     * resolved once at parse time.
+     */
+    static final class Variable extends ExpressionNode {
+
+        final String name;
+        final int slot;
+
+        Variable(@NotNull String name, int slot) {
+            this.name = name;
+            this.slot = slot;
+        }
+
+        @Override
+        public double evaluate(@NotNull ParticleVariables variables) {
+            return variables.get(slot);
+        }
+
+        @Override
+        public boolean dependsOn(int slot) {
+            return this.slot == slot;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+
+    }
+
+    /**
+     * The negation of another node.
+     */
+    static final class Negate extends ExpressionNode {
+
+        final ExpressionNode operand;
+
+        Negate(@NotNull ExpressionNode operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        public double evaluate(@NotNull ParticleVariables variables) {
+            return -operand.evaluate(variables);
+        }
+
+        @Override
+        public boolean dependsOn(int slot) {
+            return operand.dependsOn(slot);
+        }
+
+        @Override
+        public String toString() {
+            return "-(" + operand + ")";
+        }
+
+    }
+
+    /**
+     * A binary operation between two nodes.
+     */
+    static final class Binary extends ExpressionNode {
+
+        final Operation operation;
+        final ExpressionNode left, right;
+
+        Binary(@NotNull Operation operation, @NotNull ExpressionNode left, @NotNull ExpressionNode right) {
+            this.operation = operation;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public double evaluate(@NotNull ParticleVariables variables) {
+            return operation.apply(left.evaluate(variables), right.evaluate(variables));
+        }
+
+        @Override
+        public boolean dependsOn(int slot) {
+            return left.dependsOn(slot) || right.dependsOn(slot);
+        }
+
+        @Override
+        public String toString() {
+            return "(" + left + " " + operation.symbol + " " + right + ")";
+        }
+
+    }
+
+    /**
+     * A call to a named function operating on a single argument.
+     */
+    static final class Function extends ExpressionNode {
+
+        final String name;
+        final DoubleUnaryOperator operator;
+        final boolean pure;
+        final ExpressionNode argument;
+
+        Function(@NotNull String name, @NotNull DoubleUnaryOperator operator, boolean pure, @NotNull ExpressionNode argument) {
+            this.name = name;
+            this.operator = operator;
+            this.pure = pure;
+            this.argument = argument;
+        }
+
+        @Override
+        public double evaluate(@NotNull ParticleVariables variables) {
+            return operator.applyAsDouble(argument.evaluate(variables));
+        }
+
+        @Override
+        public boolean dependsOn(int slot) {
+            return (!pure && slot == ParticleVariables.SLOT_RANDOM) || argument.dependsOn(slot);
+        }
+
+        @Override
+        public String toString() {
+            return name + "(" + argument + ")";
+        }
+
+    }
+
+    /**
+     * A call to a named function operating on two arguments.
+     */
+    static final class BinaryFunction extends ExpressionNode {
+
+        final String name;
+        final DoubleBinaryOperator operator;
+        final boolean pure;
+        final ExpressionNode left, right;
+
+        BinaryFunction(@NotNull String name, @NotNull DoubleBinaryOperator operator, boolean pure, @NotNull ExpressionNode left, @NotNull ExpressionNode right) {
+            this.name = name;
+            this.operator = operator;
+            this.pure = pure;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public double evaluate(@NotNull ParticleVariables variables) {
+            return operator.applyAsDouble(left.evaluate(variables), right.evaluate(variables));
+        }
+
+        @Override
+        public boolean dependsOn(int slot) {
+            return (!pure && slot == ParticleVariables.SLOT_RANDOM) || left.dependsOn(slot) || right.dependsOn(slot);
+        }
+
+        @Override
+        public String toString() {
+            return name + "(" + left + ", " + right + ")";
+        }
+
+    }
+
+    /**
+     * A call to a built-in function of one or more arguments. Intrinsics have no side effects
+     * and are compiled to inline instructions rather than calls to a function object.
+     */
+    static final class Intrinsic extends ExpressionNode {
+
+        final IntrinsicFunction function;
+        final ExpressionNode[] arguments;
+
+        Intrinsic(@NotNull IntrinsicFunction function, @NotNull ExpressionNode @NotNull [] arguments) {
+            this.function = function;
+            this.arguments = arguments;
+        }
+
+        @Override
+        public double evaluate(@NotNull ParticleVariables variables) {
+            double a = arguments[0].evaluate(variables);
+            double b = arguments[1].evaluate(variables);
+            double c = (arguments.length > 2) ? arguments[2].evaluate(variables) : 0.0;
+            return function.apply(a, b, c);
+        }
+
+        @Override
+        public boolean dependsOn(int slot) {
+            for (ExpressionNode argument : arguments) {
+                if (argument.dependsOn(slot)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder(function.name).append('(');
+            for (int i = 0; i < arguments.length; i++) {
+                builder.append((i > 0) ? ", " : "").append(arguments[i]);
+            }
+
+            return builder.append(')').toString();
+        }
+
+    }
+
+    /**
+     * A reference to a parameter of a {@link HelperFunction}. Parameters only ever appear in
+     * the body of a helper function and are replaced by the arguments of each call when the
+     * helper is inlined. They are never evaluated.
+     */
+    static final class Parameter extends ExpressionNode {
+
+        final String name;
+        final int index;
+
+        Parameter(@NotNull String name, int index) {
+            this.name = name;
+            this.index = index;
+        }
+
+        @Override
+        public double evaluate(@NotNull ParticleVariables variables) {
+            throw new IllegalStateException("Parameter \"" + name + "\" was not inlined");
+        }
+
+        @Override
+        public boolean dependsOn(int slot) {
+            // A parameter passed on to another helper is checked for random reads once its own helper is inlined with real arguments
+            return slot != ParticleVariables.SLOT_RANDOM; // Otherwise unknown until inlined
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+
+    }
+
+    /**
+     * Represents a built-in function of more than one argument.
+     */
+    enum IntrinsicFunction {
+
+        /**
+         * The lesser of two values.
+         */
+        MIN("min", 2),
+
+        /**
+         * The greater of two values.
+         */
+        MAX("max", 2),
+
+        /**
+         * A value clamped between a minimum and a maximum. {@code clamp(x, min, max)}.
+         */
+        CLAMP("clamp", 3),
+
+        /**
+         * A linear interpolation between two values. {@code lerp(a, b, t)}.
+         */
+        LERP("lerp", 3),
+
+        /**
+         * The angle in degrees of a point from the positive x axis. {@code atan2(y, x)}.
+         */
+        ATAN2("atan2", 2);
+
+        final String name;
+        final int arity;
+
+        private IntrinsicFunction(@NotNull String name, int arity) {
+            this.name = name;
+            this.arity = arity;
+        }
+
+        double apply(double a, double b, double c) {
+            switch (this) {
+                case MIN: return Math.min(a, b);
+                case MAX: return Math.max(a, b);
+                case CLAMP: return Math.min(Math.max(a, b), c);
+                case LERP: return a + ((b - a) * c);
+                case ATAN2: return Math.toDegrees(Math.atan2(a, b));
+                default: throw new IllegalStateException("Unhandled intrinsic: " + this);
+            }
+        }
+
+        @Nullable
+        static IntrinsicFunction getByName(@NotNull String name) {
+            for (IntrinsicFunction function : values()) {
+                if (function.name.equals(name)) {
+                    return function;
+                }
+            }
+
+            return null;
+        }
+
+    }
+
+    /**
+     * Represents an arithmetic operation between two values.
+     */
+    enum Operation {
+
+        ADD('+'),
+        SUBTRACT('-'),
+        MULTIPLY('*'),
+        DIVIDE('/'),
+        POWER('^');
+
+        final char symbol;
+
+        private Operation(char symbol) {
+            this.symbol = symbol;
+        }
+
+        double apply(double a, double b) {
+            switch (this) {
+                case ADD: return a + b;
+                case SUBTRACT: return a - b;
+                case MULTIPLY: return a * b;
+                case DIVIDE: return a / b;
+                case POWER: return Math.pow(a, b);
+                default: throw new IllegalStateException("Unhandled operation: " + this);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,152 @@
+package wtf.choco.dragoneggdrop.utils.math;
+
+import org.jetbrains.annotations.NotNull;
+
+import wtf.choco.dragoneggdrop.particle.ParticleVariables;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionNode.Operation;
+
+/**
+ * An optimizing pass run over a parsed {@link ExpressionNode} tree before it is evaluated or
+ * compiled. Constant subexpressions are folded into a single constant and arithmetic
+ * identities (such as {@code x * 1}, {@code x + 0} and {@code x ^ 1}) are simplified such
+ * that no constant work is repeated per evaluation. Rewrites that would discard a subtree
+ * entirely (such as {@code x ^ 0}) are only applied if that subtree is pure, otherwise the
+ * random values it would have consumed are preserved.
+ *
+ * @author Parker Hawke - Choco
+ */
+final class ExpressionOptimizer {
+
+    private ExpressionOptimizer() { }
+
+    /**
+     * Optimize the given expression tree. The returned tree will always evaluate to the same
+     * result as the provided tree.
+     *
+     * @param node the node to optimize
+     *
+     * @return the optimized node. May be the same instance if no optimizations were possible
+     */
+    @NotNull
+    static ExpressionNode optimize(@NotNull ExpressionNode node) {
+        if (node instanceof ExpressionNode.Negate) {
+            ExpressionNode operand = optimize(((ExpressionNode.Negate) node).operand);
+
+            if (operand instanceof ExpressionNode.Constant) {
+                return new ExpressionNode.Constant(-((ExpressionNode.Constant) operand).value);
+            }
+            else if (operand instanceof ExpressionNode.Negate) { // --x = x
+                return ((ExpressionNode.Negate) operand).operand;
+            }
+
+            return new ExpressionNode.Negate(operand);
+        }
+        else if (node instanceof ExpressionNode.Binary) {
+            ExpressionNode.Binary binary = (ExpressionNode.Binary) node;
+            return optimizeBinary(binary.operation, optimize(binary.left), optimize(binary.right));
+        }
+        else if (node instanceof ExpressionNode.Function) {
+            ExpressionNode.Function function = (ExpressionNode.Function) node;
+            ExpressionNode argument = optimize(function.argument);
+
+            if (function.pure && argument instanceof ExpressionNode.Constant) {
+                return new ExpressionNode.Constant(function.operator.applyAsDouble(((ExpressionNode.Constant) argument).value));
+            }
+
+            return new ExpressionNode.Function(function.name, function.operator, function.pure, argument);
+        }
+        else if (node instanceof ExpressionNode.BinaryFunction) {
+            ExpressionNode.BinaryFunction function = (ExpressionNode.BinaryFunction) node;
+            ExpressionNode left = optimize(function.left), right = optimize(function.right);
+
+            if (function.pure && left instanceof ExpressionNode.Constant && right instanceof ExpressionNode.Constant) {
+                return new ExpressionNode.Constant(function.operator.applyAsDouble(((ExpressionNode.Constant) left).value, ((ExpressionNode.Constant) right).value));
+            }
+
+            return new ExpressionNode.BinaryFunction(function.name, function.operator, function.pure, left, right);
+        }
+        else if (node instanceof ExpressionNode.Intrinsic) {
+            ExpressionNode.Intrinsic intrinsic = (ExpressionNode.Intrinsic) node;
+            ExpressionNode[] arguments = new ExpressionNode[intrinsic.arguments.length];
+            boolean constant = true;
+
+            for (int i = 0; i < arguments.length; i++) {
+                arguments[i] = optimize(intrinsic.arguments[i]);
+                constant &= arguments[i] instanceof ExpressionNode.Constant;
+            }
+
+            if (constant) { // Intrinsics are always pure
+                double a = ((ExpressionNode.Constant) arguments[0]).value, b = ((ExpressionNode.Constant) arguments[1]).value;
+                double c = (arguments.length > 2) ? ((ExpressionNode.Constant) arguments[2]).value : 0.0;
+                return new ExpressionNode.Constant(intrinsic.function.apply(a, b, c));
+            }
+
+            return new ExpressionNode.Intrinsic(intrinsic.function, arguments);
+        }
+
+        return node; // Constants, variables and parameters cannot be optimized any further
+    }
+
+    @NotNull
+    private static ExpressionNode optimizeBinary(@NotNull Operation operation, @NotNull ExpressionNode left, @NotNull ExpressionNode right) {
+        if (left instanceof ExpressionNode.Constant && right instanceof ExpressionNode.Constant) {
+            return new ExpressionNode.Constant(operation.apply(((ExpressionNode.Constant) left).value, ((ExpressionNode.Constant) right).value));
+        }
+
+        switch (operation) {
+            case ADD:
+                if (isConstant(right, 0.0)) { // x + 0 = x
+                    return left;
+                }
+                else if (isConstant(left, 0.0)) { // 0 + x = x
+                    return right;
+                }
+                break;
+            case SUBTRACT:
+                if (isConstant(right, 0.0)) { // x - 0 = x
+                    return left;
+                }
+                break;
+            case MULTIPLY:
+                if (isConstant(right, 1.0)) { // x * 1 = x
+                    return left;
+                }
+                else if (isConstant(left, 1.0)) { // 1 * x = x
+                    return right;
+                }
+                else if (isConstant(right, -1.0)) { // x * -1 = -x
+                    return new ExpressionNode.Negate(left);
+                }
+                else if (isConstant(left, -1.0)) { // -1 * x = -x
+                    return new ExpressionNode.Negate(right);
+                }
+                break;
+            case DIVIDE:
+                if (isConstant(right, 1.0)) { // x / 1 = x
+                    return left;
+                }
+                break;
+            case POWER:
+                if (isConstant(right, 1.0)) { // x ^ 1 = x
+                    return left;
+                }
+                else if (isConstant(right, 0.0) && isPure(left)) { // x ^ 0 = 1 (even for NaN, as per Math#pow())
+                    return new ExpressionNode.Constant(1.0);
+                }
+                break;
+            default:
+                break;
+        }
+
+        return new ExpressionNode.Binary(operation, left, right);
+    }
+
+    private static boolean isPure(@NotNull ExpressionNode node) {
+        return !node.dependsOn(ParticleVariables.SLOT_RANDOM);
+    }
+
+    private static boolean isConstant(@NotNull ExpressionNode node, double value) {
+        return node instanceof ExpressionNode.Constant && ((ExpressionNode.Constant) node).value == value;
+    }
+
+}
@@ -2,12 +2,24 @@ package wtf.choco.dragoneggdrop.utils.math;
 
 import com.google.common.base.Preconditions;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.DoubleBinaryOperator;
 import java.util.function.DoubleUnaryOperator;
 
 import org.jetbrains.annotations.NotNull;
 
+import wtf.choco.dragoneggdrop.particle.ParticleVariables;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionNode.IntrinsicFunction;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionNode.Operation;
+
 /**
  * A utility class to parse and obtain instances of {@link MathExpression}
  *
@@ -25,6 +37,8 @@ public final class ExpressionUtils {
      */
 
     private static final Map<@NotNull String, @NotNull DoubleUnaryOperator> OPERATORS = new HashMap<>();
+    private static final Map<@NotNull String, @NotNull DoubleBinaryOperator> BINARY_OPERATORS = new HashMap<>();
+    private static final Set<@NotNull String> PURE_OPERATORS = new HashSet<>();
 
     static {
         // Basic arithmetics
@@ -44,25 +58,308 @@ public final class ExpressionUtils {
         // Conversion
         OPERATORS.put("rad", Math::toRadians);
         OPERATORS.put("deg", Math::toDegrees);
+
+        // Built-in operators have no side effects and may be folded when given a constant argument
+        PURE_OPERATORS.addAll(OPERATORS.keySet());
     }
 
+    private static final ExpressionContext DEFAULT_CONTEXT = new ExpressionContext();
+
+    // Node tags of serialized expression trees
+    private static final byte NODE_CONSTANT = 0, NODE_VARIABLE = 1, NODE_NEGATE = 2, NODE_BINARY = 3, NODE_FUNCTION = 4, NODE_BINARY_FUNCTION = 5, NODE_INTRINSIC = 6;
+    private static final Operation[] OPERATIONS = Operation.values();
+    private static final IntrinsicFunction[] INTRINSICS = IntrinsicFunction.values();
+
     private ExpressionUtils() {}
 
     /**
-     * Evaluate a basic mathematical expression.
+     * Evaluate a basic mathematical expression. Constant subexpressions are folded at parse
+     * time and the parsed expression will be compiled to bytecode if possible, otherwise the
+     * interpreted expression tree will be returned.
      *
      * @param expression the string to parse
      *
      * @return The mathematical expression
+     *
+     * @throws ArithmeticException if the expression is malformed or references an unknown
+     * variable or function
      */
     @NotNull
     public static MathExpression parseExpression(@NotNull String expression) {
+        return parseExpression(expression, DEFAULT_CONTEXT, true);
+    }
+
+    /**
+     * Evaluate a basic mathematical expression.
+     *
+     * @param expression the string to parse
+     * @param compile whether or not to compile the expression to bytecode. If false, or if
+     * compilation fails, the interpreted expression tree will be returned
+     *
+     * @return The mathematical expression
+     *
+     * @throws ArithmeticException if the expression is malformed or references an unknown
+     * variable or function
+     */
+    @NotNull
+    public static MathExpression parseExpression(@NotNull String expression, boolean compile) {
+        return parseExpression(expression, DEFAULT_CONTEXT, compile);
+    }
+
+    /**
+     * Evaluate a basic mathematical expression with the operators of the given context taking
+     * precedence over globally registered operators. The parsed expression will be compiled to
+     * bytecode if possible.
+     *
+     * @param expression the string to parse
+     * @param context the context providing additional operators
+     *
+     * @return The mathematical expression
+     *
+     * @throws ArithmeticException if the expression is malformed or references an unknown
+     * variable or function
+     */
+    @NotNull
+    public static MathExpression parseExpression(@NotNull String expression, @NotNull ExpressionContext context) {
+        return parseExpression(expression, context, true);
+    }
+
+    /**
+     * Evaluate a basic mathematical expression with the operators of the given context taking
+     * precedence over globally registered operators.
+     *
+     * @param expression the string to parse
+     * @param context the context providing additional operators
+     * @param compile whether or not to compile the expression to bytecode. If false, or if
+     * compilation fails, the interpreted expression tree will be returned
+     *
+     * @return The mathematical expression
+     *
+     * @throws ArithmeticException if the expression is malformed or references an unknown
+     * variable or function
+     */
+    @NotNull
+    public static MathExpression parseExpression(@NotNull String expression, @NotNull ExpressionContext context, boolean compile) {
+        Preconditions.checkArgument(expression != null, "expression must not be null");
+        Preconditions.checkArgument(context != null, "context must not be null");
+
+        ExpressionNode root = ExpressionOptimizer.optimize(new ExpressionEvaluator(expression, context, new String[0]).parse());
+        if (!compile) {
+            return root;
+        }
+
+        try {
+            return ExpressionCompiler.compile(root);
+        } catch (RuntimeException | LinkageError e) {
+            return root; // Compilation is an optimization. The interpreted tree evaluates identically
+        }
+    }
+
+    /**
+     * Write the parsed and optimized tree of an expression to the given output such that it
+     * may later be read by {@link #readExpression(DataInput, ExpressionContext)} without
+     * being parsed again. Functions are written by name and resolved again when read.
+     *
+     * @param expression the expression to write. Must have been parsed by this class
+     * @param out the output to which the expression should be written
+     *
+     * @throws IOException if the expression could not be written
+     */
+    public static void writeExpression(@NotNull MathExpression expression, @NotNull DataOutput out) throws IOException {
         Preconditions.checkArgument(expression != null, "expression must not be null");
-        return new ExpressionEvaluator(expression).parse();
+        Preconditions.checkArgument(out != null, "out must not be null");
+
+        if (expression instanceof CompiledExpression) {
+            expression = ((CompiledExpression) expression).getSource();
+        }
+
+        Preconditions.checkArgument(expression instanceof ExpressionNode, "expression was not parsed by ExpressionUtils");
+        writeNode((ExpressionNode) expression, out);
+    }
+
+    /**
+     * Read an expression tree written by {@link #writeExpression(MathExpression, DataOutput)}
+     * with the operators of the given context taking precedence over globally registered
+     * operators. The read expression will be compiled to bytecode if possible.
+     *
+     * @param in the input from which to read the expression
+     * @param context the context providing additional operators
+     *
+     * @return the mathematical expression
+     *
+     * @throws IOException if the expression could not be read, or if it references a
+     * variable or function that no longer exists
+     */
+    @NotNull
+    public static MathExpression readExpression(@NotNull DataInput in, @NotNull ExpressionContext context) throws IOException {
+        Preconditions.checkArgument(in != null, "in must not be null");
+        Preconditions.checkArgument(context != null, "context must not be null");
+
+        ExpressionNode root = readNode(in, context);
+
+        try {
+            return ExpressionCompiler.compile(root);
+        } catch (RuntimeException | LinkageError e) {
+            return root; // Compilation is an optimization. The interpreted tree evaluates identically
+        }
+    }
+
+    /**
+     * Parse the body of a helper function. The returned tree is not optimized and may contain
+     * {@link ExpressionNode.Parameter} nodes referencing the given parameters.
+     *
+     * @param expression the expression to parse
+     * @param context the context providing additional operators and helpers
+     * @param parameters the names of the helper's parameters
+     *
+     * @return the parsed body
+     */
+    @NotNull
+    static ExpressionNode parseFunctionBody(@NotNull String expression, @NotNull ExpressionContext context, @NotNull String @NotNull [] parameters) {
+        return new ExpressionEvaluator(expression, context, parameters).parse();
     }
 
     /**
-     * Inject a custom mathematical operation into the expression parser.
+     * Check whether or not a function of the given name is available to expressions parsed
+     * with the given context.
+     *
+     * @param name the name of the function
+     * @param context the context
+     *
+     * @return true if a function, false otherwise
+     */
+    static boolean isFunction(@NotNull String name, @NotNull ExpressionContext context) {
+        return context.getOperator(name) != null || context.getBinaryOperator(name) != null || context.getHelper(name) != null || isGlobalFunction(name);
+    }
+
+    private static boolean isGlobalFunction(@NotNull String name) {
+        return OPERATORS.containsKey(name) || BINARY_OPERATORS.containsKey(name) || IntrinsicFunction.getByName(name) != null;
+    }
+
+    private static void writeNode(@NotNull ExpressionNode node, @NotNull DataOutput out) throws IOException {
+        if (node instanceof ExpressionNode.Constant) {
+            out.writeByte(NODE_CONSTANT);
+            out.writeDouble(((ExpressionNode.Constant) node).value);
+        }
+        else if (node instanceof ExpressionNode.Variable) {
+            out.writeByte(NODE_VARIABLE);
+            out.writeUTF(((ExpressionNode.Variable) node).name);
+        }
+        else if (node instanceof ExpressionNode.Negate) {
+            out.writeByte(NODE_NEGATE);
+            writeNode(((ExpressionNode.Negate) node).operand, out);
+        }
+        else if (node instanceof ExpressionNode.Binary) {
+            ExpressionNode.Binary binary = (ExpressionNode.Binary) node;
+            out.writeByte(NODE_BINARY);
+            out.writeByte(binary.operation.ordinal());
+            writeNode(binary.left, out);
+            writeNode(binary.right, out);
+        }
+        else if (node instanceof ExpressionNode.Function) {
+            ExpressionNode.Function function = (ExpressionNode.Function) node;
+            out.writeByte(NODE_FUNCTION);
+            out.writeUTF(function.name);
+            writeNode(function.argument, out);
+        }
+        else if (node instanceof ExpressionNode.BinaryFunction) {
+            ExpressionNode.BinaryFunction function = (ExpressionNode.BinaryFunction) node;
+            out.writeByte(NODE_BINARY_FUNCTION);
+            out.writeUTF(function.name);
+            writeNode(function.left, out);
+            writeNode(function.right, out);
+        }
+        else if (node instanceof ExpressionNode.Intrinsic) {
+            ExpressionNode.Intrinsic intrinsic = (ExpressionNode.Intrinsic) node;
+            out.writeByte(NODE_INTRINSIC);
+            out.writeByte(intrinsic.function.ordinal());
+            for (ExpressionNode argument : intrinsic.arguments) {
+                writeNode(argument, out);
+            }
+        }
+        else {
+            throw new IllegalStateException("Unhandled expression node: " + node.getClass().getName());
+        }
+    }
+
+    @NotNull
+    private static ExpressionNode readNode(@NotNull DataInput in, @NotNull ExpressionContext context) throws IOException {
+        byte tag = in.readByte();
+
+        switch (tag) {
+            case NODE_CONSTANT:
+                return new ExpressionNode.Constant(in.readDouble());
+            case NODE_VARIABLE: {
+                String name = in.readUTF();
+                int slot = ParticleVariables.getSlot(name);
+                if (slot < 0) {
+                    throw new IOException("Unknown variable \"" + name + "\"");
+                }
+
+                return new ExpressionNode.Variable(name, slot);
+            }
+            case NODE_NEGATE:
+                return new ExpressionNode.Negate(readNode(in, context));
+            case NODE_BINARY: {
+                int operation = in.readUnsignedByte();
+                if (operation >= OPERATIONS.length) {
+                    throw new IOException("Unknown operation " + operation);
+                }
+
+                ExpressionNode left = readNode(in, context);
+                return new ExpressionNode.Binary(OPERATIONS[operation], left, readNode(in, context));
+            }
+            case NODE_FUNCTION: {
+                String name = in.readUTF();
+                ExpressionNode argument = readNode(in, context);
+
+                // Resolved in the same order as the parser such that the same operator is bound
+                DoubleUnaryOperator contextOperator = context.getOperator(name);
+                if (contextOperator != null) {
+                    return new ExpressionNode.Function(name, contextOperator, context.isPure(name), argument);
+                }
+                else if (OPERATORS.containsKey(name)) {
+                    return new ExpressionNode.Function(name, OPERATORS.get(name), PURE_OPERATORS.contains(name), argument);
+                }
+
+                throw new IOException("Unknown function \"" + name + "\"");
+            }
+            case NODE_BINARY_FUNCTION: {
+                String name = in.readUTF();
+                ExpressionNode left = readNode(in, context);
+                ExpressionNode right = readNode(in, context);
+
+                DoubleBinaryOperator contextOperator = context.getBinaryOperator(name);
+                if (contextOperator != null) {
+                    return new ExpressionNode.BinaryFunction(name, contextOperator, context.isPure(name), left, right);
+                }
+                else if (BINARY_OPERATORS.containsKey(name)) {
+                    return new ExpressionNode.BinaryFunction(name, BINARY_OPERATORS.get(name), PURE_OPERATORS.contains(name), left, right);
+                }
+
+                throw new IOException("Unknown function \"" + name + "\"");
+            }
+            case NODE_INTRINSIC: {
+                int function = in.readUnsignedByte();
+                if (function >= INTRINSICS.length) {
+                    throw new IOException("Unknown intrinsic " + function);
+                }
+
+                ExpressionNode[] arguments = new ExpressionNode[INTRINSICS[function].arity];
+                for (int i = 0; i < arguments.length; i++) {
+                    arguments[i] = readNode(in, context);
+                }
+
+                return new ExpressionNode.Intrinsic(INTRINSICS[function], arguments);
+            }
+            default:
+                throw new IOException("Unknown expression node tag " + tag);
+        }
+    }
+
+    /**
+     * Inject a custom mathematical operation into the expression parser. Injected operators
+     * are assumed to have side effects and will never be folded into a constant.
      *
      * @param functionName the name of the function to inject (i.e. "sqrt")
      * @param operator the operation to perform when parsing this function
@@ -73,7 +370,7 @@ public final class ExpressionUtils {
         Preconditions.checkArgument(functionName != null, "functionName must not be null");
         Preconditions.checkArgument(operator != null, "operator must not be null");
 
-        if (OPERATORS.containsKey(functionName)) {
+        if (isGlobalFunction(functionName)) {
             return false;
         }
 
@@ -81,6 +378,28 @@ public final class ExpressionUtils {
         return true;
     }
 
+    /**
+     * Inject a custom mathematical operation of two arguments into the expression parser.
+     * Calls are written as {@code functionName(a, b)}. Injected operators are assumed to have
+     * side effects and will never be folded into a constant.
+     *
+     * @param functionName the name of the function to inject (i.e. "hypot")
+     * @param operator the operation to perform when parsing this function
+     *
+     * @return true if successful. false if operator already exists
+     */
+    public static boolean injectMathematicalOperator(@NotNull String functionName, @NotNull DoubleBinaryOperator operator) {
+        Preconditions.checkArgument(functionName != null, "functionName must not be null");
+        Preconditions.checkArgument(operator != null, "operator must not be null");
+
+        if (isGlobalFunction(functionName)) {
+            return false;
+        }
+
+        BINARY_OPERATORS.put(functionName, operator);
+        return true;
+    }
+
     /**
      * The logic behind the parsing of {@link MathExpression} objects.
      *
@@ -91,9 +410,13 @@ public final class ExpressionUtils {
         private int pos = -1, ch;
 
         private final String expression;
+        private final ExpressionContext context;
+        private final String[] parameters;
 
-        public ExpressionEvaluator(@NotNull String expression) {
+        public ExpressionEvaluator(@NotNull String expression, @NotNull ExpressionContext context, @NotNull String @NotNull [] parameters) {
             this.expression = expression;
+            this.context = context;
+            this.parameters = parameters;
         }
 
         /**
@@ -130,12 +453,12 @@ public final class ExpressionUtils {
          * @return the parsed mathematical expression
          */
         @NotNull
-        public MathExpression parse() {
+        public ExpressionNode parse() {
             this.nextChar();
 
-            MathExpression x = this.parseExpression();
+            ExpressionNode x = this.parseExpression();
             if (pos < expression.length()) {
-                throw new RuntimeException("Unexpected: " + (char) ch);
+                throw unexpectedCharacter();
             }
 
             return x;
@@ -146,7 +469,11 @@ public final class ExpressionUtils {
          *   expression = term | expression + term | expression - term
          *   term = factor | term * factor | term / factor
          *   factor = + factor | - factor | ( expression )
-         *          | number | functionName factor | factor ^ factor
+         *          | number | functionName factor | functionName ( arguments ) | factor ^ factor
+         *   arguments = expression | arguments , expression
+         *
+         * Every production is resolved to an ExpressionNode as it is parsed. Nodes must never
+         * call back into the parser once built, the cursor is exhausted by evaluation time.
          */
 
         /**
@@ -156,17 +483,15 @@ public final class ExpressionUtils {
          * @return the parsed expression
          */
         @NotNull
-        public MathExpression parseExpression() {
-            MathExpression x = parseTerm();
+        public ExpressionNode parseExpression() {
+            ExpressionNode x = parseTerm();
 
             while (true) {
                 if (eat('+')) { // addition
-                    MathExpression a = x, b = parseTerm();
-                    x = (variables -> a.evaluate(variables) + b.evaluate(variables));
+                    x = new ExpressionNode.Binary(Operation.ADD, x, parseTerm());
                 }
                 else if (eat('-')) { // subtraction
-                    MathExpression a = x, b = parseTerm();
-                    x = (variables -> a.evaluate(variables) - b.evaluate(variables));
+                    x = new ExpressionNode.Binary(Operation.SUBTRACT, x, parseTerm());
                 }
                 else {
                     return x;
@@ -180,17 +505,15 @@ public final class ExpressionUtils {
          * @return the parsed term
          */
         @NotNull
-        public MathExpression parseTerm() {
-            MathExpression x = parseFactor();
+        public ExpressionNode parseTerm() {
+            ExpressionNode x = parseFactor();
 
             while (true) {
                 if (eat('*')) { // multiplication
-                    MathExpression a = x, b = parseFactor();
-                    x = (variables -> a.evaluate(variables) * b.evaluate(variables));
+                    x = new ExpressionNode.Binary(Operation.MULTIPLY, x, parseFactor());
                 }
                 else if (eat('/')) { // division
-                    MathExpression a = x, b = parseFactor();
-                    x = (variables -> a.evaluate(variables) / b.evaluate(variables));
+                    x = new ExpressionNode.Binary(Operation.DIVIDE, x, parseFactor());
                 }
                 else {
                     return x;
@@ -205,21 +528,24 @@ public final class ExpressionUtils {
          * @return the parsed factor
          */
         @NotNull
-        public MathExpression parseFactor() {
+        public ExpressionNode parseFactor() {
             if (eat('+')) {
                 return parseFactor(); // unary plus
             }
 
             if (eat('-')) {
-                return variables -> -parseFactor().evaluate(variables); // unary minus
+                return new ExpressionNode.Negate(parseFactor()); // unary minus
             }
 
-            MathExpression x;
+            ExpressionNode x;
             int startPos = pos;
 
             if (eat('(')) { // parentheses
                 x = parseExpression();
-                this.eat(')');
+
+                if (!eat(')')) {
+                    throw new ArithmeticException("Expected \")\" at position " + pos + " to close \"(\" at position " + startPos);
+                }
             }
             else if ((ch >= '0' && ch <= '9') || ch == '.') { // numbers
                 while ((ch >= '0' && ch <= '9') || ch == '.') {
@@ -227,34 +553,137 @@ public final class ExpressionUtils {
                 }
 
                 String value = expression.substring(startPos, this.pos);
-                x = (variables -> Double.parseDouble(value));
+
+                try {
+                    x = new ExpressionNode.Constant(Double.parseDouble(value));
+                } catch (NumberFormatException e) {
+                    throw new ArithmeticException("Malformed number \"" + value + "\" at position " + startPos);
+                }
             }
             else if (ch >= 'a' && ch <= 'z') { // functions
-                while (ch >= 'a' && ch <= 'z') {
-                    this.nextChar();
-                }
+                String function = parseName(startPos);
+                x = parseIdentifier(function, startPos);
+            }
+            else {
+                throw unexpectedCharacter();
+            }
 
-                String function = expression.substring(startPos, this.pos);
+            if (eat('^')) { // exponentiation
+                x = new ExpressionNode.Binary(Operation.POWER, x, parseFactor());
+            }
+
+            return x;
+        }
 
-                if (OPERATORS.containsKey(function)) {
-                    DoubleUnaryOperator operand = OPERATORS.get(function);
-                    MathExpression a = this.parseFactor();
-                    x = (variables -> operand.applyAsDouble(a.evaluate(variables)));
+        @NotNull
+        private String parseName(int startPos) {
+            while (ch >= 'a' && ch <= 'z') {
+                this.nextChar();
+            }
+
+            int lettersEnd = pos;
+            while ((ch >= 'a' && ch <= 'z') || (ch >= '0' && ch <= '9')) {
+                this.nextChar();
+            }
+
+            String name = expression.substring(startPos, this.pos);
+            if (pos != lettersEnd && getParameterIndex(name) < 0 && !isFunction(name, context) && ParticleVariables.getSlot(name) < 0) {
+                // Unknown names with digits are instead read as a name followed by a number, i.e. "sin2" is sin(2)
+                this.pos = lettersEnd - 1;
+                this.nextChar();
+                name = expression.substring(startPos, this.pos);
+            }
+
+            return name;
+        }
+
+        @NotNull
+        private ExpressionNode parseIdentifier(@NotNull String name, int namePos) {
+            int parameter = getParameterIndex(name);
+            if (parameter >= 0) {
+                return new ExpressionNode.Parameter(name, parameter);
+            }
+
+            DoubleUnaryOperator contextOperator = context.getOperator(name);
+            DoubleBinaryOperator contextBinaryOperator = context.getBinaryOperator(name);
+            HelperFunction helper = context.getHelper(name);
+            IntrinsicFunction intrinsic;
+
+            if (contextOperator != null) {
+                return new ExpressionNode.Function(name, contextOperator, context.isPure(name), parseFactor());
+            }
+            else if (contextBinaryOperator != null) {
+                ExpressionNode[] arguments = parseArguments(name, namePos, 2);
+                return new ExpressionNode.BinaryFunction(name, contextBinaryOperator, context.isPure(name), arguments[0], arguments[1]);
+            }
+            else if (helper != null) {
+                return helper.inline((helper.getArity() == 1) ? new ExpressionNode[] { parseFactor() } : parseArguments(name, namePos, helper.getArity()));
+            }
+            else if (OPERATORS.containsKey(name)) {
+                return new ExpressionNode.Function(name, OPERATORS.get(name), PURE_OPERATORS.contains(name), parseFactor());
+            }
+            else if (BINARY_OPERATORS.containsKey(name)) {
+                ExpressionNode[] arguments = parseArguments(name, namePos, 2);
+                return new ExpressionNode.BinaryFunction(name, BINARY_OPERATORS.get(name), PURE_OPERATORS.contains(name), arguments[0], arguments[1]);
+            }
+            else if ((intrinsic = IntrinsicFunction.getByName(name)) != null) {
+                return new ExpressionNode.Intrinsic(intrinsic, parseArguments(name, namePos, intrinsic.arity));
+            }
+
+            int slot = ParticleVariables.getSlot(name);
+            if (slot < 0) {
+                throw new ArithmeticException("Unknown variable or function \"" + name + "\" at position " + namePos);
+            }
+
+            return new ExpressionNode.Variable(name, slot);
+        }
+
+        @NotNull
+        private ExpressionNode @NotNull [] parseArguments(@NotNull String function, int functionPos, int arity) {
+            int startPos = pos;
+            if (!eat('(')) {
+                if (arity == 0) {
+                    return new ExpressionNode[0];
                 }
-                else {
-                    x = (variables -> variables.get(function, 0.0));
+
+                throw new ArithmeticException("Expected \"(\" at position " + pos + " to call function \"" + function + "\"");
+            }
+
+            List<@NotNull ExpressionNode> arguments = new ArrayList<>(arity);
+            if (!eat(')')) {
+                do {
+                    arguments.add(parseExpression());
+                } while (eat(','));
+
+                if (!eat(')')) {
+                    throw new ArithmeticException("Expected \")\" at position " + pos + " to close \"(\" at position " + startPos);
                 }
             }
-            else {
-                throw new ArithmeticException("Unexpected: \"" + ch + "\"");
+
+            if (arguments.size() != arity) {
+                throw new ArithmeticException("Function \"" + function + "\" at position " + functionPos + " expects " + arity + " argument" + (arity == 1 ? "" : "s") + ", got " + arguments.size());
             }
 
-            if (eat('^')) { // exponentiation
-                MathExpression a = x, b = parseFactor();
-                x = (variables -> Math.pow(a.evaluate(variables), b.evaluate(variables)));
+            return arguments.toArray(new ExpressionNode[0]);
+        }
+
+        private int getParameterIndex(@NotNull String name) {
+            for (int i = 0; i < parameters.length; i++) {
+                if (parameters[i].equals(name)) {
+                    return i;
+                }
             }
 
-            return x;
+            return -1;
+        }
+
+        @NotNull
+        private ArithmeticException unexpectedCharacter() {
+            if (ch == -1) {
+                return new ArithmeticException("Unexpected end of expression at position " + expression.length());
+            }
+
+            return new ArithmeticException("Unexpected \"" + (char) ch + "\" at position " + pos);
         }
     }
 
@@ -0,0 +1,142 @@
+package wtf.choco.dragoneggdrop.utils.math;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A set of trigonometric functions (operating on degrees) backed by a precomputed, linearly
+ * interpolated sine table. Results are approximate but substantially cheaper to compute than
+ * those of {@link StrictMath}. The maximum absolute error of {@link #sin(double)} and
+ * {@link #cos(double)} may be queried with {@link #getMaxError()}.
+ * <p>
+ * Tables are shared between all users of the same resolution.
+ *
+ * @author Parker Hawke - Choco
+ *
+ * @see ExpressionContext#tableTrigonometry(int)
+ */
+public final class FastTrigonometry {
+
+    /**
+     * The default table resolution (amount of entries per full rotation).
+     */
+    public static final int DEFAULT_RESOLUTION = 4096;
+
+    /**
+     * The minimum allowed table resolution.
+     */
+    public static final int MIN_RESOLUTION = 64;
+
+    /**
+     * The maximum allowed table resolution.
+     */
+    public static final int MAX_RESOLUTION = 1 << 20;
+
+    private static final Map<@NotNull Integer, @NotNull FastTrigonometry> TABLES = new ConcurrentHashMap<>();
+
+    // Beyond this magnitude, an index can no longer be accurately represented with a fractional part
+    private static final double MAX_INTERPOLATED_INDEX = 1L << 52;
+
+    private final int resolution;
+    private final double indexScale;
+    private final double[] sinTable;
+
+    private FastTrigonometry(int resolution) {
+        this.resolution = resolution;
+        this.indexScale = resolution / 360.0;
+        this.sinTable = new double[resolution + 1]; // Last entry wraps around to save a bounds check when interpolating
+
+        for (int i = 0; i <= resolution; i++) {
+            this.sinTable[i] = StrictMath.sin((2 * Math.PI * i) / resolution);
+        }
+    }
+
+    /**
+     * Get the amount of table entries per full rotation.
+     *
+     * @return the resolution
+     */
+    public int getResolution() {
+        return resolution;
+    }
+
+    /**
+     * Get the maximum absolute error of {@link #sin(double)} and {@link #cos(double)} when
+     * compared to their {@link StrictMath} counterparts. For linear interpolation between table
+     * entries, this is bound by {@code h^2 / 8} where {@code h} is the distance in radians
+     * between two table entries, plus one ulp of rounding.
+     * <p>
+     * The bound holds for angles of up to 36,000 degrees (100 full rotations) in magnitude.
+     * Beyond that, rounding of the angle itself adds error proportional to its magnitude.
+     *
+     * @return the maximum absolute error
+     */
+    public double getMaxError() {
+        double step = (2 * Math.PI) / resolution;
+        return (step * step) / 8 + Math.ulp(1.0);
+    }
+
+    /**
+     * Approximate the sine of an angle.
+     *
+     * @param degrees the angle in degrees
+     *
+     * @return the approximate sine
+     */
+    public double sin(double degrees) {
+        double index = degrees * indexScale;
+        if (!(Math.abs(index) < MAX_INTERPOLATED_INDEX)) { // Also catches NaN and infinities
+            return StrictMath.sin(Math.toRadians(degrees));
+        }
+
+        double floor = Math.floor(index);
+        int i = (int) ((long) floor & (resolution - 1));
+        double a = sinTable[i];
+
+        return a + (sinTable[i + 1] - a) * (index - floor);
+    }
+
+    /**
+     * Approximate the cosine of an angle.
+     *
+     * @param degrees the angle in degrees
+     *
+     * @return the approximate cosine
+     */
+    public double cos(double degrees) {
+        return sin(degrees + 90.0);
+    }
+
+    /**
+     * Approximate the tangent of an angle. Note that relative error grows near the
+     * asymptotes of the tangent function.
+     *
+     * @param degrees the angle in degrees
+     *
+     * @return the approximate tangent
+     */
+    public double tan(double degrees) {
+        return sin(degrees) / cos(degrees);
+    }
+
+    /**
+     * Get the shared trigonometry table for the given resolution, creating it if necessary.
+     *
+     * @param resolution the amount of table entries per full rotation. Must be a power of two
+     * between {@link #MIN_RESOLUTION} and {@link #MAX_RESOLUTION} (inclusive)
+     *
+     * @return the trigonometry table
+     */
+    @NotNull
+    public static FastTrigonometry withResolution(int resolution) {
+        Preconditions.checkArgument(resolution >= MIN_RESOLUTION && resolution <= MAX_RESOLUTION, "resolution must be between %s and %s", MIN_RESOLUTION, MAX_RESOLUTION);
+        Preconditions.checkArgument(Integer.bitCount(resolution) == 1, "resolution must be a power of two");
+
+        return TABLES.computeIfAbsent(resolution, FastTrigonometry::new);
+    }
+
+}
@@ -0,0 +1,133 @@
+package wtf.choco.dragoneggdrop.utils.math;
+
+import org.jetbrains.annotations.NotNull;
+
+import wtf.choco.dragoneggdrop.particle.ParticleVariables;
+
+/**
+ * A named function defined by an expression of its parameters. Helper functions are never
+ * called at evaluation time. Instead, every call is replaced at parse time by a copy of the
+ * helper's body in which each parameter is replaced by the corresponding argument, such that
+ * the optimizer and compiler see a single expression tree.
+ *
+ * @author Parker Hawke - Choco
+ *
+ * @see ExpressionContext#defineFunction(String, java.util.List, String)
+ */
+final class HelperFunction {
+
+    private final String name;
+    private final String[] parameters;
+    private final ExpressionNode body;
+    private final int[] parameterUses;
+
+    HelperFunction(@NotNull String name, @NotNull String @NotNull [] parameters, @NotNull ExpressionNode body) {
+        this.name = name;
+        this.parameters = parameters;
+        this.body = body;
+        this.parameterUses = new int[parameters.length];
+        this.countParameterUses(body);
+    }
+
+    /**
+     * Get the name of this helper function.
+     *
+     * @return the name
+     */
+    @NotNull
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Get the amount of arguments expected by this helper function.
+     *
+     * @return the arity
+     */
+    int getArity() {
+        return parameters.length;
+    }
+
+    /**
+     * Inline a call to this helper function with the given arguments.
+     *
+     * @param arguments the arguments of the call, one per parameter
+     *
+     * @return the inlined body
+     *
+     * @throws ArithmeticException if an argument reading a random value would be evaluated
+     * more than once, or would be discarded because its parameter is never used. Parameters of
+     * an enclosing helper are not considered random. Their uses are counted in the enclosing
+     * helper's inlined body instead
+     */
+    @NotNull
+    ExpressionNode inline(@NotNull ExpressionNode @NotNull [] arguments) {
+        for (int i = 0; i < arguments.length; i++) {
+            // Each use of a parameter evaluates its argument again. A random argument must produce exactly one value per call
+            if (parameterUses[i] != 1 && arguments[i].dependsOn(ParticleVariables.SLOT_RANDOM)) {
+                throw new ArithmeticException("Argument \"" + parameters[i] + "\" of function \"" + name + "\" reads a random value but is " + (parameterUses[i] == 0 ? "never used" : "used more than once"));
+            }
+        }
+
+        return substitute(body, arguments);
+    }
+
+    @NotNull
+    private static ExpressionNode substitute(@NotNull ExpressionNode node, @NotNull ExpressionNode @NotNull [] arguments) {
+        if (node instanceof ExpressionNode.Parameter) {
+            return arguments[((ExpressionNode.Parameter) node).index];
+        }
+        else if (node instanceof ExpressionNode.Negate) {
+            return new ExpressionNode.Negate(substitute(((ExpressionNode.Negate) node).operand, arguments));
+        }
+        else if (node instanceof ExpressionNode.Binary) {
+            ExpressionNode.Binary binary = (ExpressionNode.Binary) node;
+            return new ExpressionNode.Binary(binary.operation, substitute(binary.left, arguments), substitute(binary.right, arguments));
+        }
+        else if (node instanceof ExpressionNode.Function) {
+            ExpressionNode.Function function = (ExpressionNode.Function) node;
+            return new ExpressionNode.Function(function.name, function.operator, function.pure, substitute(function.argument, arguments));
+        }
+        else if (node instanceof ExpressionNode.BinaryFunction) {
+            ExpressionNode.BinaryFunction function = (ExpressionNode.BinaryFunction) node;
+            return new ExpressionNode.BinaryFunction(function.name, function.operator, function.pure, substitute(function.left, arguments), substitute(function.right, arguments));
+        }
+        else if (node instanceof ExpressionNode.Intrinsic) {
+            ExpressionNode.Intrinsic intrinsic = (ExpressionNode.Intrinsic) node;
+            ExpressionNode[] intrinsicArguments = new ExpressionNode[intrinsic.arguments.length];
+            for (int i = 0; i < intrinsicArguments.length; i++) {
+                intrinsicArguments[i] = substitute(intrinsic.arguments[i], arguments);
+            }
+
+            return new ExpressionNode.Intrinsic(intrinsic.function, intrinsicArguments);
+        }
+
+        return node; // Constants and variables are shared
+    }
+
+    private void countParameterUses(@NotNull ExpressionNode node) {
+        if (node instanceof ExpressionNode.Parameter) {
+            this.parameterUses[((ExpressionNode.Parameter) node).index]++;
+        }
+        else if (node instanceof ExpressionNode.Negate) {
+            this.countParameterUses(((ExpressionNode.Negate) node).operand);
+        }
+        else if (node instanceof ExpressionNode.Binary) {
+            this.countParameterUses(((ExpressionNode.Binary) node).left);
+            this.countParameterUses(((ExpressionNode.Binary) node).right);
+        }
+        else if (node instanceof ExpressionNode.Function) {
+            this.countParameterUses(((ExpressionNode.Function) node).argument);
+        }
+        else if (node instanceof ExpressionNode.BinaryFunction) {
+            this.countParameterUses(((ExpressionNode.BinaryFunction) node).left);
+            this.countParameterUses(((ExpressionNode.BinaryFunction) node).right);
+        }
+        else if (node instanceof ExpressionNode.Intrinsic) {
+            for (ExpressionNode argument : ((ExpressionNode.Intrinsic) node).arguments) {
+                this.countParameterUses(argument);
+            }
+        }
+    }
+
+}
@@ -21,4 +21,64 @@ public interface MathExpression {
      */
     public double evaluate(@NotNull ParticleVariables variables);
 
+    /**
+     * Evaluate the mathematical expression over a batch of t and theta values. For each index
+     * {@code i} in {@code [0, length)}, {@code out[i]} will be set to the result of this
+     * expression as if t were {@code t[i]} and theta were {@code theta[i]}. All other variables
+     * are read from the provided variables.
+     * <p>
+     * The t and theta values held by the provided variables after this method returns are
+     * unspecified.
+     *
+     * @param variables a set of variables with which to replace special vars
+     * @param t the values of t to evaluate
+     * @param theta the values of theta to evaluate
+     * @param out the array to which results should be written
+     * @param length the amount of values to evaluate
+     */
+    public default void evaluate(@NotNull ParticleVariables variables, double @NotNull [] t, double @NotNull [] theta, double @NotNull [] out, int length) {
+        this.evaluate(variables, t, theta, out, 0, length);
+    }
+
+    /**
+     * Evaluate the mathematical expression over a range of a batch of t and theta values. For
+     * each index {@code i} in {@code [from, to)}, {@code out[i]} will be set to the result of
+     * this expression as if t were {@code t[i]} and theta were {@code theta[i]}. All other
+     * variables are read from the provided variables.
+     * <p>
+     * The t and theta values held by the provided variables after this method returns are
+     * unspecified. Disjoint ranges of the same arrays may be evaluated concurrently so long as
+     * each thread provides its own variables.
+     *
+     * @param variables a set of variables with which to replace special vars
+     * @param t the values of t to evaluate
+     * @param theta the values of theta to evaluate
+     * @param out the array to which results should be written
+     * @param from the index of the first value to evaluate (inclusive)
+     * @param to the index after the last value to evaluate (exclusive)
+     */
+    public default void evaluate(@NotNull ParticleVariables variables, double @NotNull [] t, double @NotNull [] theta, double @NotNull [] out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            variables.set(ParticleVariables.SLOT_T, t[i]);
+            variables.set(ParticleVariables.SLOT_THETA, theta[i]);
+            out[i] = evaluate(variables);
+        }
+    }
+
+    /**
+     * Check whether or not the result of this expression may depend on the value of the
+     * variable held in the given {@link ParticleVariables} slot. Expressions that call upon
+     * operators with side effects are considered to depend on
+     * {@link ParticleVariables#SLOT_RANDOM}.
+     * <p>
+     * Implementations unable to determine which variables they read should return true.
+     *
+     * @param slot the variable slot
+     *
+     * @return true if the result may depend on the variable, false if it never will
+     */
+    public default boolean dependsOn(int slot) {
+        return true;
+    }
+
 }
@@ -0,0 +1,142 @@
+package wtf.choco.dragoneggdrop.dragon;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Compares the cost of recording hits in a {@link DamageHistory} against a baseline that
+ * accumulates totals in a {@code HashMap<UUID, Double>}, as damage totals were kept before
+ * they were keyed by primitive UUID bits. For each amount of distinct damagers, hits from
+ * randomly chosen damagers are recorded and the time and bytes allocated per hit are reported.
+ * Usage:
+ *
+ * <pre>
+ * java -cp target/classes:target/test-classes:spigot-api.jar wtf.choco.dragoneggdrop.dragon.DamageHistoryBenchmark
+ *     [--hits &lt;count&gt;] [--runs &lt;count&gt;] [--seed &lt;seed&gt;]
+ * </pre>
+ *
+ * The first run of every configuration is a warmup and is not reported. Allocation is measured
+ * with {@code com.sun.management.ThreadMXBean} where supported.
+ *
+ * @author Parker Hawke - Choco
+ */
+public final class DamageHistoryBenchmark {
+
+    private static final int[] DAMAGER_COUNTS = { 1, 10, 300 };
+
+    private static final int DEFAULT_HITS = 1_000_000;
+    private static final int DEFAULT_RUNS = 5;
+    private static final long DEFAULT_SEED = 0x5EEDL;
+
+    private static final long HIT_INTERVAL_MILLIS = 50L; // One hit per tick
+
+    private final com.sun.management.ThreadMXBean threadBean;
+    private final int hits;
+
+    private DamageHistoryBenchmark(int hits) {
+        this.hits = hits;
+
+        java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (threadBean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported()) {
+            this.threadBean = (com.sun.management.ThreadMXBean) threadBean;
+            this.threadBean.setThreadAllocatedMemoryEnabled(true);
+        }
+        else {
+            this.threadBean = null;
+        }
+    }
+
+    public static void main(String[] args) {
+        int hits = DEFAULT_HITS, runs = DEFAULT_RUNS;
+        long seed = DEFAULT_SEED;
+
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 >= args.length) {
+                System.err.println("Missing value for option " + option);
+                System.exit(1);
+            }
+
+            String value = args[++i];
+            switch (option) {
+                case "--hits": hits = Math.max(Integer.parseInt(value), 1); break;
+                case "--runs": runs = Math.max(Integer.parseInt(value), 1); break;
+                case "--seed": seed = Long.parseLong(value); break;
+                default:
+                    System.err.println("Unknown option " + option);
+                    System.exit(1);
+            }
+        }
+
+        DamageHistoryBenchmark benchmark = new DamageHistoryBenchmark(hits);
+        if (benchmark.threadBean == null) {
+            System.out.println("Allocation measurement is not supported by this JVM");
+        }
+
+        System.out.printf(Locale.ROOT, "%-10s %-12s %12s %14s%n", "Damagers", "Impl", "ns/hit", "bytes/hit");
+        for (int damagerCount : DAMAGER_COUNTS) {
+            UUID[] damagers = new UUID[damagerCount];
+            SplittableRandom random = new SplittableRandom(seed);
+            for (int i = 0; i < damagerCount; i++) {
+                damagers[i] = new UUID(random.nextLong(), random.nextLong());
+            }
+
+            int[] sequence = new int[hits];
+            for (int i = 0; i < hits; i++) {
+                sequence[i] = random.nextInt(damagerCount);
+            }
+
+            benchmark.report(damagerCount, "HashMap", runs, () -> benchmark.runBaseline(damagers, sequence));
+            benchmark.report(damagerCount, "History", runs, () -> benchmark.runHistory(damagers, sequence));
+        }
+    }
+
+    private void report(int damagerCount, @NotNull String name, int runs, @NotNull Run run) {
+        run.run(); // Warmup
+
+        long nanos = 0, bytes = 0;
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < runs; i++) {
+            long allocatedBefore = (threadBean != null) ? threadBean.getThreadAllocatedBytes(threadId) : 0L;
+            long start = System.nanoTime();
+            run.run();
+            nanos += System.nanoTime() - start;
+            bytes += (threadBean != null) ? threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore : 0L;
+        }
+
+        double totalHits = (double) hits * runs;
+        System.out.printf(Locale.ROOT, "%-10d %-12s %12.2f %14s%n", damagerCount, name, nanos / totalHits, (threadBean != null) ? String.format(Locale.ROOT, "%.2f", bytes / totalHits) : "n/a");
+    }
+
+    private double runBaseline(UUID @NotNull [] damagers, int @NotNull [] sequence) {
+        Map<@NotNull UUID, @NotNull Double> totalDamage = new HashMap<>();
+        for (int i = 0; i < sequence.length; i++) {
+            totalDamage.merge(damagers[sequence[i]], 1.0 + (i & 7), Double::sum);
+        }
+
+        return totalDamage.get(damagers[0]);
+    }
+
+    private double runHistory(UUID @NotNull [] damagers, int @NotNull [] sequence) {
+        DamageHistory history = DamageHistory.dummy();
+        for (int i = 0; i < sequence.length; i++) {
+            history.recordDamage(damagers[sequence[i]], 1.0 + (i & 7), i * HIT_INTERVAL_MILLIS);
+        }
+
+        return history.getTotalDamageFrom(damagers[0]);
+    }
+
+    @FunctionalInterface
+    private interface Run {
+
+        public double run();
+
+    }
+
+}
@@ -0,0 +1,89 @@
+package wtf.choco.dragoneggdrop.dragon;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import java.util.UUID;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for the serialization of {@link DamageHistory}.
+ *
+ * @author Parker Hawke - Choco
+ */
+public class DamageHistoryTest {
+
+    private static final UUID A = new UUID(0L, 1L), B = new UUID(0L, 2L), C = new UUID(0L, 3L);
+
+    @Test
+    public void testJsonRoundTrip() {
+        // Recent enough to be retained and to fall within the widest window of recent damage when queried
+        long start = System.currentTimeMillis() - 20_000L;
+
+        DamageHistory history = DamageHistory.dummy();
+        history.recordDamage(A, 4.0, start);
+        history.recordDamage(B, 6.0, start + 400L);
+        history.recordDamage(A, 2.0, start + 1_500L);
+        history.recordDamage(C, 6.0, start + 3_000L);
+        history.recordDamage(B, 1.5, start + 3_200L);
+        history.recordDamage(C, 0.5, start + 10_000L);
+
+        JsonObject json = history.toJson();
+        DamageHistory copy = DamageHistory.fromJson(new Gson().fromJson(json.toString(), JsonObject.class));
+
+        assertEquals(history.getEntityUUID(), copy.getEntityUUID());
+        assertEquals(history.size(), copy.size());
+        assertEquals(history.uniqueDamagers(), copy.uniqueDamagers());
+
+        for (int rank = 0; rank < history.uniqueDamagers(); rank++) {
+            assertEquals("rank " + rank, history.getTopDamagerUUID(rank), copy.getTopDamagerUUID(rank));
+            assertEquals("rank " + rank, history.getTopDamage(rank), copy.getTopDamage(rank), 0.0);
+        }
+
+        for (int offset = 0; offset < history.size(); offset++) {
+            DamageHistory.DamageEntry expected = history.getMostRecentDamage(offset), actual = copy.getMostRecentDamage(offset);
+            assertEquals("offset " + offset, expected.getSource(), actual.getSource());
+            assertEquals("offset " + offset, expected.getDamage(), actual.getDamage(), 0.0);
+            assertEquals("offset " + offset, expected.getTimestamp(), actual.getTimestamp());
+        }
+
+        for (UUID damager : new UUID[] { A, B, C }) {
+            assertEquals(history.getTotalDamageFrom(damager), copy.getTotalDamageFrom(damager), 0.0);
+            assertEquals(history.getPeakDamagePerSecondFrom(damager), copy.getPeakDamagePerSecondFrom(damager), 0.0);
+            assertEquals(history.getRecentDamageFrom(damager, DamageHistory.MAX_RECENT_DAMAGE_SECONDS), copy.getRecentDamageFrom(damager, DamageHistory.MAX_RECENT_DAMAGE_SECONDS), 0.0);
+        }
+
+        assertEquals(history.getPeakDamagePerSecond(), copy.getPeakDamagePerSecond(), 0.0);
+        assertEquals(20.0, copy.getRecentDamage(DamageHistory.MAX_RECENT_DAMAGE_SECONDS), 0.0);
+
+        // Serializing the copy again yields the same json
+        assertEquals(json, copy.toJson());
+    }
+
+    @Test
+    public void testTotalsSurviveDiscardedEntries() {
+        int maxEntries = DamageHistory.getMaxEntries();
+        long maxAgeMillis = DamageHistory.getMaxAgeMillis();
+        DamageHistory.setRetention(2, maxAgeMillis);
+
+        try {
+            long now = System.currentTimeMillis();
+            DamageHistory history = DamageHistory.dummy();
+            history.recordDamage(A, 10.0, now);
+            history.recordDamage(B, 1.0, now);
+            history.recordDamage(B, 1.0, now);
+
+            DamageHistory copy = DamageHistory.fromJson(history.toJson());
+            assertEquals(2, copy.size());
+            assertEquals(10.0, copy.getTotalDamageFrom(A), 0.0);
+            assertEquals(2.0, copy.getTotalDamageFrom(B), 0.0);
+            assertEquals(A, copy.getTopDamagerUUID(0));
+        } finally {
+            DamageHistory.setRetention(maxEntries, maxAgeMillis);
+        }
+    }
+
+}
@@ -0,0 +1,142 @@
+package wtf.choco.dragoneggdrop.dragon;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for the wraparound, growth and retention of {@link DamageLog}.
+ *
+ * @author Parker Hawke - Choco
+ */
+public class DamageLogTest {
+
+    @Test
+    public void testOffsetsFromMostRecent() {
+        DamageLog log = new DamageLog();
+        for (int i = 0; i < 5; i++) {
+            log.add(i, -i, i * 1.5, i * 100L, 1024);
+        }
+
+        assertEquals(5, log.size());
+        for (int offset = 0; offset < 5; offset++) {
+            int i = 4 - offset;
+            assertEquals(i, log.getSourceMostSignificantBits(offset));
+            assertEquals(-i, log.getSourceLeastSignificantBits(offset));
+            assertEquals(i * 1.5, log.getDamage(offset), 0.0);
+            assertEquals(i * 100L, log.getTimestamp(offset));
+        }
+    }
+
+    @Test
+    public void testWraparoundOverwritesOldest() {
+        DamageLog log = new DamageLog();
+        for (int i = 0; i < 50; i++) {
+            log.add(i, i, i, i, 20);
+        }
+
+        // Only the 20 most recent entries remain, most recent first
+        assertEquals(20, log.size());
+        for (int offset = 0; offset < 20; offset++) {
+            assertEquals(49 - offset, log.getTimestamp(offset));
+        }
+    }
+
+    @Test
+    public void testGrowthAfterWraparound() {
+        DamageLog log = new DamageLog();
+
+        // Wrap a full buffer of the initial capacity around, then raise the maximum to grow it
+        for (int i = 0; i < 24; i++) {
+            log.add(i, i, i, i, 16);
+        }
+
+        for (int i = 24; i < 100; i++) {
+            log.add(i, i, i, i, 64);
+        }
+
+        assertEquals(64, log.size());
+        for (int offset = 0; offset < 64; offset++) {
+            assertEquals(99 - offset, log.getTimestamp(offset));
+            assertEquals(99 - offset, log.getSourceMostSignificantBits(offset));
+        }
+    }
+
+    @Test
+    public void testDiscardBefore() {
+        DamageLog log = new DamageLog();
+        for (int i = 0; i < 30; i++) {
+            log.add(i, i, i, i * 10L, 20); // Wrapped such that the retained entries span the end of the buffer
+        }
+
+        log.discardBefore(200L);
+        assertEquals(10, log.size());
+        assertEquals(290L, log.getTimestamp(0));
+        assertEquals(200L, log.getTimestamp(9));
+
+        log.discardBefore(200L); // Idempotent
+        assertEquals(10, log.size());
+
+        log.discardBefore(Long.MAX_VALUE);
+        assertEquals(0, log.size());
+
+        // The log remains usable once emptied
+        log.add(1L, 1L, 1.0, 1000L, 20);
+        assertEquals(1, log.size());
+        assertEquals(1000L, log.getTimestamp(0));
+    }
+
+    @Test
+    public void testMatchesDeque() {
+        SplittableRandom random = new SplittableRandom(0xD4L);
+        DamageLog log = new DamageLog();
+        Deque<long[]> expected = new ArrayDeque<>(); // Most recent first. Each entry is { bits, timestamp }
+
+        long time = 0;
+        int maxEntries = 32;
+        for (int step = 0; step < 20_000; step++) {
+            int action = random.nextInt(100);
+            if (action < 2) {
+                maxEntries = random.nextInt(1, 200); // Takes effect on the next entry
+            }
+            else if (action < 4) {
+                long cutoff = time - random.nextInt(500);
+                log.discardBefore(cutoff);
+                while (!expected.isEmpty() && expected.peekLast()[1] < cutoff) {
+                    expected.removeLast();
+                }
+            }
+            else if (action == 4) {
+                log.clear();
+                expected.clear();
+            }
+            else {
+                time += random.nextInt(20);
+                long bits = random.nextLong();
+                log.add(bits, ~bits, bits & 0xFF, time, maxEntries);
+                expected.addFirst(new long[] { bits, time });
+                while (expected.size() > maxEntries) {
+                    expected.removeLast();
+                }
+            }
+
+            assertEquals("step " + step, expected.size(), log.size());
+            if (step % 100 == 0) {
+                Iterator<long[]> iterator = expected.iterator();
+                for (int offset = 0; iterator.hasNext(); offset++) {
+                    long[] entry = iterator.next();
+                    assertEquals(entry[0], log.getSourceMostSignificantBits(offset));
+                    assertEquals(~entry[0], log.getSourceLeastSignificantBits(offset));
+                    assertEquals(entry[0] & 0xFF, log.getDamage(offset), 0.0);
+                    assertEquals(entry[1], log.getTimestamp(offset));
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+package wtf.choco.dragoneggdrop.dragon;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for the ordering maintained by {@link DamageRanking}.
+ *
+ * @author Parker Hawke - Choco
+ */
+public class DamageRankingTest {
+
+    private static final UUID A = new UUID(0L, 1L), B = new UUID(0L, 2L), C = new UUID(0L, 3L);
+
+    @Test
+    public void testRankedByTotalDamage() {
+        DamageRanking ranking = new DamageRanking();
+        ranking.add(A, 5.0);
+        ranking.add(B, 10.0);
+        ranking.add(C, 1.0);
+
+        assertRanking(ranking, B, A, C);
+
+        // C overtakes both
+        ranking.add(C, 14.5);
+        assertRanking(ranking, C, B, A);
+        assertEquals(15.5, ranking.getTotal(0), 0.0);
+        assertEquals(15.5, ranking.getTotal(C), 0.0);
+    }
+
+    @Test
+    public void testTiesRankedByFirstDamage() {
+        DamageRanking ranking = new DamageRanking();
+        ranking.add(C, 4.0);
+        ranking.add(A, 2.0);
+        ranking.add(B, 4.0);
+        ranking.add(A, 2.0);
+
+        assertRanking(ranking, C, A, B);
+    }
+
+    @Test
+    public void testClear() {
+        DamageRanking ranking = new DamageRanking();
+        ranking.add(A, 5.0);
+        ranking.add(B, 10.0);
+
+        ranking.clear();
+        assertEquals(0, ranking.size());
+        assertEquals(-1, ranking.getSlot(A));
+        assertEquals(0.0, ranking.getTotal(B), 0.0);
+
+        // Slots are reassigned from scratch and totals do not carry over
+        ranking.add(B, 1.0);
+        ranking.add(A, 2.0);
+        assertRanking(ranking, A, B);
+        assertEquals(0, ranking.getSlot(B));
+        assertEquals(2.0, ranking.getTotal(A), 0.0);
+    }
+
+    @Test
+    public void testMatchesSortedTotals() {
+        SplittableRandom random = new SplittableRandom(0x7A4L);
+        UUID[] damagers = new UUID[100];
+        for (int i = 0; i < damagers.length; i++) {
+            damagers[i] = new UUID(random.nextLong(), random.nextLong());
+        }
+
+        // Rankings are reused across rounds to check that clearing leaves no stale tree nodes
+        DamageRanking ranking = new DamageRanking();
+        for (int round = 0; round < 3; round++) {
+            Map<UUID, Double> totals = new LinkedHashMap<>();
+
+            for (int hit = 0; hit < 5000; hit++) {
+                UUID damager = damagers[random.nextInt(damagers.length)];
+                double damage = random.nextInt(8) + 1; // Integral damage such that ties occur
+                ranking.add(damager, damage);
+                totals.merge(damager, damage, Double::sum);
+
+                if (hit % 250 == 0) {
+                    assertMatches(ranking, totals);
+                }
+            }
+
+            assertMatches(ranking, totals);
+            ranking.clear();
+        }
+    }
+
+    private static void assertRanking(DamageRanking ranking, UUID... expected) {
+        assertEquals(expected.length, ranking.size());
+        for (int rank = 0; rank < expected.length; rank++) {
+            assertEquals("rank " + rank, expected[rank], ranking.getDamager(rank));
+            assertEquals("rank " + rank, ranking.getDamager(rank), ranking.getDamagerInSlot(ranking.getSlotAt(rank)));
+        }
+    }
+
+    // Insertion order of the map is the order of first damage, which breaks ties
+    private static void assertMatches(DamageRanking ranking, Map<UUID, Double> totals) {
+        List<Map.Entry<UUID, Double>> expected = new ArrayList<>(totals.entrySet());
+        expected.sort(Comparator.comparing(Map.Entry<UUID, Double>::getValue).reversed());
+
+        assertEquals(expected.size(), ranking.size());
+        for (int rank = 0; rank < expected.size(); rank++) {
+            assertEquals("rank " + rank, expected.get(rank).getKey(), ranking.getDamager(rank));
+            assertEquals("rank " + rank, expected.get(rank).getValue(), ranking.getTotal(rank), 0.0);
+        }
+    }
+
+}
@@ -0,0 +1,164 @@
+package wtf.choco.dragoneggdrop.dragon;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for the windows and peaks of {@link DamageTimeline}.
+ *
+ * @author Parker Hawke - Choco
+ */
+public class DamageTimelineTest {
+
+    private static final double EPSILON = 1E-9;
+
+    @Test
+    public void testWindowEdges() {
+        DamageTimeline timeline = new DamageTimeline();
+        timeline.record(0, 5.0, 10_000L);
+        timeline.record(0, 3.0, 10_999L);
+        timeline.record(0, 2.0, 11_000L);
+
+        // The window includes the current second and ends at the start of the oldest second it covers
+        assertEquals(2.0, timeline.getRecentDamage(0, 1, 11_500L), 0.0);
+        assertEquals(10.0, timeline.getRecentDamage(0, 2, 11_500L), 0.0);
+        assertEquals(0.0, timeline.getRecentDamage(0, 1, 12_000L), 0.0);
+        assertEquals(2.0, timeline.getRecentDamage(0, 2, 12_999L), 0.0);
+
+        // The widest window reaches back exactly WINDOW_SECONDS seconds
+        assertEquals(10.0, timeline.getRecentDamage(0, DamageTimeline.WINDOW_SECONDS, 69_999L), 0.0);
+        assertEquals(2.0, timeline.getRecentDamage(0, DamageTimeline.WINDOW_SECONDS, 70_000L), 0.0);
+        assertEquals(0.0, timeline.getRecentDamage(0, DamageTimeline.WINDOW_SECONDS, 71_000L), 0.0);
+    }
+
+    @Test
+    public void testPeakAcrossSecondBoundaries() {
+        DamageTimeline timeline = new DamageTimeline();
+
+        // Four hits within 900 milliseconds, but split evenly over two seconds of the clock
+        timeline.record(0, 1.0, 10_500L);
+        timeline.record(0, 1.0, 10_900L);
+        timeline.record(0, 1.0, 11_100L);
+        timeline.record(0, 1.0, 11_400L);
+        assertEquals(2.0, timeline.getPeakDamagePerSecond(0), 0.0);
+
+        timeline.record(1, 3.0, 12_000L);
+        assertEquals(2.0, timeline.getPeakDamagePerSecond(0), 0.0);
+        assertEquals(3.0, timeline.getPeakDamagePerSecond(1), 0.0);
+        assertEquals(3.0, timeline.getPeakDamagePerSecond(), 0.0);
+
+        // A late hit counts towards the second in which it was dealt
+        timeline.record(0, 1.5, 10_999L);
+        assertEquals(3.5, timeline.getPeakDamagePerSecond(0), 0.0);
+        assertEquals(3.5, timeline.getPeakDamagePerSecond(), 0.0);
+        assertEquals(11_400L, timeline.getLastTimestamp(0)); // Unaffected by the late hit's timestamp
+    }
+
+    @Test
+    public void testGapLongerThanWindow() {
+        DamageTimeline timeline = new DamageTimeline();
+        timeline.record(0, 4.0, 1_000L);
+        timeline.record(0, 6.0, 500_000L);
+
+        assertEquals(6.0, timeline.getRecentDamage(0, DamageTimeline.WINDOW_SECONDS, 500_000L), 0.0);
+        assertEquals(6.0, timeline.getRecentDamage(DamageTimeline.WINDOW_SECONDS, 500_000L), 0.0);
+        assertEquals(6.0, timeline.getPeakDamagePerSecond(0), 0.0);
+    }
+
+    @Test
+    public void testUnknownSlot() {
+        DamageTimeline timeline = new DamageTimeline();
+        timeline.record(0, 1.0, 1_000L);
+
+        assertEquals(0.0, timeline.getRecentDamage(100, 10, 1_000L), 0.0);
+        assertEquals(0.0, timeline.getPeakDamagePerSecond(100), 0.0);
+        assertEquals(0L, timeline.getLastTimestamp(100));
+    }
+
+    @Test
+    public void testClear() {
+        DamageTimeline timeline = new DamageTimeline();
+        timeline.record(0, 5.0, 10_000L);
+        timeline.clear();
+
+        assertEquals(0.0, timeline.getRecentDamage(0, 1, 10_000L), 0.0);
+        assertEquals(0.0, timeline.getPeakDamagePerSecond(), 0.0);
+
+        timeline.record(0, 1.0, 20_000L);
+        assertEquals(1.0, timeline.getRecentDamage(0, DamageTimeline.WINDOW_SECONDS, 20_000L), 0.0);
+        assertEquals(1.0, timeline.getPeakDamagePerSecond(0), 0.0);
+    }
+
+    @Test
+    public void testMatchesNaiveScan() {
+        SplittableRandom random = new SplittableRandom(0x71AEL);
+        DamageTimeline timeline = new DamageTimeline();
+        List<long[]> hits = new ArrayList<>(); // { slot, damage bits, timestamp }
+
+        long time = 1_000_000L, latest = time;
+        for (int hit = 0; hit < 3000; hit++) {
+            int gap = random.nextInt(100);
+            if (gap == 0) {
+                time += random.nextInt(200_000); // Gaps longer than the window
+            }
+            else if (gap < 10) {
+                time -= random.nextInt(5_000); // Hits recorded out of order
+            }
+            else {
+                time += random.nextInt(400);
+            }
+
+            int slot = random.nextInt(20);
+            double damage = random.nextInt(1, 100) / 4.0;
+            timeline.record(slot, damage, time);
+            hits.add(new long[] { slot, Double.doubleToLongBits(damage), time });
+            latest = Math.max(latest, time);
+
+            if (hit % 50 != 0) {
+                continue;
+            }
+
+            long now = latest + random.nextInt(3000);
+            for (int seconds : new int[] { 1, 2, 10, DamageTimeline.WINDOW_SECONDS }) {
+                assertEquals(naiveRecentDamage(hits, -1, seconds, now), timeline.getRecentDamage(seconds, now), EPSILON);
+                assertEquals(naiveRecentDamage(hits, slot, seconds, now), timeline.getRecentDamage(slot, seconds, now), EPSILON);
+            }
+
+            assertEquals(naivePeak(hits, -1), timeline.getPeakDamagePerSecond(), EPSILON);
+            assertEquals(naivePeak(hits, slot), timeline.getPeakDamagePerSecond(slot), EPSILON);
+        }
+    }
+
+    private static double naiveRecentDamage(List<long[]> hits, int slot, int seconds, long now) {
+        long nowSecond = Math.floorDiv(now, 1000L);
+
+        double damage = 0.0;
+        for (long[] hit : hits) {
+            long second = Math.floorDiv(hit[2], 1000L);
+            if ((slot < 0 || hit[0] == slot) && second > nowSecond - seconds && second <= nowSecond) {
+                damage += Double.longBitsToDouble(hit[1]);
+            }
+        }
+
+        return damage;
+    }
+
+    private static double naivePeak(List<long[]> hits, int slot) {
+        Map<Long, Double> perSecond = new HashMap<>();
+        for (long[] hit : hits) {
+            if (slot < 0 || hit[0] == slot) {
+                perSecond.merge(Math.floorDiv(hit[2], 1000L), Double.longBitsToDouble(hit[1]), Double::sum);
+            }
+        }
+
+        return perSecond.values().stream().mapToDouble(Double::doubleValue).max().orElse(0.0);
+    }
+
+}
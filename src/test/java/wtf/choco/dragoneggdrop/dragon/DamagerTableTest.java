@@ -0,0 +1,88 @@
+package wtf.choco.dragoneggdrop.dragon;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for the growth and collision handling of {@link DamagerTable}.
+ *
+ * @author Parker Hawke - Choco
+ */
+public class DamagerTableTest {
+
+    @Test
+    public void testSlotsAssignedInOrder() {
+        DamagerTable table = new DamagerTable();
+        assertEquals(0, table.getOrAdd(1L, 2L));
+        assertEquals(1, table.getOrAdd(2L, 1L));
+        assertEquals(0, table.getOrAdd(1L, 2L));
+        assertEquals(2, table.getOrAdd(0L, 0L)); // The nil UUID is a valid key
+
+        assertEquals(3, table.size());
+        assertEquals(1, table.get(2L, 1L));
+        assertEquals(2, table.get(0L, 0L));
+        assertEquals(-1, table.get(1L, 1L));
+    }
+
+    @Test
+    public void testGrowthKeepsAllSlots() {
+        SplittableRandom random = new SplittableRandom(0x7AB1EL);
+        DamagerTable table = new DamagerTable();
+        Map<UUID, Integer> expected = new HashMap<>();
+
+        // Well beyond several doublings of the initial capacity
+        for (int i = 0; i < 10_000; i++) {
+            UUID damager = new UUID(random.nextLong(), random.nextLong());
+            expected.put(damager, i);
+            assertEquals(i, table.getOrAdd(damager.getMostSignificantBits(), damager.getLeastSignificantBits()));
+        }
+
+        assertEquals(expected.size(), table.size());
+        expected.forEach((damager, slot) -> {
+            assertEquals(slot.intValue(), table.get(damager.getMostSignificantBits(), damager.getLeastSignificantBits()));
+            assertEquals(slot.intValue(), table.getOrAdd(damager.getMostSignificantBits(), damager.getLeastSignificantBits()));
+        });
+
+        assertEquals(expected.size(), table.size());
+    }
+
+    @Test
+    public void testCollidingKeys() {
+        DamagerTable table = new DamagerTable();
+
+        // Every key whose most significant bits are its least significant bits rotated by 32 hashes identically
+        for (int i = 0; i < 200; i++) {
+            assertEquals(i, table.getOrAdd(Long.rotateLeft(i, 32), i));
+        }
+
+        for (int i = 0; i < 200; i++) {
+            assertEquals(i, table.get(Long.rotateLeft(i, 32), i));
+        }
+
+        assertEquals(-1, table.get(Long.rotateLeft(200, 32), 200));
+        assertEquals(-1, table.get(Long.rotateLeft(1, 32), 2));
+    }
+
+    @Test
+    public void testClear() {
+        DamagerTable table = new DamagerTable();
+        for (int i = 0; i < 100; i++) {
+            table.getOrAdd(i, i);
+        }
+
+        table.clear();
+        assertEquals(0, table.size());
+        assertEquals(-1, table.get(5L, 5L));
+
+        assertEquals(0, table.getOrAdd(5L, 5L));
+        assertEquals(1, table.getOrAdd(0L, 0L));
+        assertEquals(2, table.size());
+    }
+
+}
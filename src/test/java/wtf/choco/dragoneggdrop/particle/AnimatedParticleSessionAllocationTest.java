@@ -0,0 +1,101 @@
+package wtf.choco.dragoneggdrop.particle;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Allocation regression tests for the steady state of {@link AnimatedParticleSession#tick()}.
+ * Frames are displayed through a scheduler with a level of detail in a world without players
+ * such that the stub world itself allocates nothing. {@link AnimatedParticleSession#shouldStop()}
+ * is excluded as its periodic rescan queries blocks, which are created on every query.
+ *
+ * @author Parker Hawke - Choco
+ */
+public class AnimatedParticleSessionAllocationTest {
+
+    private static final int WARMUP_TICKS = 2 * ParticleTrack.MAX_TICKS;
+    private static final int MEASURED_TICKS = 1000;
+
+    private com.sun.management.ThreadMXBean threadBean;
+    private ParticleScheduler scheduler;
+    private ParticleTestSupport.StubWorld world;
+
+    @Before
+    public void setup() {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+
+        this.threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        this.threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        this.scheduler = new ParticleScheduler(Logger.getLogger("AnimatedParticleSessionAllocationTest"), ParticleScheduler.UNLIMITED, ParticleScheduler.UNLIMITED);
+        this.scheduler.setLevelOfDetail(new ParticleLevelOfDetail(64, 256));
+        this.world = new ParticleTestSupport.StubWorld(0);
+    }
+
+    @Test
+    public void testTrackedTickDoesNotAllocate() {
+        List<ConditionalEquationData> equationData = Collections.singletonList(ParticleTestSupport.equationData("sin(theta)", "cos(theta)", 4));
+        ParticleShapeDefinition shape = new ParticleShapeDefinition("tracked", 10_000, equationData);
+        assertTrue(shape.isPrecomputed());
+
+        // Recording the track is a one time cost of the shape. Record it in full before replaying it
+        AnimatedParticleSession recording = shape.createSession(world.getWorld(), 0.5, 0.5);
+        for (int tick = 0; tick < ParticleTrack.MAX_TICKS; tick++) {
+            recording.tick();
+        }
+
+        // The track covers every tick of the warmup and measurement
+        AnimatedParticleSession session = shape.createSession(world.getWorld(), 0.5, 0.5);
+        assertEquals(0, measureAllocatedBytes(session, ParticleTrack.MAX_TICKS - MEASURED_TICKS));
+    }
+
+    @Test
+    public void testLiveTickDoesNotAllocate() {
+        List<ConditionalEquationData> equationData = Collections.singletonList(ParticleTestSupport.equationData("t * sin(theta)", "t * cos(theta)", 16));
+        ParticleShapeDefinition shape = new ParticleShapeDefinition("live", 10_000, equationData);
+
+        AnimatedParticleSession session = new AnimatedParticleSession(shape, equationData, null, null, world.getWorld(), 0.5, 10_000, 0.5);
+        assertEquals(0, measureAllocatedBytes(session, WARMUP_TICKS));
+    }
+
+    @Test
+    public void testTickPastTrackDoesNotAllocate() {
+        List<ConditionalEquationData> equationData = Collections.singletonList(ParticleTestSupport.equationData("t * sin(theta)", "t * cos(theta)", 100));
+        ParticleShapeDefinition shape = new ParticleShapeDefinition("capped", 10_000, equationData);
+        assertTrue(shape.isPrecomputed());
+
+        // The track of this shape is capped well before the warmup ends
+        AnimatedParticleSession session = shape.createSession(world.getWorld(), 0.5, 0.5);
+        assertEquals(0, measureAllocatedBytes(session, WARMUP_TICKS));
+    }
+
+    private long measureAllocatedBytes(AnimatedParticleSession session, int warmupTicks) {
+        session.setScheduler(scheduler);
+
+        for (int tick = 0; tick < warmupTicks; tick++) {
+            session.tick();
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int tick = 0; tick < MEASURED_TICKS; tick++) {
+            session.tick();
+        }
+
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        // Reading the counter may itself allocate a few bytes, but never an amount proportional to the ticks measured
+        return (allocated < MEASURED_TICKS) ? 0 : allocated;
+    }
+
+}
@@ -0,0 +1,94 @@
+package wtf.choco.dragoneggdrop.particle;
+
+import java.util.Collections;
+import java.util.concurrent.Executor;
+
+import org.junit.Test;
+
+import wtf.choco.dragoneggdrop.particle.condition.EquationConditionDoubleComparison;
+import wtf.choco.dragoneggdrop.particle.condition.EquationConditionWorld;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link AnimatedParticleSession}.
+ *
+ * @author Parker Hawke - Choco
+ */
+public class AnimatedParticleSessionTest {
+
+    private static final Executor DIRECT_EXECUTOR = Runnable::run;
+
+    @Test
+    public void testThreadSafeShapeComputesAsync() {
+        ConditionalEquationData data = ParticleTestSupport.equationData("sin(theta)", "cos(theta)", 4);
+        data.addCondition(new EquationConditionWorld("test"));
+        data.addCondition(new EquationConditionDoubleComparison(ParticleVariables.SLOT_T, 10, (queried, value) -> queried < value));
+
+        ParticleShapeDefinition shape = new ParticleShapeDefinition("safe", 128, Collections.singletonList(data));
+        assertTrue(shape.isThreadSafe());
+
+        AnimatedParticleSession session = shape.createSession(new ParticleTestSupport.StubWorld(0).getWorld(), 0.5, 0.5);
+        session.computeAsync(DIRECT_EXECUTOR);
+        assertTrue(session.isAsync());
+    }
+
+    @Test
+    public void testWorldQueryingShapeStaysOnMainThread() {
+        ConditionalEquationData data = ParticleTestSupport.equationData("sin(theta)", "cos(theta)", 4);
+        data.addCondition(new EquationConditionDoubleComparison(context -> context.getWorld().getTime(), 1000, (queried, value) -> queried < value));
+
+        ParticleShapeDefinition shape = new ParticleShapeDefinition("unsafe", 128, Collections.singletonList(data));
+        assertFalse(shape.isThreadSafe());
+
+        AnimatedParticleSession session = shape.createSession(new ParticleTestSupport.StubWorld(0).getWorld(), 0.5, 0.5);
+        session.computeAsync(DIRECT_EXECUTOR);
+        assertFalse(session.isAsync());
+
+        session.tick(); // Frames are computed and displayed synchronously
+    }
+
+    @Test
+    public void testStopLevelRemovedWithoutEventIsConfirmed() {
+        ParticleTestSupport.StubWorld world = new ParticleTestSupport.StubWorld(60);
+        AnimatedParticleSession session = createSession(world, 60.5);
+        assertTrue(session.shouldStop());
+
+        world.setFloor(-1);
+        assertFalse(session.shouldStop());
+    }
+
+    @Test
+    public void testStopLevelPlacedWithoutEventIsRescanned() {
+        ParticleTestSupport.StubWorld world = new ParticleTestSupport.StubWorld(0);
+        AnimatedParticleSession session = createSession(world, 64.5);
+        assertFalse(session.shouldStop());
+
+        world.setFloor(64);
+
+        boolean stopped = false;
+        for (int tick = 0; tick < 20 && !stopped; tick++) {
+            stopped = session.shouldStop();
+        }
+
+        assertTrue(stopped);
+    }
+
+    @Test
+    public void testStopLevelPlacedWithEventIsRescannedImmediately() {
+        ParticleTestSupport.StubWorld world = new ParticleTestSupport.StubWorld(0);
+        AnimatedParticleSession session = createSession(world, 64.5);
+        assertFalse(session.shouldStop());
+
+        world.setFloor(64);
+        AnimatedParticleSession.notifyBlockChange(world.getBlock(0, 64, 0));
+        assertTrue(session.shouldStop());
+    }
+
+    private static AnimatedParticleSession createSession(ParticleTestSupport.StubWorld world, double y) {
+        ParticleShapeDefinition shape = new ParticleShapeDefinition("column", 128, Collections.singletonList(ParticleTestSupport.equationData("sin(theta)", "cos(theta)", 4)));
+        return shape.createSession(world.getWorld(), 0.5, y, 0.5);
+    }
+
+}
@@ -0,0 +1,88 @@
+package wtf.choco.dragoneggdrop.particle;
+
+import org.bukkit.Location;
+import org.bukkit.Particle;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the merging of overlapping points by {@link ParticleBatcher}.
+ *
+ * @author Parker Hawke - Choco
+ */
+public class ParticleBatcherTest {
+
+    private final ConditionalEquationData equationData = ParticleTestSupport.equationData("sin(theta)", "cos(theta)", 4);
+    private final ParticleTestSupport.StubWorld world = new ParticleTestSupport.StubWorld(0);
+    private final ParticleBatcher batcher = new ParticleBatcher(0.5);
+
+    @Test
+    public void testPointsOfSameFrameAreNotMerged() {
+        this.batcher.beginFrame(world.getWorld(), equationData, 0, 64, 0);
+        assertTrue(batcher.addPoint(0.1, 64, 0.1, 0));
+        assertTrue(batcher.addPoint(0.2, 64, 0.2, 1));
+        assertTrue(batcher.addPoint(0.3, 64, 0.3, 2));
+
+        assertEquals(0, flush());
+        assertEquals(3, world.getSpawned().size());
+    }
+
+    @Test
+    public void testPointsOfDifferentFramesAreMerged() {
+        this.batcher.beginFrame(world.getWorld(), equationData, 0, 64, 0);
+        assertTrue(batcher.addPoint(0.1, 64, 0.1, 0));
+        assertTrue(batcher.addPoint(0.2, 64, 0.2, 1));
+
+        // Each of the first frame's points absorbs one point of this frame, the third is kept
+        this.batcher.beginFrame(world.getWorld(), equationData, 0, 64, 0);
+        assertFalse(batcher.addPoint(0.1, 64, 0.1, 0));
+        assertFalse(batcher.addPoint(0.2, 64, 0.2, 1));
+        assertTrue(batcher.addPoint(0.3, 64, 0.3, 2));
+
+        // The kept point of the second frame may absorb a point of the third
+        this.batcher.beginFrame(world.getWorld(), equationData, 0, 64, 0);
+        for (int i = 0; i < 3; i++) {
+            assertFalse(batcher.addPoint(0.1, 64, 0.1, i));
+        }
+
+        assertEquals(5, flush());
+        assertEquals(3, world.getSpawned().size());
+    }
+
+    @Test
+    public void testDifferentParticlesAreNotMerged() {
+        ConditionalEquationData other = ParticleTestSupport.equationData("sin(theta)", "cos(theta)", 4);
+        other.particle = Particle.SMOKE_NORMAL;
+
+        this.batcher.beginFrame(world.getWorld(), equationData, 0, 64, 0);
+        assertTrue(batcher.addPoint(0.1, 64, 0.1, 0));
+        this.batcher.beginFrame(world.getWorld(), other, 0, 64, 0);
+        assertTrue(batcher.addPoint(0.1, 64, 0.1, 0));
+
+        assertEquals(0, flush());
+        assertEquals(2, world.getSpawned().size());
+    }
+
+    @Test
+    public void testBatcherIsResetAfterFlush() {
+        for (int tick = 0; tick < 2; tick++) {
+            this.batcher.beginFrame(world.getWorld(), equationData, 0, 64, 0);
+            for (int i = 0; i < 100; i++) {
+                assertTrue(batcher.addPoint(i, 64, 0.1, i));
+            }
+
+            assertEquals(0, flush());
+            assertTrue(batcher.isEmpty());
+        }
+
+        assertEquals(200, world.getSpawned().size());
+    }
+
+    private int flush() {
+        return batcher.flush(null, new Location(null, 0, 0, 0));
+    }
+
+}
@@ -0,0 +1,86 @@
+package wtf.choco.dragoneggdrop.particle;
+
+import java.util.logging.Logger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for the budgets enforced by {@link ParticleScheduler}.
+ *
+ * @author Parker Hawke - Choco
+ */
+public class ParticleSchedulerTest {
+
+    private static final Logger LOGGER = Logger.getLogger("ParticleSchedulerTest");
+
+    private final ConditionalEquationData equationData = ParticleTestSupport.equationData("sin(theta)", "cos(theta)", 4);
+
+    @Test
+    public void testPacketsAreWeightedByViewers() {
+        ParticleTestSupport.StubWorld world = new ParticleTestSupport.StubWorld(0);
+        for (int i = 0; i < 4; i++) {
+            world.addPlayer(i * 10, 64, 0);
+        }
+
+        world.addPlayer(10_000, 64, 0); // Out of range of forced particles
+
+        ParticleScheduler scheduler = new ParticleScheduler(LOGGER, ParticleScheduler.UNLIMITED, 100);
+        scheduler.submit(world.getWorld(), equationData, 0, 64, 0, new double[100], 0, 100);
+        scheduler.tick();
+
+        // 50 points sent to 4 viewers would be 200 packets
+        assertEquals(25, world.getSpawned().size());
+        assertEquals(1, scheduler.getThinnedFrames());
+    }
+
+    @Test
+    public void testFramesWithoutViewersCostNoPackets() {
+        ParticleTestSupport.StubWorld world = new ParticleTestSupport.StubWorld(0);
+
+        ParticleScheduler scheduler = new ParticleScheduler(LOGGER, ParticleScheduler.UNLIMITED, 10);
+        scheduler.submit(world.getWorld(), equationData, 0, 64, 0, new double[100], 0, 100);
+        scheduler.tick();
+
+        assertEquals(50, world.getSpawned().size());
+        assertEquals(0, scheduler.getThinnedFrames());
+    }
+
+    @Test
+    public void testPacketsAreWeightedByLevelOfDetail() {
+        ParticleTestSupport.StubWorld world = new ParticleTestSupport.StubWorld(0);
+        ParticleTestSupport.StubPlayer near = world.addPlayer(0, 64, 0), far = world.addPlayer(15, 64, 0);
+
+        ParticleScheduler scheduler = new ParticleScheduler(LOGGER, ParticleScheduler.UNLIMITED, 30);
+        scheduler.setLevelOfDetail(new ParticleLevelOfDetail(10, 100)); // The far player is shown every second point
+        scheduler.submit(world.getWorld(), equationData, 0, 64, 0, new double[100], 0, 100);
+        scheduler.tick();
+
+        // 20 points cost 20 packets for the near player and 10 for the far player
+        assertEquals(20, near.getReceived());
+        assertEquals(10, far.getReceived());
+    }
+
+    @Test
+    public void testPacketBudgetIsSharedFairly() {
+        ParticleTestSupport.StubWorld crowded = new ParticleTestSupport.StubWorld(0), empty = new ParticleTestSupport.StubWorld(0), single = new ParticleTestSupport.StubWorld(0);
+        for (int i = 0; i < 10; i++) {
+            crowded.addPlayer(0, 64, i);
+        }
+
+        single.addPlayer(0, 64, 0);
+
+        ParticleScheduler scheduler = new ParticleScheduler(LOGGER, ParticleScheduler.UNLIMITED, 100);
+        scheduler.submit(crowded.getWorld(), equationData, 0, 64, 0, new double[100], 0, 100);
+        scheduler.submit(empty.getWorld(), equationData, 0, 64, 0, new double[100], 0, 100);
+        scheduler.submit(single.getWorld(), equationData, 0, 64, 0, new double[40], 0, 40);
+        scheduler.tick();
+
+        // The frame without viewers is free, the single viewer takes 20 packets and the crowded frame receives the remaining 80
+        assertEquals(50, empty.getSpawned().size());
+        assertEquals(20, single.getSpawned().size());
+        assertEquals(8, crowded.getSpawned().size());
+    }
+
+}
@@ -0,0 +1,412 @@
+package wtf.choco.dragoneggdrop.particle;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.UUID;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.Particle;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A headless renderer for {@link ParticleShapeDefinition ParticleShapeDefinitions}. Loads a
+ * shape from its JSON file and simulates a session of it against a stub world, without a
+ * server, in order to budget shapes before they are deployed.
+ * <p>
+ * The stub world has a layer of bedrock at the floor's y coordinate on which the animation
+ * stops, and is otherwise empty. The session is first run once to record its point cloud, and
+ * then run again the requested amount of times to measure the time spent evaluating frames.
+ * Sessions are released after each run, such that later runs measure reused sessions.
+ * Timings include the (negligible) cost of handing points to the stub world.
+ * <p>
+ * Precomputed shapes evaluate their expressions only once, while recording the track shared
+ * by all of their sessions, such that later runs merely replay it. With {@code --cold}, the
+ * shape is loaded anew before each run in order to measure the evaluation of its track.
+ * <p>
+ * This is a development tool and is not shipped with the plugin. Run it from the compiled
+ * test classes (i.e. after {@code mvn test-compile}):
+ *
+ * <pre>
+ * java -cp target/classes:target/test-classes:spigot-api.jar wtf.choco.dragoneggdrop.particle.ParticleShapeBenchmark
+ *     &lt;shape.json&gt; [--csv &lt;file&gt;] [--floor &lt;y&gt;] [--runs &lt;count&gt;] [--max-ticks &lt;ticks&gt;] [--cold]
+ *     [--random &lt;type&gt;] [--seed &lt;seed&gt;] [--trigonometry &lt;strict|intrinsic|table&gt;] [--resolution &lt;entries&gt;]
+ * </pre>
+ *
+ * The shape's random source may be overridden with {@code --random} and {@code --seed} in order
+ * to compare the cost of each {@link ParticleRandom.Type}. Likewise, the trigonometry of all of
+ * the shape's equations may be overridden with {@code --trigonometry} and the size of its sine
+ * table with {@code --resolution} in order to compare the cost of each trigonometry mode.
+ *
+ * The point cloud is written as CSV with one row per point in the form
+ * {@code tick,frame,x,y,z,particle,amount}.
+ *
+ * @author Parker Hawke - Choco
+ */
+public final class ParticleShapeBenchmark {
+
+    private static final int DEFAULT_FLOOR = 0;
+    private static final int DEFAULT_RUNS = 10;
+    private static final int DEFAULT_MAX_TICKS = 20 * 60 * 10;
+
+    private final StubWorld world;
+    private final int maxTicks;
+
+    private ParticleShapeBenchmark(int floor, int maxTicks) {
+        this.world = new StubWorld(floor);
+        this.maxTicks = maxTicks;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: <shape.json> [--csv <file>] [--floor <y>] [--runs <count>] [--max-ticks <ticks>] [--cold] [--random <type>] [--seed <seed>] [--trigonometry <strict|intrinsic|table>] [--resolution <entries>]");
+            System.exit(1);
+        }
+
+        File shapeFile = new File(args[0]);
+        File csvFile = null;
+        int floor = DEFAULT_FLOOR, runs = DEFAULT_RUNS, maxTicks = DEFAULT_MAX_TICKS;
+        ParticleRandom.Type randomType = null;
+        Long randomSeed = null;
+        String trigonometry = null;
+        Integer trigonometryResolution = null;
+        boolean cold = false;
+
+        for (int i = 1; i < args.length; i++) {
+            String option = args[i];
+            if (option.equals("--cold")) {
+                cold = true;
+                continue;
+            }
+
+            if (i + 1 >= args.length) {
+                System.err.println("Missing value for option " + option);
+                System.exit(1);
+            }
+
+            String value = args[++i];
+            switch (option) {
+                case "--csv": csvFile = new File(value); break;
+                case "--floor": floor = Integer.parseInt(value); break;
+                case "--runs": runs = Math.max(Integer.parseInt(value), 1); break;
+                case "--max-ticks": maxTicks = Math.max(Integer.parseInt(value), 1); break;
+                case "--random":
+                    randomType = ParticleRandom.Type.getByName(value);
+                    if (randomType == null) {
+                        System.err.println("Unknown random type " + value + ". Expected java, splittable or xorshift");
+                        System.exit(1);
+                    }
+
+                    break;
+                case "--seed": randomSeed = Long.parseLong(value); break;
+                case "--trigonometry":
+                    trigonometry = value.toLowerCase(Locale.ROOT);
+                    if (!trigonometry.equals("strict") && !trigonometry.equals("intrinsic") && !trigonometry.equals("table")) {
+                        System.err.println("Unknown trigonometry " + value + ". Expected strict, intrinsic or table");
+                        System.exit(1);
+                    }
+
+                    break;
+                case "--resolution": trigonometryResolution = Integer.parseInt(value); break;
+                default:
+                    System.err.println("Unknown option " + option);
+                    System.exit(1);
+            }
+        }
+
+        ParticleShapeDefinition shape = loadShape(shapeFile, randomType, randomSeed, trigonometry, trigonometryResolution);
+        ParticleShapeBenchmark benchmark = new ParticleShapeBenchmark(floor, maxTicks);
+
+        Result result = benchmark.run(shape, true);
+        long evaluationNanos = 0;
+        for (int i = 0; i < runs; i++) {
+            if (cold) {
+                shape = loadShape(shapeFile, randomType, randomSeed, trigonometry, trigonometryResolution);
+            }
+
+            evaluationNanos += benchmark.run(shape, false).evaluationNanos;
+        }
+
+        result.print(System.out, shape, evaluationNanos / runs);
+        if (cold) {
+            System.out.println("Evaluation time includes the evaluation of the shape's track (--cold)");
+        }
+
+        if (trigonometry != null || trigonometryResolution != null) {
+            System.out.println("Trigonometry: " + ((trigonometry != null) ? trigonometry : "as defined by the shape") + ((trigonometryResolution != null) ? " (resolution " + trigonometryResolution + ")" : ""));
+        }
+
+        if (csvFile != null) {
+            benchmark.world.writeCsv(csvFile);
+            System.out.println("Point cloud written to " + csvFile.getPath());
+        }
+    }
+
+    @NotNull
+    private static ParticleShapeDefinition loadShape(@NotNull File shapeFile, @Nullable ParticleRandom.Type randomType, @Nullable Long randomSeed, @Nullable String trigonometry, @Nullable Integer resolution) throws IOException {
+        ParticleShapeDefinition shape = (trigonometry != null || resolution != null) ? loadWithTrigonometry(shapeFile, trigonometry, resolution) : ParticleShapeDefinition.fromFile(shapeFile);
+        if (randomType != null || randomSeed != null) {
+            shape.setRandomSource((randomType != null) ? randomType : shape.getRandomType(), (randomSeed != null) ? randomSeed : shape.getRandomSeed());
+        }
+
+        return shape;
+    }
+
+    // Overrides the trigonometry of the shape and of each of its equations in a copy of its file, named alike such that the shape's id is kept
+    @NotNull
+    private static ParticleShapeDefinition loadWithTrigonometry(@NotNull File shapeFile, @Nullable String trigonometry, @Nullable Integer resolution) throws IOException {
+        Gson gson = new Gson();
+        JsonObject root = gson.fromJson(new String(Files.readAllBytes(shapeFile.toPath()), StandardCharsets.UTF_8), JsonObject.class);
+        overrideTrigonometry(root.getAsJsonObject("arguments"), trigonometry, resolution);
+
+        if (root.has("equations")) {
+            for (JsonElement equation : root.getAsJsonArray("equations")) {
+                if (equation.isJsonObject() && equation.getAsJsonObject().has("arguments")) {
+                    overrideTrigonometry(equation.getAsJsonObject().getAsJsonObject("arguments"), trigonometry, resolution);
+                }
+            }
+        }
+
+        Path directory = Files.createTempDirectory("shape-benchmark");
+        Path copy = directory.resolve(shapeFile.getName());
+
+        try {
+            Files.write(copy, gson.toJson(root).getBytes(StandardCharsets.UTF_8));
+            return ParticleShapeDefinition.fromFile(copy.toFile());
+        } finally {
+            Files.deleteIfExists(copy);
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    private static void overrideTrigonometry(@Nullable JsonObject arguments, @Nullable String trigonometry, @Nullable Integer resolution) {
+        if (arguments == null) {
+            return;
+        }
+
+        if (trigonometry != null) {
+            arguments.addProperty("trigonometry", trigonometry);
+        }
+
+        if (resolution != null) {
+            arguments.addProperty("trigonometry_resolution", resolution);
+        }
+    }
+
+    @NotNull
+    private Result run(@NotNull ParticleShapeDefinition shape, boolean record) {
+        this.world.reset(record);
+
+        AnimatedParticleSession session = shape.createSession(world.getWorld(), 0.5, 0.5);
+        Result result = new Result();
+
+        for (int tick = 0; tick < maxTicks && !session.shouldStop(); tick++) {
+            this.world.tick = tick;
+            int points = world.pointCount, particles = world.particleCount;
+
+            long start = System.nanoTime();
+            session.tick();
+            result.evaluationNanos += System.nanoTime() - start;
+
+            result.ticks++;
+            points = world.pointCount - points;
+            particles = world.particleCount - particles;
+
+            if (points > 0) {
+                this.world.frame++;
+                result.frames++;
+                result.minPointsPerFrame = Math.min(result.minPointsPerFrame, points);
+                result.maxPointsPerFrame = Math.max(result.maxPointsPerFrame, points);
+            }
+
+            result.peakParticlesPerTick = Math.max(result.peakParticlesPerTick, particles);
+        }
+
+        result.points = world.pointCount;
+        result.particles = world.particleCount;
+        result.finalY = session.getCurrentY();
+        shape.releaseSession(session);
+        return result;
+    }
+
+    private static final class Result {
+
+        private int ticks, frames;
+        private long points, particles;
+        private int minPointsPerFrame = Integer.MAX_VALUE, maxPointsPerFrame;
+        private int peakParticlesPerTick;
+        private long evaluationNanos;
+        private double finalY;
+
+        private void print(@NotNull PrintStream out, @NotNull ParticleShapeDefinition shape, long averageEvaluationNanos) {
+            out.println("Shape: " + shape.getId() + (shape.isPrecomputed() ? " (precomputed)" : " (evaluated live)"));
+            out.println("Random: " + shape.getRandomType().getName() + ((shape.getRandomSeed() != null) ? " (seed " + shape.getRandomSeed() + ")" : " (unseeded)"));
+            out.printf(Locale.ROOT, "Ticks simulated: %d (from y = %.2f to y = %.2f)%n", ticks, shape.getStartY(), finalY);
+            out.println("Total frames: " + frames);
+            out.println("Points per frame: " + ((frames > 0) ? minPointsPerFrame + " - " + maxPointsPerFrame : "n/a") + " (" + points + " total)");
+            out.println("Particles: " + particles + " total, " + peakParticlesPerTick + " peak per tick");
+            out.printf(Locale.ROOT, "Evaluation time: %.3f ms per session, %.3f us per frame%n", averageEvaluationNanos / 1_000_000.0, (frames > 0) ? averageEvaluationNanos / 1_000.0 / frames : 0.0);
+        }
+
+    }
+
+    // A world of air with a single layer of bedrock that records the particles spawned in it
+    private static final class StubWorld {
+
+        private static final UUID WORLD_ID = new UUID(0L, 0L);
+
+        private final World world;
+        private final Block bedrock, air;
+
+        private int tick, frame;
+        private int pointCount, particleCount;
+        private boolean record;
+
+        private int[] pointTick = new int[256], pointFrame = new int[256], pointAmount = new int[256];
+        private double[] pointX = new double[256], pointY = new double[256], pointZ = new double[256];
+        private Particle[] pointParticle = new Particle[256];
+
+        private StubWorld(int floor) {
+            this.world = (World) Proxy.newProxyInstance(World.class.getClassLoader(), new Class<?>[] { World.class }, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getName": return "benchmark";
+                    case "getUID": return WORLD_ID;
+                    case "getMaxHeight": return 256;
+                    case "getPlayers": return Collections.emptyList();
+                    case "getBlockAt": return getBlock((args.length == 3) ? (int) args[1] : ((Location) args[0]).getBlockY(), floor);
+                    case "spawnParticle":
+                        this.spawnParticle(args);
+                        return null;
+                    default: return getDefaultValue(proxy, method, args);
+                }
+            });
+
+            this.bedrock = createBlock(Material.BEDROCK);
+            this.air = createBlock(Material.AIR);
+        }
+
+        @NotNull
+        private World getWorld() {
+            return world;
+        }
+
+        @NotNull
+        private Block getBlock(int y, int floor) {
+            return (y == floor) ? bedrock : air;
+        }
+
+        private void reset(boolean record) {
+            this.record = record;
+            this.tick = 0;
+            this.frame = 0;
+            this.pointCount = 0;
+            this.particleCount = 0;
+        }
+
+        private void spawnParticle(Object @NotNull [] args) {
+            Object location = args[1];
+            double x, y, z;
+            int amount;
+
+            if (location instanceof Number) { // (particle, x, y, z, count, ...)
+                x = (double) args[1];
+                y = (double) args[2];
+                z = (double) args[3];
+                amount = (int) args[4];
+            }
+            else { // (particle, location, count, ...)
+                Location bukkitLocation = (Location) location;
+                x = bukkitLocation.getX();
+                y = bukkitLocation.getY();
+                z = bukkitLocation.getZ();
+                amount = (int) args[2];
+            }
+
+            this.particleCount += Math.max(amount, 1);
+            if (!record) {
+                this.pointCount++;
+                return;
+            }
+
+            if (pointCount == pointX.length) {
+                int capacity = pointCount * 2;
+                this.pointTick = Arrays.copyOf(pointTick, capacity);
+                this.pointFrame = Arrays.copyOf(pointFrame, capacity);
+                this.pointAmount = Arrays.copyOf(pointAmount, capacity);
+                this.pointX = Arrays.copyOf(pointX, capacity);
+                this.pointY = Arrays.copyOf(pointY, capacity);
+                this.pointZ = Arrays.copyOf(pointZ, capacity);
+                this.pointParticle = Arrays.copyOf(pointParticle, capacity);
+            }
+
+            int point = pointCount++;
+            this.pointTick[point] = tick;
+            this.pointFrame[point] = frame;
+            this.pointAmount[point] = amount;
+            this.pointX[point] = x;
+            this.pointY[point] = y;
+            this.pointZ[point] = z;
+            this.pointParticle[point] = (Particle) args[0];
+        }
+
+        private void writeCsv(@NotNull File file) throws IOException {
+            try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+                writer.write("tick,frame,x,y,z,particle,amount");
+                writer.newLine();
+
+                for (int point = 0; point < pointCount; point++) {
+                    writer.write(String.format(Locale.ROOT, "%d,%d,%.6f,%.6f,%.6f,%s,%d", pointTick[point], pointFrame[point], pointX[point], pointY[point], pointZ[point], pointParticle[point].name(), pointAmount[point]));
+                    writer.newLine();
+                }
+            }
+        }
+
+        @NotNull
+        private Block createBlock(@NotNull Material type) {
+            return (Block) Proxy.newProxyInstance(Block.class.getClassLoader(), new Class<?>[] { Block.class }, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getType": return type;
+                    case "getWorld": return world;
+                    default: return getDefaultValue(proxy, method, args);
+                }
+            });
+        }
+
+        @Nullable
+        private static Object getDefaultValue(@NotNull Object proxy, @NotNull Method method, Object @Nullable [] args) {
+            switch (method.getName()) {
+                case "equals": return proxy == args[0];
+                case "hashCode": return System.identityHashCode(proxy);
+                case "toString": return "StubWorld";
+                default: break;
+            }
+
+            Class<?> type = method.getReturnType();
+            if (!type.isPrimitive() || type == void.class) {
+                return null;
+            }
+
+            return (type == boolean.class) ? Boolean.FALSE : Array.get(Array.newInstance(type, 1), 0);
+        }
+
+    }
+
+}
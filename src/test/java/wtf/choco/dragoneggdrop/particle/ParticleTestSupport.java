@@ -0,0 +1,200 @@
+package wtf.choco.dragoneggdrop.particle;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.Particle;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import wtf.choco.dragoneggdrop.utils.math.ExpressionUtils;
+
+/**
+ * Shared fixtures for particle tests. Provides equation data built from expressions and a
+ * proxied stub {@link World} with a single layer of bedrock that records spawned particles, and
+ * stub players in that world.
+ *
+ * @author Parker Hawke - Choco
+ */
+final class ParticleTestSupport {
+
+    private ParticleTestSupport() { }
+
+    /**
+     * Create equation data displaying a single particle per stream every tick.
+     *
+     * @param x the x expression
+     * @param z the z expression
+     * @param streams the amount of particle streams
+     *
+     * @return the equation data
+     */
+    @NotNull
+    static ConditionalEquationData equationData(@NotNull String x, @NotNull String z, int streams) {
+        ConditionalEquationData equationData = new ConditionalEquationData(ExpressionUtils.parseExpression(x), ExpressionUtils.parseExpression(z));
+        equationData.particle = Particle.FLAME;
+        equationData.particleAmount = 1;
+        equationData.particleStreams = streams;
+        equationData.speedMultiplier = 0.1;
+        equationData.frameIntervalTicks = 1;
+        equationData.thetaIncrement = 5;
+        return equationData;
+    }
+
+    /**
+     * A stub world with a layer of bedrock at a configurable y coordinate. Blocks are created
+     * on every query and reflect the floor at the time their type is read.
+     */
+    static final class StubWorld {
+
+        private static final UUID WORLD_ID = new UUID(0L, 0L);
+
+        private final World world;
+        private final List<double @NotNull []> spawned = new ArrayList<>();
+        private final List<@NotNull Player> players = new ArrayList<>();
+
+        private int floor;
+        private boolean record = true;
+        private int blockQueries;
+
+        StubWorld(int floor) {
+            this.floor = floor;
+            this.world = (World) Proxy.newProxyInstance(World.class.getClassLoader(), new Class<?>[] { World.class }, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getName": return "test";
+                    case "getUID": return WORLD_ID;
+                    case "getMaxHeight": return 256;
+                    case "getPlayers": return players.isEmpty() ? Collections.emptyList() : players;
+                    case "getBlockAt":
+                        this.blockQueries++;
+                        return (args.length == 3) ? createBlock((int) args[0], (int) args[1], (int) args[2]) : createBlock(((Location) args[0]).getBlockX(), ((Location) args[0]).getBlockY(), ((Location) args[0]).getBlockZ());
+                    case "spawnParticle":
+                        if (record && args[1] instanceof Number) {
+                            this.spawned.add(new double[] { (double) args[1], (double) args[2], (double) args[3] });
+                        }
+                        return null;
+                    default: return getDefaultValue(proxy, method, args);
+                }
+            });
+        }
+
+        @NotNull
+        World getWorld() {
+            return world;
+        }
+
+        @NotNull
+        Block getBlock(int x, int y, int z) {
+            return world.getBlockAt(x, y, z);
+        }
+
+        @NotNull
+        StubPlayer addPlayer(double x, double y, double z) {
+            StubPlayer player = new StubPlayer(this, x, y, z);
+            this.players.add(player.getPlayer());
+            return player;
+        }
+
+        void setFloor(int floor) {
+            this.floor = floor;
+        }
+
+        void setRecording(boolean record) {
+            this.record = record;
+        }
+
+        @NotNull
+        List<double @NotNull []> getSpawned() {
+            return spawned;
+        }
+
+        int getBlockQueries() {
+            return blockQueries;
+        }
+
+        @NotNull
+        private Block createBlock(int x, int y, int z) {
+            return (Block) Proxy.newProxyInstance(Block.class.getClassLoader(), new Class<?>[] { Block.class }, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getType": return (y == floor) ? Material.BEDROCK : Material.AIR;
+                    case "getX": return x;
+                    case "getY": return y;
+                    case "getZ": return z;
+                    case "getWorld": return world;
+                    default: return getDefaultValue(proxy, method, args);
+                }
+            });
+        }
+
+    }
+
+    /**
+     * A stub player at a fixed location counting the particles sent to it.
+     */
+    static final class StubPlayer {
+
+        private final Player player;
+        private int received;
+
+        private StubPlayer(@NotNull StubWorld world, double x, double y, double z) {
+            this.player = (Player) Proxy.newProxyInstance(Player.class.getClassLoader(), new Class<?>[] { Player.class }, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getWorld": return world.getWorld();
+                    case "getLocation":
+                        if (args == null || args.length == 0) {
+                            return new Location(world.getWorld(), x, y, z);
+                        }
+
+                        Location location = (Location) args[0];
+                        location.setWorld(world.getWorld());
+                        location.setX(x);
+                        location.setY(y);
+                        location.setZ(z);
+                        return location;
+                    case "spawnParticle":
+                        this.received++;
+                        return null;
+                    default: return getDefaultValue(proxy, method, args);
+                }
+            });
+        }
+
+        @NotNull
+        Player getPlayer() {
+            return player;
+        }
+
+        int getReceived() {
+            return received;
+        }
+
+    }
+
+    @Nullable
+    private static Object getDefaultValue(@NotNull Object proxy, @NotNull Method method, Object @Nullable [] args) {
+        switch (method.getName()) {
+            case "equals": return proxy == args[0];
+            case "hashCode": return System.identityHashCode(proxy);
+            case "toString": return "StubWorld";
+            default: break;
+        }
+
+        Class<?> type = method.getReturnType();
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        }
+
+        return (type == boolean.class) ? Boolean.FALSE : Array.get(Array.newInstance(type, 1), 0);
+    }
+
+}
@@ -0,0 +1,86 @@
+package wtf.choco.dragoneggdrop.particle;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.bukkit.World;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the tick and memory limits of {@link ParticleTrack}.
+ *
+ * @author Parker Hawke - Choco
+ */
+public class ParticleTrackTest {
+
+    @Test
+    public void testSmallShapeRecordsAllTicks() {
+        List<ConditionalEquationData> equationData = Collections.singletonList(ParticleTestSupport.equationData("sin(theta)", "cos(theta)", 4));
+        ParticleTrack track = new ParticleTrack(equationData, null);
+        World world = new ParticleTestSupport.StubWorld(0).getWorld();
+
+        assertTrue(ParticleTrack.isSupported(equationData));
+        assertTrue(track.ensureComputed(ParticleTrack.MAX_TICKS - 1, world));
+        assertFalse(track.ensureComputed(ParticleTrack.MAX_TICKS, world));
+    }
+
+    @Test
+    public void testLargeShapeIsCappedByBytes() {
+        ConditionalEquationData data = ParticleTestSupport.equationData("t * sin(theta)", "t * cos(theta)", 100);
+        List<ConditionalEquationData> equationData = Collections.singletonList(data);
+        ParticleTrack track = new ParticleTrack(equationData, null);
+        World world = new ParticleTestSupport.StubWorld(0).getWorld();
+
+        // Recording every tick of this shape would exceed the cap, but enough ticks fit for it to be recorded
+        int bytesPerTick = data.getPointsPerFrame() * 2 * Double.BYTES;
+        assertTrue((long) bytesPerTick * ParticleTrack.MAX_TICKS > ParticleTrack.MAX_BYTES);
+        assertTrue(ParticleTrack.isSupported(equationData));
+
+        int ticks = 0;
+        while (track.ensureComputed(ticks, world)) {
+            ticks++;
+        }
+
+        assertEquals(ParticleTrack.MAX_BYTES / bytesPerTick, ticks);
+        assertTrue(track.getOffsets().length * Double.BYTES <= ParticleTrack.MAX_BYTES);
+        assertFalse(track.ensureComputed(ticks + 1, world));
+    }
+
+    @Test
+    public void testDensestShapeRecordsMinimumTicks() {
+        List<ConditionalEquationData> equationData = Collections.singletonList(ParticleTestSupport.equationData("sin(theta)", "cos(theta)", 360));
+        ParticleTrack track = new ParticleTrack(equationData, null);
+        World world = new ParticleTestSupport.StubWorld(0).getWorld();
+
+        assertTrue(ParticleTrack.isSupported(equationData));
+        assertTrue(track.ensureComputed(ParticleTrack.MIN_TICKS - 1, world));
+    }
+
+    @Test
+    public void testSessionContinuesLiveWhereCappedTrackEnds() {
+        List<ConditionalEquationData> equationData = Collections.singletonList(ParticleTestSupport.equationData("t * sin(theta)", "t * cos(theta)", 100));
+        ParticleShapeDefinition shape = new ParticleShapeDefinition("capped", 200, equationData);
+        assertTrue(shape.isPrecomputed());
+
+        ParticleTestSupport.StubWorld tracked = new ParticleTestSupport.StubWorld(0), live = new ParticleTestSupport.StubWorld(0);
+        AnimatedParticleSession trackedSession = shape.createSession(tracked.getWorld(), 0.5, 0.5);
+        AnimatedParticleSession liveSession = new AnimatedParticleSession(shape, equationData, null, null, live.getWorld(), 0.5, 200, 0.5);
+
+        // Run well past the end of the track
+        for (int tick = 0; tick < 1500; tick++) {
+            trackedSession.tick();
+            liveSession.tick();
+        }
+
+        assertEquals(live.getSpawned().size(), tracked.getSpawned().size());
+        for (int i = 0; i < live.getSpawned().size(); i++) {
+            assertArrayEquals("point " + i, live.getSpawned().get(i), tracked.getSpawned().get(i), 0.0);
+        }
+    }
+
+}
@@ -0,0 +1,145 @@
+package wtf.choco.dragoneggdrop.utils.math;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import wtf.choco.dragoneggdrop.particle.ParticleRandom;
+import wtf.choco.dragoneggdrop.particle.ParticleVariables;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Asserts that interpreted, compiled and batch evaluation of the same expression produce
+ * bit-for-bit identical results.
+ *
+ * @author Parker Hawke - Choco
+ */
+public class ExpressionCompilerTest {
+
+    private static final String[] EXPRESSIONS = {
+        "1 + 2 * 3",
+        "x + y * z - t / 2",
+        "-x^2",
+        "-2^2",
+        "--x",
+        "+-x",
+        "2^3^2",
+        "-(x - y)^3",
+        "x^0.5 + y^-1",
+        "sqrt(abs(x * y)) + log(t + 1)",
+        "sin(theta) * cos(t * 10) + tan(x)",
+        "csc(theta + 1) + sec(t) + cot(y + 1)",
+        "rad(theta) + deg(t)",
+        "sin theta * 2",
+        "min(x, y) + max(t, theta) * clamp(z, -1, 1)",
+        "lerp(x, y, t / 10) - atan2(y, x)",
+        "random * 10 + t",
+        "random^0 + random * random",
+        "x / 0 + y",
+        "(t * 0.5 + theta) / (x - x)",
+    };
+
+    private static final double[][] VARIABLES = {
+        { 3, 2, 1 },
+        { -1.5, 0, 4.25 },
+        { 0, 0, 0 },
+        { 1e6, -1e-6, 7 },
+    };
+
+    @Test
+    public void testUnaryMinusBindsLooserThanExponentiation() {
+        ParticleVariables variables = new ParticleVariables(3, 0, 0, 0, 0);
+
+        assertEquals(-9.0, ExpressionUtils.parseExpression("-x^2", false).evaluate(variables), 0.0);
+        assertEquals(-9.0, ExpressionUtils.parseExpression("-x^2", true).evaluate(variables), 0.0);
+        assertEquals(-4.0, ExpressionUtils.parseExpression("-2^2").evaluate(variables), 0.0);
+        assertEquals(9.0, ExpressionUtils.parseExpression("(-x)^2").evaluate(variables), 0.0);
+        assertEquals(3.0, ExpressionUtils.parseExpression("--x").evaluate(variables), 0.0);
+    }
+
+    @Test
+    public void testExpressionsCompile() {
+        for (String expression : EXPRESSIONS) {
+            MathExpression compiled = ExpressionUtils.parseExpression(expression, true);
+            assertTrue("\"" + expression + "\" was not compiled", compiled instanceof CompiledExpression || compiled instanceof ExpressionNode.Constant);
+        }
+    }
+
+    @Test
+    public void testCompiledMatchesInterpreted() {
+        for (String expression : EXPRESSIONS) {
+            assertEquivalent(expression, new ExpressionContext());
+        }
+    }
+
+    @Test
+    public void testCompiledMatchesInterpretedWithContext() {
+        ExpressionContext context = new ExpressionContext()
+                .registerOperator("twice", x -> x * 2, true)
+                .registerOperator("hypot", Math::hypot, true)
+                .defineFunction("square", Arrays.asList("a"), "a * a")
+                .defineFunction("mix", Arrays.asList("a", "b", "w"), "a + (b - a) * w");
+
+        assertEquivalent("twice(x) + hypot(y, t)", context);
+        assertEquivalent("square(x + t) - square(theta)", context);
+        assertEquivalent("mix(x, y, t / 10) * twice theta", context);
+
+        assertEquivalent("sin(theta) + cos(t)", ExpressionContext.intrinsicTrigonometry());
+        assertEquivalent("sin(theta) + cos(t)", ExpressionContext.tableTrigonometry(1024));
+    }
+
+    static void assertEquivalent(String expression, ExpressionContext context) {
+        MathExpression interpreted = ExpressionUtils.parseExpression(expression, context, false);
+        MathExpression compiled = ExpressionUtils.parseExpression(expression, context, true);
+
+        double[] t = new double[64], theta = new double[64];
+        for (int i = 0; i < t.length; i++) {
+            t[i] = i * 0.25 - 4;
+            theta[i] = i * 7.5 - 90;
+        }
+
+        for (double[] xyz : VARIABLES) {
+            ParticleVariables interpretedVariables = variables(xyz), compiledVariables = variables(xyz);
+            double[] expected = new double[t.length];
+
+            for (int i = 0; i < t.length; i++) {
+                interpretedVariables.set(ParticleVariables.SLOT_T, t[i]);
+                interpretedVariables.set(ParticleVariables.SLOT_THETA, theta[i]);
+                compiledVariables.set(ParticleVariables.SLOT_T, t[i]);
+                compiledVariables.set(ParticleVariables.SLOT_THETA, theta[i]);
+
+                expected[i] = interpreted.evaluate(interpretedVariables);
+                assertBitsEqual(expression + " (compiled) at index " + i, expected[i], compiled.evaluate(compiledVariables));
+            }
+
+            double[] interpretedBatch = new double[t.length], compiledBatch = new double[t.length];
+            interpreted.evaluate(variables(xyz), t, theta, interpretedBatch, t.length);
+            compiled.evaluate(variables(xyz), t, theta, compiledBatch, t.length);
+
+            // Evaluate the upper half of the batch separately to exercise non-zero offsets
+            double[] compiledRange = new double[t.length];
+            ParticleVariables rangeVariables = variables(xyz);
+            compiled.evaluate(rangeVariables, t, theta, compiledRange, 0, t.length / 2);
+            compiled.evaluate(rangeVariables, t, theta, compiledRange, t.length / 2, t.length);
+
+            for (int i = 0; i < t.length; i++) {
+                assertBitsEqual(expression + " (interpreted batch) at index " + i, expected[i], interpretedBatch[i]);
+                assertBitsEqual(expression + " (compiled batch) at index " + i, expected[i], compiledBatch[i]);
+                assertBitsEqual(expression + " (compiled range) at index " + i, expected[i], compiledRange[i]);
+            }
+        }
+    }
+
+    private static ParticleVariables variables(double[] xyz) {
+        return new ParticleVariables(ParticleRandom.Type.XORSHIFT.create(42), xyz[0], xyz[1], xyz[2], 0, 0);
+    }
+
+    private static void assertBitsEqual(String message, double expected, double actual) {
+        if (Double.doubleToLongBits(expected) != Double.doubleToLongBits(actual)) {
+            throw new AssertionError(message + " expected:<" + expected + "> but was:<" + actual + ">");
+        }
+    }
+
+}
@@ -0,0 +1,57 @@
+package wtf.choco.dragoneggdrop.utils.math;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import wtf.choco.dragoneggdrop.particle.ParticleRandom;
+import wtf.choco.dragoneggdrop.particle.ParticleVariables;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the rewrites applied by {@link ExpressionOptimizer}.
+ *
+ * @author Parker Hawke - Choco
+ */
+public class ExpressionOptimizerTest {
+
+    @Test
+    public void testConstantsFold() {
+        assertTrue(ExpressionUtils.parseExpression("1 + 2 * 3 ^ 2", false) instanceof ExpressionNode.Constant);
+        assertTrue(ExpressionUtils.parseExpression("sqrt(16) + min(1, 2)", false) instanceof ExpressionNode.Constant);
+        assertTrue(ExpressionUtils.parseExpression("x ^ 0", false) instanceof ExpressionNode.Constant);
+        assertTrue(ExpressionUtils.parseExpression("sin(t) ^ 0", false) instanceof ExpressionNode.Constant);
+    }
+
+    @Test
+    public void testImpureOperandOfZeroPowerIsKept() {
+        MathExpression expression = ExpressionUtils.parseExpression("random ^ 0 + random", false);
+        assertFalse(expression instanceof ExpressionNode.Constant);
+        assertTrue(expression.dependsOn(ParticleVariables.SLOT_RANDOM));
+
+        // The first random value must still be consumed, so the result is 1 + the second value
+        ParticleRandom expected = ParticleRandom.Type.XORSHIFT.create(7);
+        expected.nextDouble();
+
+        ParticleVariables variables = new ParticleVariables(ParticleRandom.Type.XORSHIFT.create(7), 0, 0, 0, 0, 0);
+        assertEquals(1.0 + expected.nextDouble(), expression.evaluate(variables), 0.0);
+    }
+
+    @Test
+    public void testImpureFunctionOfZeroPowerIsCalled() {
+        AtomicInteger calls = new AtomicInteger();
+        ExpressionContext context = new ExpressionContext().registerOperator("tick", x -> calls.incrementAndGet(), false);
+
+        for (boolean compile : new boolean[] { false, true }) {
+            calls.set(0);
+
+            MathExpression expression = ExpressionUtils.parseExpression("tick(x) ^ 0", context, compile);
+            assertEquals(1.0, expression.evaluate(new ParticleVariables()), 0.0);
+            assertEquals(1, calls.get());
+        }
+    }
+
+}
@@ -0,0 +1,230 @@
+package wtf.choco.dragoneggdrop.utils.math;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.ToDoubleFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import wtf.choco.dragoneggdrop.particle.ParticleRandom;
+import wtf.choco.dragoneggdrop.particle.ParticleVariables;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for the expression parser in {@link ExpressionUtils}, including a seeded fuzz test
+ * checking interpreted, compiled and batch evaluation of generated expressions against values
+ * computed independently of the parser.
+ *
+ * @author Parker Hawke - Choco
+ */
+public class ExpressionUtilsTest {
+
+    private static final Pattern POSITION = Pattern.compile("at position (\\d+)");
+
+    // Binding strength of generated expressions, loosest first. Operands binding looser than their position allows are parenthesized
+    private static final int SUM = 0, PRODUCT = 1, FACTOR = 2, PRIMARY = 3;
+
+    // In the order of the arguments to the ParticleVariables constructor
+    private static final String[] VARIABLES = { "x", "y", "z", "t", "theta" };
+    private static final double[][] VARIABLE_VALUES = {
+        { 3, 2, 1, 0.5, 45 },
+        { -1.5, 0, 4.25, -2, -90 },
+        { 0, 0, 0, 0, 0 },
+        { 7, -0.25, 10, 3, 400 },
+    };
+
+    private static final Map<String, DoubleUnaryOperator> FUNCTIONS = new HashMap<>();
+
+    static {
+        FUNCTIONS.put("sqrt", StrictMath::sqrt);
+        FUNCTIONS.put("abs", Math::abs);
+        FUNCTIONS.put("log", x -> x <= 0 ? Double.NaN : Math.log10(x));
+        FUNCTIONS.put("sin", x -> StrictMath.sin(Math.toRadians(x)));
+        FUNCTIONS.put("cos", x -> StrictMath.cos(Math.toRadians(x)));
+        FUNCTIONS.put("tan", x -> StrictMath.tan(Math.toRadians(x)));
+        FUNCTIONS.put("csc", x -> 1 / StrictMath.sin(Math.toRadians(x)));
+        FUNCTIONS.put("sec", x -> 1 / StrictMath.cos(Math.toRadians(x)));
+        FUNCTIONS.put("cot", x -> 1 / StrictMath.tan(Math.toRadians(x)));
+        FUNCTIONS.put("rad", Math::toRadians);
+        FUNCTIONS.put("deg", Math::toDegrees);
+    }
+
+    private static final String[] FUNCTION_NAMES = FUNCTIONS.keySet().stream().sorted().toArray(String[]::new);
+
+    @Test
+    public void testErrorPositions() {
+        assertParseError("(1", 2);
+        assertParseError("1.2.3", 0);
+        assertParseError("x y", 2);
+        assertParseError("min(1,2,3)", 0);
+        assertParseError("2 * min(1)", 4);
+        assertParseError(")", 0);
+        assertParseError("", 0);
+        assertParseError("   ", 3);
+        assertParseError("1 +", 3);
+        assertParseError("foo", 0);
+        assertParseError("x + unknown(2)", 4);
+        assertParseError("sin(x) * theta + bar", 17);
+        assertParseError("theta2", 5);
+        assertParseError("min 1", 4);
+        assertParseError("2 $ 3", 2);
+    }
+
+    @Test
+    public void testMalformedInputOnlyThrowsArithmeticException() {
+        Random random = new Random(0xD8A60L);
+        char[] alphabet = "0123456789.+-*/^(), xyztmainrdhsqcob$".toCharArray();
+
+        for (int i = 0; i < 20000; i++) {
+            char[] chars = new char[random.nextInt(12)];
+            for (int j = 0; j < chars.length; j++) {
+                chars[j] = alphabet[random.nextInt(alphabet.length)];
+            }
+
+            String expression = new String(chars);
+            try {
+                ExpressionUtils.parseExpression(expression);
+            } catch (ArithmeticException e) {
+                assertPosition(expression, e);
+            } catch (RuntimeException e) {
+                throw new AssertionError("\"" + expression + "\" threw " + e, e);
+            }
+        }
+    }
+
+    @Test
+    public void testFuzzMatchesReferenceEvaluation() {
+        Random random = new Random(0xE99L);
+
+        for (int i = 0; i < 500; i++) {
+            Generated generated = generate(random, 5);
+            MathExpression interpreted = ExpressionUtils.parseExpression(generated.text, false);
+            MathExpression compiled = ExpressionUtils.parseExpression(generated.text, true);
+
+            for (double[] values : VARIABLE_VALUES) {
+                double expected = generated.value.applyAsDouble(values);
+                assertEquals("\"" + generated.text + "\" (interpreted)", expected, interpreted.evaluate(variables(values)), 0.0);
+                assertEquals("\"" + generated.text + "\" (compiled)", expected, compiled.evaluate(variables(values)), 0.0);
+            }
+
+            ExpressionCompilerTest.assertEquivalent(generated.text, new ExpressionContext());
+        }
+    }
+
+    private static void assertParseError(String expression, int position) {
+        ArithmeticException e = assertThrows(ArithmeticException.class, () -> ExpressionUtils.parseExpression(expression));
+        assertEquals("position of error in \"" + expression + "\" (" + e.getMessage() + ")", position, assertPosition(expression, e));
+    }
+
+    private static int assertPosition(String expression, ArithmeticException e) {
+        Matcher matcher = POSITION.matcher(e.getMessage());
+        if (!matcher.find()) {
+            fail("error for \"" + expression + "\" has no position: " + e.getMessage());
+        }
+
+        int position = Integer.parseInt(matcher.group(1));
+        assertTrue("position " + position + " out of bounds for \"" + expression + "\"", position >= 0 && position <= expression.length());
+        return position;
+    }
+
+    private static ParticleVariables variables(double[] values) {
+        return new ParticleVariables(ParticleRandom.Type.XORSHIFT.create(42), values[0], values[1], values[2], values[3], values[4]);
+    }
+
+    /*
+     * Generates a random expression tree and prints it with only the parentheses required by the
+     * parser's precedence and associativity, i.e. "a - b - c" for (a - b) - c but "a - (b - c)"
+     * otherwise, and "2^3^2" for 2^(3^2). The value of the tree is computed from the tree itself,
+     * never from the printed text, such that misparsed expressions evaluate differently.
+     */
+    private static Generated generate(Random random, int depth) {
+        switch (random.nextInt(depth <= 0 ? 2 : 9)) {
+            case 0: {
+                double value = random.nextInt(5) == 0 ? 0 : random.nextInt(100) / 10.0;
+                return new Generated(String.valueOf(value), PRIMARY, variables -> value);
+            }
+            case 1: {
+                int index = random.nextInt(VARIABLES.length);
+                return new Generated(VARIABLES[index], PRIMARY, variables -> variables[index]);
+            }
+            case 2: {
+                Generated operand = generate(random, depth - 1);
+                return new Generated("-" + operand.wrap(FACTOR), FACTOR, variables -> -operand.value.applyAsDouble(variables));
+            }
+            case 3: {
+                Generated operand = generate(random, depth - 1);
+                return new Generated("(" + operand.text + ")", PRIMARY, operand.value);
+            }
+            case 4: {
+                // Functions of one argument may be called without parentheses, i.e. "sin theta", and bind their argument as tightly as unary minus
+                String name = FUNCTION_NAMES[random.nextInt(FUNCTION_NAMES.length)];
+                DoubleUnaryOperator function = FUNCTIONS.get(name);
+                Generated argument = generate(random, depth - 1);
+                String text = random.nextBoolean() ? name + "(" + argument.text + ")" : name + " " + argument.wrap(FACTOR);
+                return new Generated(text, FACTOR, variables -> function.applyAsDouble(argument.value.applyAsDouble(variables)));
+            }
+            case 5: {
+                Generated a = generate(random, depth - 1), b = generate(random, depth - 1);
+                switch (random.nextInt(3)) {
+                    case 0: return new Generated("min(" + a.text + ", " + b.text + ")", PRIMARY, variables -> Math.min(a.value.applyAsDouble(variables), b.value.applyAsDouble(variables)));
+                    case 1: return new Generated("max(" + a.text + ", " + b.text + ")", PRIMARY, variables -> Math.max(a.value.applyAsDouble(variables), b.value.applyAsDouble(variables)));
+                    default: return new Generated("atan2(" + a.text + ", " + b.text + ")", PRIMARY, variables -> Math.toDegrees(Math.atan2(a.value.applyAsDouble(variables), b.value.applyAsDouble(variables))));
+                }
+            }
+            case 6: {
+                Generated a = generate(random, depth - 1), b = generate(random, depth - 1), c = generate(random, depth - 1);
+                String arguments = "(" + a.text + ", " + b.text + ", " + c.text + ")";
+                if (random.nextBoolean()) {
+                    return new Generated("clamp" + arguments, PRIMARY, variables -> Math.min(Math.max(a.value.applyAsDouble(variables), b.value.applyAsDouble(variables)), c.value.applyAsDouble(variables)));
+                }
+
+                return new Generated("lerp" + arguments, PRIMARY, variables -> {
+                    double from = a.value.applyAsDouble(variables);
+                    return from + ((b.value.applyAsDouble(variables) - from) * c.value.applyAsDouble(variables));
+                });
+            }
+            case 7: {
+                // Exponentiation is right associative and binds tighter than unary minus, such that its base must be a primary
+                Generated base = generate(random, depth - 1), exponent = generate(random, depth - 1);
+                return new Generated(base.wrap(PRIMARY) + "^" + exponent.wrap(FACTOR), FACTOR, variables -> Math.pow(base.value.applyAsDouble(variables), exponent.value.applyAsDouble(variables)));
+            }
+            default: {
+                // Addition, subtraction, multiplication and division are left associative
+                Generated left = generate(random, depth - 1), right = generate(random, depth - 1);
+                switch (random.nextInt(4)) {
+                    case 0: return new Generated(left.wrap(SUM) + " + " + right.wrap(PRODUCT), SUM, variables -> left.value.applyAsDouble(variables) + right.value.applyAsDouble(variables));
+                    case 1: return new Generated(left.wrap(SUM) + " - " + right.wrap(PRODUCT), SUM, variables -> left.value.applyAsDouble(variables) - right.value.applyAsDouble(variables));
+                    case 2: return new Generated(left.wrap(PRODUCT) + " * " + right.wrap(FACTOR), PRODUCT, variables -> left.value.applyAsDouble(variables) * right.value.applyAsDouble(variables));
+                    default: return new Generated(left.wrap(PRODUCT) + " / " + right.wrap(FACTOR), PRODUCT, variables -> left.value.applyAsDouble(variables) / right.value.applyAsDouble(variables));
+                }
+            }
+        }
+    }
+
+    private static final class Generated {
+
+        private final String text;
+        private final int precedence;
+        private final ToDoubleFunction<double[]> value;
+
+        private Generated(String text, int precedence, ToDoubleFunction<double[]> value) {
+            this.text = text;
+            this.precedence = precedence;
+            this.value = value;
+        }
+
+        private String wrap(int minimumPrecedence) {
+            return (precedence >= minimumPrecedence) ? text : "(" + text + ")";
+        }
+
+    }
+
+}
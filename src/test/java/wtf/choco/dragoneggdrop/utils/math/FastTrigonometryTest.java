@@ -0,0 +1,128 @@
+package wtf.choco.dragoneggdrop.utils.math;
+
+import org.junit.Test;
+
+import wtf.choco.dragoneggdrop.particle.ParticleVariables;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Asserts that the table and intrinsic trigonometry stay within their documented error
+ * bounds over {@code [-4 pi, 4 pi]} (i.e. {@code [-720, 720]} degrees).
+ *
+ * @author Parker Hawke - Choco
+ */
+public class FastTrigonometryTest {
+
+    private static final double SWEEP_DEGREES = 720.0;
+    private static final int SWEEP_SAMPLES = 400_000;
+
+    private static final int[] RESOLUTIONS = { FastTrigonometry.MIN_RESOLUTION, 1024, FastTrigonometry.DEFAULT_RESOLUTION, 1 << 16, FastTrigonometry.MAX_RESOLUTION };
+
+    @Test
+    public void testTableWithinMaxError() {
+        for (int resolution : RESOLUTIONS) {
+            FastTrigonometry trig = FastTrigonometry.withResolution(resolution);
+
+            for (int i = 0; i <= SWEEP_SAMPLES; i++) {
+                assertTableWithinMaxError(trig, -SWEEP_DEGREES + (2 * SWEEP_DEGREES * i) / SWEEP_SAMPLES);
+            }
+        }
+    }
+
+    @Test
+    public void testTableWithinMaxErrorAtEntries() {
+        for (int resolution : RESOLUTIONS) {
+            FastTrigonometry trig = FastTrigonometry.withResolution(resolution);
+            double step = 360.0 / resolution;
+
+            // Table entries and the midpoints between them, at which the interpolation error peaks
+            for (int i = -resolution * 2; i <= resolution * 2; i++) {
+                assertTableWithinMaxError(trig, i * step);
+                assertTableWithinMaxError(trig, (i + 0.5) * step);
+            }
+        }
+    }
+
+    @Test
+    public void testTableWithinMaxErrorAtWrapPoint() {
+        for (int resolution : RESOLUTIONS) {
+            FastTrigonometry trig = FastTrigonometry.withResolution(resolution);
+            double step = 360.0 / resolution;
+
+            for (int turn = -2; turn <= 2; turn++) {
+                double wrap = turn * 360.0;
+
+                assertTableWithinMaxError(trig, wrap);
+                assertTableWithinMaxError(trig, Math.nextDown(wrap));
+                assertTableWithinMaxError(trig, Math.nextUp(wrap));
+                assertTableWithinMaxError(trig, wrap - step / 2);
+                assertTableWithinMaxError(trig, wrap + step / 2);
+                assertTableWithinMaxError(trig, wrap - 90.0); // cos() wraps 90 degrees before sin()
+            }
+
+            assertEquals(0.0, trig.sin(0.0), 0.0);
+            assertEquals(1.0, trig.cos(0.0), 0.0);
+        }
+    }
+
+    @Test
+    public void testTableFallsBackForNonFiniteAngles() {
+        FastTrigonometry trig = FastTrigonometry.withResolution(FastTrigonometry.DEFAULT_RESOLUTION);
+
+        assertTrue(Double.isNaN(trig.sin(Double.NaN)));
+        assertTrue(Double.isNaN(trig.sin(Double.POSITIVE_INFINITY)));
+        assertTrue(Double.isNaN(trig.cos(Double.NEGATIVE_INFINITY)));
+    }
+
+    @Test
+    public void testTableContextWithinMaxError() {
+        FastTrigonometry trig = FastTrigonometry.withResolution(FastTrigonometry.DEFAULT_RESOLUTION);
+        MathExpression strict = ExpressionUtils.parseExpression("sin(theta)");
+        MathExpression table = ExpressionUtils.parseExpression("sin(theta)", ExpressionContext.tableTrigonometry(FastTrigonometry.DEFAULT_RESOLUTION));
+
+        ParticleVariables variables = new ParticleVariables();
+        for (int i = 0; i <= SWEEP_SAMPLES; i++) {
+            variables.set(ParticleVariables.SLOT_THETA, -SWEEP_DEGREES + (2 * SWEEP_DEGREES * i) / SWEEP_SAMPLES);
+            assertEquals(strict.evaluate(variables), table.evaluate(variables), trig.getMaxError());
+        }
+    }
+
+    @Test
+    public void testIntrinsicsWithinTwoUlps() {
+        ExpressionContext intrinsics = ExpressionContext.intrinsicTrigonometry();
+        String[] functions = { "sin", "cos", "tan" };
+
+        for (String function : functions) {
+            MathExpression strict = ExpressionUtils.parseExpression(function + "(theta)");
+            MathExpression intrinsic = ExpressionUtils.parseExpression(function + "(theta)", intrinsics);
+
+            ParticleVariables variables = new ParticleVariables();
+            for (int i = 0; i <= SWEEP_SAMPLES; i++) {
+                variables.set(ParticleVariables.SLOT_THETA, -SWEEP_DEGREES + (2 * SWEEP_DEGREES * i) / SWEEP_SAMPLES);
+
+                double expected = strict.evaluate(variables), actual = intrinsic.evaluate(variables);
+                if (!(Math.abs(expected - actual) <= 2 * Math.ulp(expected))) {
+                    throw new AssertionError(function + "(" + variables.getTheta() + ") expected:<" + expected + "> but was:<" + actual + ">");
+                }
+            }
+        }
+    }
+
+    private static void assertTableWithinMaxError(FastTrigonometry trig, double degrees) {
+        double radians = Math.toRadians(degrees);
+
+        assertWithinMaxError(trig, "sin", degrees, StrictMath.sin(radians), trig.sin(degrees));
+        assertWithinMaxError(trig, "sin", degrees, Math.sin(radians), trig.sin(degrees));
+        assertWithinMaxError(trig, "cos", degrees, StrictMath.cos(radians), trig.cos(degrees));
+        assertWithinMaxError(trig, "cos", degrees, Math.cos(radians), trig.cos(degrees));
+    }
+
+    private static void assertWithinMaxError(FastTrigonometry trig, String function, double degrees, double expected, double actual) {
+        if (!(Math.abs(expected - actual) <= trig.getMaxError())) {
+            throw new AssertionError(function + "(" + degrees + ") at resolution " + trig.getResolution() + " expected:<" + expected + "> but was:<" + actual + ">");
+        }
+    }
+
+}
@@ -0,0 +1,66 @@
+package wtf.choco.dragoneggdrop.utils.math;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import wtf.choco.dragoneggdrop.particle.ParticleVariables;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+/**
+ * Tests for the inlining of {@link HelperFunction helper functions}.
+ *
+ * @author Parker Hawke - Choco
+ */
+public class HelperFunctionTest {
+
+    private final ExpressionContext context = new ExpressionContext()
+            .defineFunction("first", Arrays.asList("a", "b"), "a")
+            .defineFunction("twice", Arrays.asList("a"), "a + a")
+            .defineFunction("mix", Arrays.asList("a", "b", "w"), "a + (b - a) * w")
+            .defineFunction("quadruple", Arrays.asList("a"), "twice(twice(a))")
+            .defineFunction("pick", Arrays.asList("a", "b"), "first(a, b)");
+
+    @Test
+    public void testInline() {
+        ParticleVariables variables = new ParticleVariables(2, 4, 0, 0.5, 0);
+
+        assertEquals(2.0, ExpressionUtils.parseExpression("first(x, y)", context).evaluate(variables), 0.0);
+        assertEquals(8.0, ExpressionUtils.parseExpression("twice y", context).evaluate(variables), 0.0);
+        assertEquals(3.0, ExpressionUtils.parseExpression("mix(x, y, t)", context).evaluate(variables), 0.0);
+    }
+
+    @Test
+    public void testComposition() {
+        ParticleVariables variables = new ParticleVariables(2, 4, 0, 0.5, 0);
+
+        // Parameters passed on to helpers that use them more than once, or not at all
+        assertEquals(16.0, ExpressionUtils.parseExpression("quadruple(y)", context).evaluate(variables), 0.0);
+        assertEquals(2.0, ExpressionUtils.parseExpression("pick(x, y)", context).evaluate(variables), 0.0);
+        ExpressionUtils.parseExpression("pick(random, y)", context);
+
+        // Random arguments are checked against the uses of the composed body
+        assertThrows(ArithmeticException.class, () -> ExpressionUtils.parseExpression("quadruple(random)", context));
+        assertThrows(ArithmeticException.class, () -> ExpressionUtils.parseExpression("pick(x, random)", context));
+    }
+
+    @Test
+    public void testRandomArgumentUsedOnce() {
+        ExpressionUtils.parseExpression("first(random, x)", context);
+        ExpressionUtils.parseExpression("mix(x, y, random)", context);
+    }
+
+    @Test
+    public void testRandomArgumentUsedMoreThanOnce() {
+        assertThrows(ArithmeticException.class, () -> ExpressionUtils.parseExpression("twice(random)", context));
+        assertThrows(ArithmeticException.class, () -> ExpressionUtils.parseExpression("mix(random, y, t)", context));
+    }
+
+    @Test
+    public void testRandomArgumentNeverUsed() {
+        assertThrows(ArithmeticException.class, () -> ExpressionUtils.parseExpression("first(x, random)", context));
+    }
+
+}